@@ -2,8 +2,10 @@ package com.example.multitenant1;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableAsync;
 
 @SpringBootApplication
+@EnableAsync
 public class MultiTenant1Application {
 
     public static void main(String[] args) {
@@ -0,0 +1,17 @@
+package com.example.multitenant1.config;
+
+import com.example.multitenant1.security.VerifiedClaims;
+import jakarta.servlet.http.HttpServletRequest;
+
+/* Takes the tenant from the tenant_id claim of the bearer token. JwtAuthenticationFilter has
+ * verified the token already and left its claims on the request, so nothing is parsed again; a
+ * request without a valid token has no claims and resolves to nothing.
+ */
+final class ClaimsTenantResolver implements TenantResolver {
+
+    @Override
+    public String resolve(HttpServletRequest request) {
+        Object claims = request.getAttribute(VerifiedClaims.REQUEST_ATTRIBUTE);
+        return claims instanceof VerifiedClaims verified ? verified.getTenantId() : null;
+    }
+}
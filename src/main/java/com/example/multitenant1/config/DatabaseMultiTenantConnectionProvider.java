@@ -0,0 +1,202 @@
+package com.example.multitenant1.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.hibernate.engine.jdbc.connections.spi.AbstractDataSourceBasedMultiTenantConnectionProviderImpl;
+import org.hibernate.service.spi.Stoppable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* DatabaseMultiTenantConnectionProvider gives every tenant its own database.
+ * A small pool is created lazily on a tenant's first request, and pools are closed again once the
+ * cache holding them evicts them, by size (Caffeine's W-TinyLFU, so rarely used pools go first) or
+ * after sitting unused for the idle timeout. Thousands of tenants therefore do not pin thousands of
+ * connections. The default tenant is served by the primary data source.
+ *
+ * Each pool counts the checkouts in progress and the connections it has handed out. An evicted pool
+ * is closed once that count drops to zero, or after Hikari's connectionTimeout at the latest; a
+ * checkout that finds its pool already retired takes the tenant's new pool instead.
+ */
+public class DatabaseMultiTenantConnectionProvider extends AbstractDataSourceBasedMultiTenantConnectionProviderImpl<String>
+        implements Stoppable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseMultiTenantConnectionProvider.class);
+    private static final long RETIRE_RETRY_SECONDS = 1;
+
+    private final DataSource defaultDataSource;
+    private final TenantDatabaseRegistry registry;
+    private final int poolSize;
+    private final Duration idleTimeout;
+    private final LoadingCache<String, TenantPool> pools;
+    // The pool each handed-out connection came from, which may have been evicted since
+    private final Map<Connection, TenantPool> borrowed = new ConcurrentHashMap<>();
+
+    public DatabaseMultiTenantConnectionProvider(DataSource defaultDataSource, TenantDatabaseRegistry registry,
+                                                 int maxPools, int poolSize, Duration idleTimeout) {
+        this.defaultDataSource = defaultDataSource;
+        this.registry = registry;
+        this.poolSize = poolSize;
+        this.idleTimeout = idleTimeout;
+        this.pools = Caffeine.newBuilder()
+                .maximumSize(maxPools)
+                .expireAfterAccess(idleTimeout)
+                .scheduler(Scheduler.systemScheduler())
+                .removalListener((String tenant, TenantPool pool, RemovalCause cause) -> retire(tenant, pool))
+                .build(this::createPool);
+    }
+
+    @Override
+    protected DataSource selectAnyDataSource() {
+        return defaultDataSource;
+    }
+
+    @Override
+    protected DataSource selectDataSource(String tenantIdentifier) {
+        String tenant = SchemaMultiTenantConnectionProvider.validateTenantIdentifier(tenantIdentifier);
+        // Requests without a tenant use the primary database and its pool, not a database named "public"
+        if (registry.isDefaultTenant(tenant)) {
+            return defaultDataSource;
+        }
+        return pools.get(tenant).dataSource;
+    }
+
+    @Override
+    public Connection getConnection(String tenantIdentifier) throws SQLException {
+        String tenant = SchemaMultiTenantConnectionProvider.validateTenantIdentifier(tenantIdentifier);
+        if (registry.isDefaultTenant(tenant)) {
+            return defaultDataSource.getConnection();
+        }
+        while (true) {
+            TenantPool pool = pools.get(tenant);
+            if (!pool.enter()) {
+                // Retired between the lookup and the checkout; the cache already holds a fresh pool
+                continue;
+            }
+            try {
+                Connection connection = pool.dataSource.getConnection();
+                borrowed.put(connection, pool);
+                return connection;
+            } catch (SQLException | RuntimeException e) {
+                pool.leave();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void releaseConnection(String tenantIdentifier, Connection connection) throws SQLException {
+        TenantPool pool = borrowed.remove(connection);
+        try {
+            connection.close();
+        } finally {
+            if (pool != null) {
+                pool.leave();
+            }
+        }
+    }
+
+    public TenantDatabaseRegistry getRegistry() {
+        return registry;
+    }
+
+    public Map<String, TenantDataSourceStats> getTenantDataSourceStats() {
+        Map<String, TenantDataSourceStats> stats = new LinkedHashMap<>();
+        pools.asMap().forEach((tenant, pool) -> {
+            HikariPoolMXBean mxBean = pool.dataSource.getHikariPoolMXBean();
+            if (mxBean != null) {
+                stats.put(tenant, new TenantDataSourceStats(mxBean.getActiveConnections(),
+                        mxBean.getIdleConnections(), mxBean.getTotalConnections(),
+                        mxBean.getThreadsAwaitingConnection()));
+            }
+        });
+        return stats;
+    }
+
+    private TenantPool createPool(String tenant) {
+        logger.info("Creating connection pool for tenant database: {}", tenant);
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("tenant-" + tenant);
+        config.setJdbcUrl(registry.getJdbcUrl(tenant));
+        config.setUsername(registry.getUsername(tenant));
+        config.setPassword(registry.getPassword(tenant));
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(0);
+        // Hikari's floor for idleTimeout is 10 seconds
+        config.setIdleTimeout(Math.max(10_000, idleTimeout.toMillis()));
+        return new TenantPool(new HikariDataSource(config));
+    }
+
+    private void retire(String tenant, TenantPool pool) {
+        if (pool == null) {
+            return;
+        }
+        pool.retired = true;
+        retire(tenant, pool, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pool.dataSource.getConnectionTimeout()));
+    }
+
+    private void retire(String tenant, TenantPool pool, long deadline) {
+        if (pool.dataSource.isClosed()) {
+            return;
+        }
+        int users = pool.users.get();
+        if (users > 0 && System.nanoTime() - deadline < 0) {
+            // Evicted while still serving a request; close once the borrowed connections are back
+            CompletableFuture.runAsync(() -> retire(tenant, pool, deadline),
+                    CompletableFuture.delayedExecutor(RETIRE_RETRY_SECONDS, TimeUnit.SECONDS));
+            return;
+        }
+        if (users > 0) {
+            logger.warn("Closing connection pool for tenant database {} with {} connections still in use", tenant, users);
+        } else {
+            logger.info("Closing idle connection pool for tenant database: {}", tenant);
+        }
+        pool.dataSource.close();
+    }
+
+    @Override
+    public void stop() {
+        pools.invalidateAll();
+        pools.cleanUp();
+    }
+
+    private static final class TenantPool {
+        final HikariDataSource dataSource;
+        // Checkouts in progress plus connections handed out and not yet released
+        final AtomicInteger users = new AtomicInteger();
+        volatile boolean retired;
+
+        TenantPool(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        boolean enter() {
+            users.incrementAndGet();
+            // retire() sets the flag before it reads the count, so one of the two sees the other
+            if (retired) {
+                users.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void leave() {
+            users.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.multitenant1.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/* Takes the tenant from a request header, X-Tenant-ID by default. */
+final class HeaderTenantResolver implements TenantResolver {
+
+    private final String headerName;
+
+    HeaderTenantResolver(String headerName) {
+        this.headerName = headerName;
+    }
+
+    @Override
+    public String resolve(HttpServletRequest request) {
+        String tenantId = request.getHeader(headerName);
+        return tenantId == null || tenantId.isBlank() ? null : tenantId;
+    }
+}
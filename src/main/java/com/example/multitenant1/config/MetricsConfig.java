@@ -0,0 +1,19 @@
+package com.example.multitenant1.config;
+
+import io.micrometer.core.instrument.Tags;
+import org.springframework.boot.actuate.metrics.data.DefaultRepositoryTagsProvider;
+import org.springframework.boot.actuate.metrics.data.RepositoryTagsProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    // spring.data.repository.invocations gets the tenant tag next to repository, method and state
+    @Bean
+    public RepositoryTagsProvider repositoryTagsProvider(TenantMetrics tenantMetrics) {
+        DefaultRepositoryTagsProvider defaults = new DefaultRepositoryTagsProvider();
+        return invocation -> Tags.of(defaults.repositoryTags(invocation))
+                .and(TenantMetrics.TENANT_TAG, tenantMetrics.tagOf(TenantContext.getCurrentTenant()));
+    }
+}
@@ -1,31 +1,105 @@
 package com.example.multitenant1.config;
 
+import com.zaxxer.hikari.HikariDataSource;
 import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
 import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.util.unit.DataSize;
 import org.hibernate.cfg.*;
 import javax.sql.DataSource;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
 public class MultiTenantConfig {
+    private static final Logger logger = LoggerFactory.getLogger(MultiTenantConfig.class);
 
     @Bean
-    public MultiTenantConnectionProvider multiTenantConnectionProvider(DataSource dataSource) {
-        return new SchemaMultiTenantConnectionProvider(dataSource);
+    public MultiTenantConnectionProvider<String> multiTenantConnectionProvider(
+            DataSource dataSource,
+            Environment environment,
+            @Value("${multitenancy.isolation:schema}") String isolation) {
+        // Options: schema (one schema per tenant), database (one database per tenant),
+        // discriminator (one shared table set, rows keyed by tenant_id)
+        switch (isolation.toLowerCase()) {
+            case "schema":
+                return schemaConnectionProvider(dataSource, environment, null);
+            case "discriminator":
+                return schemaConnectionProvider(dataSource, environment,
+                        environment.getProperty("multitenancy.discriminator.schema", "public"));
+            case "database":
+                return databaseConnectionProvider(dataSource, environment);
+            default:
+                throw new IllegalStateException("Unsupported multitenancy.isolation: " + isolation);
+        }
+    }
+
+    private SchemaMultiTenantConnectionProvider schemaConnectionProvider(DataSource dataSource, Environment env,
+                                                                         String sharedSchema) {
+        TenantConnectionAffinity affinity = env.getProperty("multitenancy.connection.affinity.enabled", Boolean.class, false)
+                ? new TenantConnectionAffinity(
+                        env.getProperty("multitenancy.connection.affinity.max-idle-per-tenant", Integer.class, 2),
+                        env.getProperty("multitenancy.connection.affinity.max-idle-total", Integer.class, 8),
+                        env.getProperty("multitenancy.connection.affinity.max-idle-time", Duration.class, Duration.ofMillis(500)))
+                : TenantConnectionAffinity.disabled();
+        TenantConnectionQuota quota = env.getProperty("multitenancy.connection.quota.enabled", Boolean.class, true)
+                ? connectionQuota(dataSource, env)
+                : null;
+        return new SchemaMultiTenantConnectionProvider(dataSource, sharedSchema, affinity, quota);
+    }
+
+    private TenantConnectionQuota connectionQuota(DataSource dataSource, Environment env) {
+        int poolSize = dataSource instanceof HikariDataSource hikari
+                ? hikari.getMaximumPoolSize()
+                : env.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+        int reservedPerTenant = env.getProperty("multitenancy.connection.quota.reserved-per-tenant", Integer.class, 2);
+        int overflowSize = env.getProperty("multitenancy.connection.quota.overflow-size", Integer.class, 6);
+        TenantConnectionQuota quota = new TenantConnectionQuota(
+                poolSize,
+                env.getProperty("multitenancy.connection.quota.max-per-tenant", Integer.class, 8),
+                reservedPerTenant,
+                overflowSize,
+                env.getProperty("multitenancy.connection.quota.acquire-timeout", Duration.class, Duration.ofSeconds(5)),
+                env.getProperty("multitenancy.connection.quota.max-tenants", Integer.class, 1000));
+        // Reservations beyond what the pool can back are served from the overflow instead
+        logger.info("Connection quota: pool of {}, overflow {}, {} reserved per tenant (held in full by up to {} tenants at once)",
+                poolSize, overflowSize, reservedPerTenant, quota.getTenantsWithFullReservation());
+        return quota;
+    }
+
+    private DatabaseMultiTenantConnectionProvider databaseConnectionProvider(DataSource dataSource, Environment env) {
+        TenantDatabaseRegistry registry = new TenantDatabaseRegistry(
+                env.getRequiredProperty("multitenancy.database.url-template"),
+                env.getProperty("multitenancy.database.username", env.getProperty("spring.datasource.username")),
+                env.getProperty("multitenancy.database.password", env.getProperty("spring.datasource.password")),
+                env.getProperty("spring.datasource.url"),
+                env.getProperty("spring.datasource.username"),
+                env.getProperty("spring.datasource.password"));
+        return new DatabaseMultiTenantConnectionProvider(
+                dataSource,
+                registry,
+                env.getProperty("multitenancy.database.max-pools", Integer.class, 100),
+                env.getProperty("multitenancy.database.pool-size", Integer.class, 4),
+                env.getProperty("multitenancy.database.idle-timeout", Duration.class, Duration.ofMinutes(5)));
     }
 
     @Bean
     public CurrentTenantIdentifierResolver currentTenantIdentifierResolver() {
+        // Called for every session, so it only reads the context; TenantInterceptor admits a request
+        // only once its tenant's schema is migrated
         return new CurrentTenantIdentifierResolver() {
             @Override
             public String resolveCurrentTenantIdentifier() {
                 String tenantId = TenantContext.getCurrentTenant();
-                return (tenantId != null) ? tenantId : "public"; // Default schema
+                return tenantId != null ? tenantId : "public"; // Default schema
             }
 
             @Override
@@ -35,17 +109,34 @@ public class MultiTenantConfig {
         };
     }
 
+    @Bean
+    public TenantPartitionedRegionFactory cacheRegionFactory(Environment env) {
+        return new TenantPartitionedRegionFactory(
+                env.getProperty("multitenancy.cache.max-size-per-tenant", DataSize.class, DataSize.ofMegabytes(1)).toBytes(),
+                env.getProperty("multitenancy.cache.ttl", Duration.class, Duration.ofMinutes(10)),
+                env.getProperty("multitenancy.cache.max-tenants", Integer.class, 1000));
+    }
+
     @Bean
     public LocalContainerEntityManagerFactoryBean entityManagerFactory(
-            MultiTenantConnectionProvider multiTenantConnectionProvider,
+            MultiTenantConnectionProvider<String> multiTenantConnectionProvider,
             CurrentTenantIdentifierResolver currentTenantIdentifierResolver,
+            TenantPartitionedRegionFactory cacheRegionFactory,
             EntityManagerFactoryBuilder builder,
-            DataSource dataSource) {
+            DataSource dataSource,
+            @Value("${spring.jpa.database-platform:org.hibernate.dialect.PostgreSQLDialect}") String dialect,
+            @Value("${multitenancy.cache.enabled:true}") boolean cacheEnabled) {
 
         Map<String, Object> properties = new HashMap<>();
         properties.put(AvailableSettings.MULTI_TENANT_CONNECTION_PROVIDER, multiTenantConnectionProvider);
         properties.put(AvailableSettings.MULTI_TENANT_IDENTIFIER_RESOLVER, currentTenantIdentifierResolver);
-        properties.put(AvailableSettings.DIALECT, "org.hibernate.dialect.PostgreSQLDialect");
+        properties.put(AvailableSettings.DIALECT, dialect);
+        // Second-level and query cache, partitioned per tenant; only entities marked @Cacheable are cached
+        properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, cacheEnabled);
+        properties.put(AvailableSettings.USE_QUERY_CACHE, cacheEnabled);
+        if (cacheEnabled) {
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, cacheRegionFactory);
+        }
 
         return builder
                 .dataSource(dataSource)
@@ -1,14 +1,61 @@
 package com.example.multitenant1.config;
 
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import org.hibernate.engine.jdbc.connections.spi.AbstractDataSourceBasedMultiTenantConnectionProviderImpl;
+import org.hibernate.service.spi.Stoppable;
+
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/* SchemaMultiTenantConnectionProvider binds every connection handed to Hibernate to the tenant's schema.
+ * The schema each physical connection is on is remembered, and a connection goes back to the pool still
+ * bound to it, so a checkout for the tenant that used the connection last needs no round trip. How often
+ * that happens depends on the pool's order and the tenant mix: with a few busy tenants most checkouts
+ * find their schema, with many tenants most still switch once. Affinity (see TenantConnectionAffinity)
+ * parks released connections per tenant to raise that share, and checkouts can be capped per tenant
+ * (see TenantConnectionQuota) so one tenant cannot take the whole pool.
+ *
+ * Pooled connections may therefore be on any tenant's schema. Hibernate always binds one on checkout
+ * (getAnyConnection binds the default schema); plain JDBC users of the pool (TenantRepository,
+ * provisioning, isolation moves) qualify every table with its schema and never rely on search_path.
+ */
+public class SchemaMultiTenantConnectionProvider extends AbstractDataSourceBasedMultiTenantConnectionProviderImpl<String>
+        implements Stoppable {
+
+    static final String DEFAULT_SCHEMA = "public";
 
-public class SchemaMultiTenantConnectionProvider extends AbstractDataSourceBasedMultiTenantConnectionProviderImpl {
+    // Unquoted PostgreSQL identifier: lower-case, at most 63 characters
+    private static final Pattern TENANT_ID_PATTERN = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
 
     private final DataSource dataSource;
+    // Null for schema-per-tenant; a fixed schema shared by all tenants in discriminator mode
+    private final String sharedSchema;
+    private final TenantConnectionAffinity affinity;
+    private final TenantConnectionQuota quota;
+
+    // Keyed by the physical (unwrapped) connection; entries vanish when the pool discards the connection
+    private final Map<Connection, String> boundSchemas = Collections.synchronizedMap(new WeakHashMap<>());
+    private final LongAdder schemaSwitches = new LongAdder();
+    private final LongAdder schemaSwitchesAvoided = new LongAdder();
 
     public SchemaMultiTenantConnectionProvider(DataSource dataSource) {
+        this(dataSource, null, TenantConnectionAffinity.disabled(), null);
+    }
+
+    SchemaMultiTenantConnectionProvider(DataSource dataSource, String sharedSchema,
+                                        TenantConnectionAffinity affinity, TenantConnectionQuota quota) {
         this.dataSource = dataSource;
+        this.sharedSchema = sharedSchema != null ? validateTenantIdentifier(sharedSchema) : null;
+        this.affinity = affinity;
+        this.quota = quota;
+        affinity.setReleaser(this::returnToPool);
     }
 
     @Override
@@ -17,7 +64,132 @@ public class SchemaMultiTenantConnectionProvider extends AbstractDataSourceBased
     }
 
     @Override
-    protected DataSource selectDataSource(Object tenantIdentifier) {
-        return dataSource; // Use same datasource, schema is switched by Hibernate
+    protected DataSource selectDataSource(String tenantIdentifier) {
+        return dataSource;
+    }
+
+    @Override
+    public Connection getAnyConnection() throws SQLException {
+        Connection connection = super.getAnyConnection();
+        bindSchema(connection, DEFAULT_SCHEMA);
+        return connection;
+    }
+
+    @Override
+    public Connection getConnection(String tenantIdentifier) throws SQLException {
+        String tenant = validateTenantIdentifier(tenantIdentifier);
+        String schema = schemaOf(tenant);
+        TenantConnectionQuota.Lease lease = quota != null ? quota.acquire(tenant) : null;
+        Connection connection = null;
+        try {
+            connection = affinity.poll(schema);
+            if (connection == null && isPoolExhausted()) {
+                connection = affinity.steal();
+            }
+            if (connection == null) {
+                connection = selectDataSource(schema).getConnection();
+            }
+            bindSchema(connection, schema);
+        } catch (SQLException | RuntimeException e) {
+            if (lease != null) {
+                lease.release();
+            }
+            if (connection != null) {
+                connection.close();
+            }
+            throw e;
+        }
+        if (lease != null) {
+            quota.attach(connection, lease);
+        }
+        return connection;
+    }
+
+    @Override
+    public void releaseConnection(String tenantIdentifier, Connection connection) throws SQLException {
+        if (quota != null) {
+            quota.release(connection);
+        }
+        // Only connections in a clean, auto-commit state may skip the pool's own reset on close
+        if (connection.isClosed() || !connection.getAutoCommit() || connection.isReadOnly()
+                || !affinity.offer(schemaOf(tenantIdentifier), connection)) {
+            returnToPool(connection);
+        }
+    }
+
+    /**
+     * Validates a tenant identifier before it is used as a schema name.
+     *
+     * @param tenantIdentifier The tenant identifier resolved for the current session
+     * @return The identifier, safe to use as an unquoted schema name
+     * @throws IllegalArgumentException if the identifier is not a valid schema name
+     */
+    public static String validateTenantIdentifier(String tenantIdentifier) {
+        if (tenantIdentifier == null || !TENANT_ID_PATTERN.matcher(tenantIdentifier).matches()) {
+            throw new IllegalArgumentException("Invalid tenant identifier: " + tenantIdentifier);
+        }
+        return tenantIdentifier;
+    }
+
+    public long getSchemaSwitches() {
+        return schemaSwitches.sum();
+    }
+
+    public long getSchemaSwitchesAvoided() {
+        return schemaSwitchesAvoided.sum();
+    }
+
+    public long getAffinityHits() {
+        return affinity.getHits();
+    }
+
+    public long getAffinityMisses() {
+        return affinity.getMisses();
+    }
+
+    /**
+     * Per-tenant connection usage, wait times and rejections. Empty when quotas are disabled.
+     */
+    public Map<String, TenantPoolStats> getTenantPoolStats() {
+        return quota != null ? quota.snapshot() : Collections.emptyMap();
+    }
+
+    private String schemaOf(String tenant) {
+        return sharedSchema != null ? sharedSchema : tenant;
+    }
+
+    private void bindSchema(Connection connection, String schema) throws SQLException {
+        // Switch on the physical connection so the pool does not mark the schema dirty and reset it on close
+        Connection physical = connection.unwrap(Connection.class);
+        if (schema.equals(boundSchemas.get(physical))) {
+            schemaSwitchesAvoided.increment();
+            return;
+        }
+        physical.setSchema(schema);
+        schemaSwitches.increment();
+        // Inside an open transaction the switch would be undone by a rollback, so it is not remembered
+        if (connection.getAutoCommit()) {
+            boundSchemas.put(physical, schema);
+        } else {
+            boundSchemas.remove(physical);
+        }
+    }
+
+    // The connection keeps its schema; the next checkout binds whatever schema it needs
+    private void returnToPool(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    private boolean isPoolExhausted() {
+        if (affinity.getParked() == 0 || !(dataSource instanceof HikariDataSource hikari)) {
+            return false;
+        }
+        HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+        return pool != null && pool.getIdleConnections() == 0 && pool.getTotalConnections() >= hikari.getMaximumPoolSize();
+    }
+
+    @Override
+    public void stop() {
+        affinity.close();
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,13 @@
 package com.example.multitenant1.config;
 
+import com.example.multitenant1.security.BoundedPasswordEncoder;
 import com.example.multitenant1.security.JwtAuthenticationFilter;
+import com.example.multitenant1.security.PasswordHashingExecutor;
+import com.example.multitenant1.security.PlatformAdminAuthenticationFilter;
 import com.example.multitenant1.service.UserDetailsServiceImpl;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -12,7 +17,6 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
@@ -26,18 +30,41 @@ public class SecurityConfig {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    @Autowired
+    private PlatformAdminAuthenticationFilter platformAdminAuthenticationFilter;
+
+    @Autowired
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    // Raising the cost re-hashes existing passwords on their next login, while hashing capacity allows
+    @Value("${security.password.bcrypt-strength:10}")
+    private int bcryptStrength;
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
             .csrf(csrf -> csrf.disable())
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
+                // Async results are written back on a second dispatch of an already authorized request
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                // Bulk imports may create administrators: a tenant's ADMIN imports into its own tenant (its
+                // token is rejected for any other), the platform administrator creates a tenant's first ones.
+                // Public registration only makes users.
+                .requestMatchers("/auth/register/bulk")
+                    .hasAnyAuthority("ROLE_ADMIN", PlatformAdminAuthenticationFilter.AUTHORITY)
                 .requestMatchers("/auth/**").permitAll()
+                // Provisioning, isolation moves and statistics span tenants, so a tenant's ADMIN role is not enough
+                .requestMatchers("/admin/**", "/stats/**").hasAuthority(PlatformAdminAuthenticationFilter.AUTHORITY)
+                // Scraped by Prometheus without credentials; keep the port off the public network
+                .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+                .requestMatchers("/actuator/**").hasAuthority(PlatformAdminAuthenticationFilter.AUTHORITY)
                 .anyRequest().authenticated()
             );
             
         http.authenticationProvider(authenticationProvider());
         http.addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+        http.addFilterAfter(platformAdminAuthenticationFilter, JwtAuthenticationFilter.class);
         
         return http.build();
     }
@@ -47,6 +74,7 @@ public class SecurityConfig {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(userDetailsService);
         authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setUserDetailsPasswordService(userDetailsService);
         return authProvider;
     }
     
@@ -56,7 +84,7 @@ public class SecurityConfig {
     }
     
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public BoundedPasswordEncoder passwordEncoder() {
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(bcryptStrength), passwordHashingExecutor);
     }
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.example.multitenant1.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/* Takes the tenant from the first label of the host name (tenant1.example.com). The label is found
+ * with indexOf rather than a regex split, so the only allocation is the returned substring.
+ */
+final class SubdomainTenantResolver implements TenantResolver {
+
+    @Override
+    public String resolve(HttpServletRequest request) {
+        String host = request.getServerName();
+        if (host == null || host.isEmpty()) {
+            return null;
+        }
+        int dot = host.indexOf('.');
+        // A bare host name has no subdomain; an IP literal (or anything starting with a digit or
+        // a bracket) cannot be a tenant identifier
+        char first = host.charAt(0);
+        if (dot <= 0 || (first >= '0' && first <= '9') || first == '[') {
+            return null;
+        }
+        return host.substring(0, dot);
+    }
+}
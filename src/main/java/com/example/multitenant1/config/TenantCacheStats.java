@@ -0,0 +1,22 @@
+package com.example.multitenant1.config;
+
+/**
+ * Point-in-time counters of one tenant's partition of a second-level cache region.
+ *
+ * @param hits         Lookups answered from the cache
+ * @param misses       Lookups that went to the database
+ * @param hitRatio     hits / (hits + misses)
+ * @param evictions    Entries dropped for size or age
+ * @param entries      Entries currently cached
+ * @param sizeBytes    Approximate heap size of the cached entries
+ * @param maxSizeBytes The partition's size budget, 0 for regions that never evict
+ */
+public record TenantCacheStats(
+        long hits,
+        long misses,
+        double hitRatio,
+        long evictions,
+        long entries,
+        long sizeBytes,
+        long maxSizeBytes) {
+}
@@ -0,0 +1,185 @@
+package com.example.multitenant1.config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/* TenantConnectionAffinity briefly parks released connections per tenant instead of handing them
+ * straight back to the pool. The next checkout for the same tenant reuses a connection that is
+ * already bound to the tenant's schema, so no search_path round trip is needed. Parking is bounded
+ * per tenant and in total, and parked connections are returned to the pool after a short idle time
+ * so they never starve other tenants for long.
+ *
+ * A parked connection is still checked out as far as the pool knows, so it skips the pool's
+ * validation, max-lifetime retirement and leak detection while parked. Affinity is therefore off
+ * unless multitenancy.connection.affinity.enabled is set.
+ */
+class TenantConnectionAffinity implements AutoCloseable {
+
+    private final int maxIdlePerTenant;
+    private final int maxIdleTotal;
+    private final long maxIdleNanos;
+
+    private final Map<String, Deque<Parked>> parked = new ConcurrentHashMap<>();
+    private final AtomicInteger parkedTotal = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final ScheduledExecutorService sweeper;
+    // Hands connections that leave the affinity back to the pool; set by the connection provider
+    private volatile Releaser releaser = Connection::close;
+
+    TenantConnectionAffinity(int maxIdlePerTenant, int maxIdleTotal, Duration maxIdleTime) {
+        this.maxIdlePerTenant = maxIdlePerTenant;
+        this.maxIdleTotal = maxIdleTotal;
+        this.maxIdleNanos = maxIdleTime.toNanos();
+        if (isEnabled()) {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "tenant-connection-affinity");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long periodMillis = Math.max(10, maxIdleTime.toMillis() / 2);
+            sweeper.scheduleWithFixedDelay(this::sweep, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.sweeper = null;
+        }
+    }
+
+    static TenantConnectionAffinity disabled() {
+        return new TenantConnectionAffinity(0, 0, Duration.ZERO);
+    }
+
+    void setReleaser(Releaser releaser) {
+        this.releaser = releaser;
+    }
+
+    boolean isEnabled() {
+        return maxIdlePerTenant > 0 && maxIdleTotal > 0;
+    }
+
+    /**
+     * Takes a parked connection for the tenant, or null if none is available.
+     */
+    Connection poll(String tenant) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Deque<Parked> queue = parked.get(tenant);
+        Parked entry = queue != null ? queue.pollFirst() : null;
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        parkedTotal.decrementAndGet();
+        hits.increment();
+        return entry.connection;
+    }
+
+    /**
+     * Takes a parked connection of any tenant. Used when the pool itself is exhausted, so parked
+     * connections are never the reason a request waits.
+     */
+    Connection steal() {
+        if (parkedTotal.get() == 0) {
+            return null;
+        }
+        for (Deque<Parked> queue : parked.values()) {
+            Parked entry = queue.pollLast();
+            if (entry != null) {
+                parkedTotal.decrementAndGet();
+                return entry.connection;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parks the connection for the tenant. Returns false if the caller must release it to the pool.
+     */
+    boolean offer(String tenant, Connection connection) {
+        if (!isEnabled()) {
+            return false;
+        }
+        Deque<Parked> queue = parked.computeIfAbsent(tenant, t -> new ConcurrentLinkedDeque<>());
+        if (queue.size() >= maxIdlePerTenant) {
+            return false;
+        }
+        if (parkedTotal.incrementAndGet() > maxIdleTotal) {
+            parkedTotal.decrementAndGet();
+            return false;
+        }
+        queue.offerFirst(new Parked(connection, System.nanoTime()));
+        return true;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    int getParked() {
+        return parkedTotal.get();
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        for (Deque<Parked> queue : parked.values()) {
+            // Oldest entries sit at the tail
+            Parked entry;
+            while ((entry = queue.peekLast()) != null && now - entry.parkedAtNanos > maxIdleNanos) {
+                if (queue.removeLastOccurrence(entry)) {
+                    parkedTotal.decrementAndGet();
+                    release(entry.connection);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+        for (Deque<Parked> queue : parked.values()) {
+            Parked entry;
+            while ((entry = queue.pollFirst()) != null) {
+                parkedTotal.decrementAndGet();
+                release(entry.connection);
+            }
+        }
+    }
+
+    private void release(Connection connection) {
+        try {
+            releaser.release(connection);
+        } catch (SQLException ignored) {
+            // The pool evicts broken connections on its own
+        }
+    }
+
+    interface Releaser {
+        void release(Connection connection) throws SQLException;
+    }
+
+    private static final class Parked {
+        private final Connection connection;
+        private final long parkedAtNanos;
+
+        private Parked(Connection connection, long parkedAtNanos) {
+            this.connection = connection;
+            this.parkedAtNanos = parkedAtNanos;
+        }
+    }
+}
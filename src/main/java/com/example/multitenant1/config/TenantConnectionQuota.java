@@ -0,0 +1,239 @@
+package com.example.multitenant1.config;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/* TenantConnectionQuota partitions the shared pool into per-tenant bulkheads.
+ * Each tenant may hold up to reservedPerTenant connections on its own account and borrow further
+ * connections from a shared overflow area, but never more than maxPerTenant in total. Waiters at a
+ * tenant's cap queue fairly on that tenant's semaphore only, so a bursting tenant cannot delay others.
+ *
+ * Reservations come out of the part of the pool the overflow leaves over, so leases never outnumber
+ * pooled connections and nobody waits inside Hikari, where waiting is not fair per tenant. Once that
+ * part is taken, further tenants start on the overflow. Partitions of tenants without connections are
+ * dropped, least recently used first, once more than maxTenants are tracked.
+ */
+class TenantConnectionQuota {
+
+    private final int maxPerTenant;
+    private final int reservedPerTenant;
+    private final long acquireTimeoutNanos;
+    private final int maxTenants;
+    private final int reservedCapacity;
+    // Connections held within tenants' reservations: what the overflow leaves of the pool
+    private final Semaphore reserved;
+    private final Semaphore overflow;
+
+    private final ConcurrentMap<String, Partition> partitions = new ConcurrentHashMap<>();
+    private final Map<Connection, Lease> leases = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * @param poolSize          Maximum size of the shared pool the quota is in front of
+     * @param maxPerTenant      Connections one tenant may hold at most
+     * @param reservedPerTenant Connections a tenant holds without touching the overflow, while the pool allows
+     * @param overflowSize      Connections shared by tenants beyond their reservation
+     * @param acquireTimeout    How long a checkout waits for its tenant's cap and the overflow
+     * @param maxTenants        Tenants whose partitions are kept once they hold no connection
+     * @throws IllegalStateException if the overflow leaves no connections of the pool for reservations
+     */
+    TenantConnectionQuota(int poolSize, int maxPerTenant, int reservedPerTenant, int overflowSize,
+                          Duration acquireTimeout, int maxTenants) {
+        if (overflowSize >= poolSize) {
+            throw new IllegalStateException("multitenancy.connection.quota.overflow-size (" + overflowSize
+                    + ") must be smaller than the connection pool (" + poolSize + ")");
+        }
+        this.maxPerTenant = maxPerTenant;
+        this.reservedPerTenant = Math.min(reservedPerTenant, maxPerTenant);
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.maxTenants = maxTenants;
+        this.reservedCapacity = poolSize - overflowSize;
+        this.reserved = new Semaphore(reservedCapacity);
+        this.overflow = new Semaphore(overflowSize, true);
+    }
+
+    /**
+     * How many tenants can hold their full reservation at the same time.
+     */
+    int getTenantsWithFullReservation() {
+        return reservedPerTenant == 0 ? Integer.MAX_VALUE : reservedCapacity / reservedPerTenant;
+    }
+
+    /**
+     * Reserves a connection slot for the tenant, waiting fairly behind the tenant's other requests.
+     *
+     * @return A lease that must be attached to the connection or released
+     * @throws SQLTransientConnectionException if no slot became available within the acquire timeout
+     */
+    Lease acquire(String tenant) throws SQLTransientConnectionException {
+        Partition partition = enter(tenant);
+        long start = System.nanoTime();
+        try {
+            if (!partition.cap.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                partition.rejections.increment();
+                leave(tenant, partition);
+                throw new SQLTransientConnectionException(
+                        "Tenant " + tenant + " reached its connection limit of " + maxPerTenant);
+            }
+            // Within the reservation if the pool still has room for it, otherwise like any extra connection
+            Semaphore area = overflow;
+            if (partition.inUse.incrementAndGet() <= reservedPerTenant && reserved.tryAcquire()) {
+                area = reserved;
+            } else {
+                long remaining = acquireTimeoutNanos - (System.nanoTime() - start);
+                if (!overflow.tryAcquire(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                    partition.inUse.decrementAndGet();
+                    partition.cap.release();
+                    partition.rejections.increment();
+                    leave(tenant, partition);
+                    throw new SQLTransientConnectionException(
+                            "Shared connection overflow exhausted for tenant " + tenant);
+                }
+            }
+            partition.recordAcquire(System.nanoTime() - start, area == overflow);
+            return new Lease(tenant, partition, area);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            leave(tenant, partition);
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+        }
+    }
+
+    // Counts the caller as a user of the tenant's partition, so it cannot be evicted under it
+    private Partition enter(String tenant) {
+        boolean[] created = new boolean[1];
+        Partition partition = partitions.compute(tenant, (t, existing) -> {
+            Partition p = existing;
+            if (p == null) {
+                p = new Partition(maxPerTenant);
+                created[0] = true;
+            }
+            p.users++;
+            p.lastUsedNanos = System.nanoTime();
+            return p;
+        });
+        if (created[0] && partitions.size() > maxTenants) {
+            evictIdle();
+        }
+        return partition;
+    }
+
+    private void leave(String tenant, Partition partition) {
+        partitions.computeIfPresent(tenant, (t, p) -> {
+            if (p == partition) {
+                p.users--;
+            }
+            return p;
+        });
+    }
+
+    // Drops partitions without users, least recently used first, down to three quarters of maxTenants
+    private void evictIdle() {
+        int excess = partitions.size() - maxTenants * 3 / 4;
+        partitions.entrySet().stream()
+                .filter(entry -> entry.getValue().users == 0)
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().lastUsedNanos))
+                .limit(Math.max(0, excess))
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(tenant -> partitions.computeIfPresent(tenant, (t, p) -> p.users == 0 ? null : p));
+    }
+
+    void attach(Connection connection, Lease lease) {
+        leases.put(connection, lease);
+    }
+
+    void release(Connection connection) {
+        Lease lease = leases.remove(connection);
+        if (lease != null) {
+            lease.release();
+        }
+    }
+
+    Map<String, TenantPoolStats> snapshot() {
+        Map<String, TenantPoolStats> stats = new LinkedHashMap<>();
+        partitions.forEach((tenant, partition) -> stats.put(tenant, partition.snapshot(maxPerTenant)));
+        return stats;
+    }
+
+    int getOverflowAvailable() {
+        return overflow.availablePermits();
+    }
+
+    int getTrackedTenants() {
+        return partitions.size();
+    }
+
+    final class Lease {
+        private final String tenant;
+        private final Partition partition;
+        private final Semaphore area;
+
+        private Lease(String tenant, Partition partition, Semaphore area) {
+            this.tenant = tenant;
+            this.partition = partition;
+            this.area = area;
+        }
+
+        void release() {
+            area.release();
+            partition.inUse.decrementAndGet();
+            partition.cap.release();
+            leave(tenant, partition);
+        }
+    }
+
+    private static final class Partition {
+        private final Semaphore cap;
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final AtomicInteger peakInUse = new AtomicInteger();
+        private final LongAdder acquisitions = new LongAdder();
+        private final LongAdder overflowAcquisitions = new LongAdder();
+        private final LongAdder rejections = new LongAdder();
+        private final LongAdder totalWaitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        // Threads waiting for or holding a lease; only changed inside partitions.compute
+        private volatile int users;
+        private volatile long lastUsedNanos;
+
+        private Partition(int maxPerTenant) {
+            this.cap = new Semaphore(maxPerTenant, true);
+        }
+
+        private void recordAcquire(long waitNanos, boolean borrowed) {
+            acquisitions.increment();
+            if (borrowed) {
+                overflowAcquisitions.increment();
+            }
+            totalWaitNanos.add(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            peakInUse.accumulateAndGet(inUse.get(), Math::max);
+        }
+
+        private TenantPoolStats snapshot(int maxPerTenant) {
+            long count = acquisitions.sum();
+            return new TenantPoolStats(
+                    inUse.get(),
+                    peakInUse.get(),
+                    maxPerTenant,
+                    (double) inUse.get() / maxPerTenant,
+                    count,
+                    overflowAcquisitions.sum(),
+                    rejections.sum(),
+                    count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.sum() / count),
+                    TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()));
+        }
+    }
+}
@@ -1,33 +1,100 @@
 package com.example.multitenant1.config;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
-/* TenantContext is a utility class that holds the current tenant identifier in a ThreadLocal variable.
- * This allows us to set and get the current tenant for the duration of a request.
- * It also stores the current user associated with the tenant.
+/* TenantContext holds the current tenant identifier and the user associated with it for the
+ * duration of a request. Both live in one immutable Snapshot per thread, so the pair can be captured
+ * on the request thread and installed on a child task (see TenantContextTaskDecorator) without
+ * InheritableThreadLocal, which would leak tenants across pooled and virtual threads. A wrapped task
+ * restores whatever context its worker thread had before, so pooled workers never keep a tenant.
  */
-
 public class TenantContext {
-    private static final ThreadLocal<String> CURRENT_TENANT = new ThreadLocal<>();
-    private static final ThreadLocal<Object> CURRENT_USER = new ThreadLocal<>();
+    private static final ThreadLocal<Snapshot> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Immutable tenant and user pair captured from a thread.
+     */
+    public record Snapshot(String tenant, Object user) {
+        private static final Snapshot EMPTY = new Snapshot(null, null);
+
+        /**
+         * Wraps a task so it runs with this snapshot installed and the worker's own context restored afterwards.
+         */
+        public Runnable wrap(Runnable task) {
+            return () -> {
+                Snapshot previous = install(this);
+                try {
+                    task.run();
+                } finally {
+                    restore(previous);
+                }
+            };
+        }
+
+        public <T> Callable<T> wrap(Callable<T> task) {
+            return () -> {
+                Snapshot previous = install(this);
+                try {
+                    return task.call();
+                } finally {
+                    restore(previous);
+                }
+            };
+        }
+    }
 
     public static void setCurrentTenant(String tenant) {
-        CURRENT_TENANT.set(tenant);
+        CURRENT.set(new Snapshot(tenant, current().user()));
     }
 
     public static String getCurrentTenant() {
-        return CURRENT_TENANT.get();
+        return current().tenant();
     }
     
     public static void setCurrentUser(Object user) {
-        CURRENT_USER.set(user);
+        CURRENT.set(new Snapshot(current().tenant(), user));
     }
     
     public static Object getCurrentUser() {
-        return CURRENT_USER.get();
+        return current().user();
     }
 
     public static void clear() {
-        CURRENT_TENANT.remove();
-        CURRENT_USER.remove();
+        CURRENT.remove();
+    }
+
+    /**
+     * Captures the calling thread's tenant and user for hand-off to another thread.
+     */
+    public static Snapshot capture() {
+        return current();
+    }
+
+    /**
+     * Returns an executor that runs every task with the context of the thread that submitted it,
+     * e.g. for CompletableFuture.supplyAsync(task, TenantContext.wrap(executor)).
+     */
+    public static Executor wrap(Executor executor) {
+        return task -> executor.execute(capture().wrap(task));
+    }
+
+    private static Snapshot current() {
+        Snapshot snapshot = CURRENT.get();
+        return snapshot != null ? snapshot : Snapshot.EMPTY;
+    }
+
+    private static Snapshot install(Snapshot snapshot) {
+        Snapshot previous = CURRENT.get();
+        CURRENT.set(snapshot);
+        return previous;
+    }
+
+    private static void restore(Snapshot previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
     }
 }
@@ -0,0 +1,21 @@
+package com.example.multitenant1.config;
+
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+/* TenantContextTaskDecorator carries the submitting thread's tenant, user and Spring Security
+ * context into tasks run by Spring's task executors (@Async methods, the MVC async executor).
+ * Spring Boot applies a single TaskDecorator bean to its auto-configured executors, including the
+ * virtual-thread executor used when spring.threads.virtual.enabled=true.
+ */
+@Component
+public class TenantContextTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        TenantContext.Snapshot snapshot = TenantContext.capture();
+        return new DelegatingSecurityContextRunnable(snapshot.wrap(runnable), SecurityContextHolder.getContext());
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.multitenant1.config;
+
+/**
+ * Point-in-time state of one tenant's dedicated connection pool in database-per-tenant mode.
+ *
+ * @param active   Connections currently in use
+ * @param idle     Open connections waiting in the pool
+ * @param total    All open connections
+ * @param awaiting Threads waiting for a connection
+ */
+public record TenantDataSourceStats(int active, int idle, int total, int awaiting) {
+}
@@ -0,0 +1,49 @@
+package com.example.multitenant1.config;
+
+/* TenantDatabaseRegistry maps a tenant to the JDBC coordinates of its own database.
+ * The URL is derived from a template such as jdbc:postgresql://localhost:5432/{tenant},
+ * which also makes it easy to run several tenant databases on one local PostgreSQL instance.
+ * The default tenant, which requests without a tenant resolve to, is the application's primary
+ * database rather than one named after it.
+ */
+public class TenantDatabaseRegistry {
+
+    static final String DEFAULT_TENANT = "public";
+    private static final String TENANT_PLACEHOLDER = "{tenant}";
+
+    private final String urlTemplate;
+    private final String username;
+    private final String password;
+    private final String defaultUrl;
+    private final String defaultUsername;
+    private final String defaultPassword;
+
+    public TenantDatabaseRegistry(String urlTemplate, String username, String password,
+                                  String defaultUrl, String defaultUsername, String defaultPassword) {
+        if (!urlTemplate.contains(TENANT_PLACEHOLDER)) {
+            throw new IllegalArgumentException("Tenant database URL template must contain " + TENANT_PLACEHOLDER);
+        }
+        this.urlTemplate = urlTemplate;
+        this.username = username;
+        this.password = password;
+        this.defaultUrl = defaultUrl;
+        this.defaultUsername = defaultUsername;
+        this.defaultPassword = defaultPassword;
+    }
+
+    public boolean isDefaultTenant(String tenantId) {
+        return DEFAULT_TENANT.equals(tenantId);
+    }
+
+    public String getJdbcUrl(String tenantId) {
+        return isDefaultTenant(tenantId) ? defaultUrl : urlTemplate.replace(TENANT_PLACEHOLDER, tenantId);
+    }
+
+    public String getUsername(String tenantId) {
+        return isDefaultTenant(tenantId) ? defaultUsername : username;
+    }
+
+    public String getPassword(String tenantId) {
+        return isDefaultTenant(tenantId) ? defaultPassword : password;
+    }
+}
@@ -1,15 +1,34 @@
 package com.example.multitenant1.config;
 
-import com.example.multitenant1.security.JwtTokenProvider;
+import com.example.multitenant1.security.VerifiedClaims;
+import com.example.multitenant1.service.KnownTenants;
+import com.example.multitenant1.service.TenantMigrationService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
-import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/* TenantInterceptor resolves the tenant of each request, turns away tenants that are not registered
+ * and tokens presented for a tenant other than their own, waits for a pending schema migration of
+ * the tenant, and applies the tenant's rate limit. The resolvers are chosen once at startup from
+ * multitenancy.tenant-identifier-mode, a comma-separated list tried in order (e.g.
+ * header,subdomain,token); the first resolver with an answer wins.
+ */
 @Component
 public class TenantInterceptor implements HandlerInterceptor {
     
@@ -20,48 +39,107 @@ public class TenantInterceptor implements HandlerInterceptor {
     private String tenantHeader;
 
     @Autowired
-    private JwtTokenProvider jwtTokenProvider;
+    private KnownTenants knownTenants;
+
+    @Autowired
+    private TenantMetrics tenantMetrics;
+
+    @Autowired
+    private TenantRateLimiter rateLimiter;
+
+    @Autowired
+    private TenantMigrationService tenantMigrationService;
+
+    private TenantResolver[] resolvers;
+    private TenantMetrics.TenantMeters<Timer> resolvedTimers;
+    private TenantMetrics.TenantMeters<Timer> missingTimers;
+    private TenantMetrics.TenantMeters<Timer> unknownTimers;
+    private TenantMetrics.TenantMeters<Timer> mismatchTimers;
+    private TenantMetrics.TenantMeters<Counter> rateLimitRejections;
+
+    @PostConstruct
+    public void init() {
+        resolvedTimers = tenantMetrics.timers("tenant.resolution", "outcome", "resolved");
+        missingTimers = tenantMetrics.timers("tenant.resolution", "outcome", "missing");
+        unknownTimers = tenantMetrics.timers("tenant.resolution", "outcome", "unknown");
+        mismatchTimers = tenantMetrics.timers("tenant.resolution", "outcome", "mismatch");
+        rateLimitRejections = tenantMetrics.counters("tenant.rate.limit.rejections");
+        List<TenantResolver> chain = new ArrayList<>();
+        for (String mode : tenantIdentifierMode.split(",")) {
+            chain.add(switch (mode.trim().toLowerCase()) {
+                case "header" -> new HeaderTenantResolver(tenantHeader);
+                case "subdomain" -> new SubdomainTenantResolver();
+                case "token" -> new ClaimsTenantResolver();
+                default -> throw new IllegalStateException("Unknown tenant identifier mode: " + mode.trim());
+            });
+        }
+        resolvers = chain.toArray(TenantResolver[]::new);
+    }
     
     @Override
-    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        long start = System.nanoTime();
         String tenantId = null;
-        
-        // Extract tenant ID based on configured mode
-        switch (tenantIdentifierMode.toLowerCase()) {
-            case "header":
-                tenantId = request.getHeader(tenantHeader);
-                break;
-                
-            case "subdomain":
-                String host = request.getServerName();
-                if (host.contains(".")) {
-                    tenantId = host.split("\\.")[0];
-                }
-                break;
-                
-            case "token":
-                String authHeader = request.getHeader("Authorization");
-                if (authHeader != null && authHeader.startsWith("Bearer ")) {
-                    try {
-                        String jwt = authHeader.substring(7);
-                        tenantId = jwtTokenProvider.extractTenantId(jwt);
-                    } catch (Exception e) {
-                        // If token parsing fails, log the error but continue
-                        // We don't want to block requests just because token extraction failed
-                        // Authentication filter will handle invalid tokens
-                        System.err.println("Failed to extract tenant from token: " + e.getMessage());
-                    }
-                }
+        for (TenantResolver resolver : resolvers) {
+            tenantId = resolver.resolve(request);
+            if (tenantId != null) {
                 break;
+            }
+        }
+
+        // A verified token is good for its own tenant only; a header or subdomain must not carry it elsewhere
+        if (tenantId != null && request.getAttribute(VerifiedClaims.REQUEST_ATTRIBUTE) instanceof VerifiedClaims claims
+                && claims.getTenantId() != null && !tenantId.equals(claims.getTenantId())) {
+            mismatchTimers.of(claims.getTenantId()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            TenantContext.clear();
+            reject(response, HttpStatus.FORBIDDEN, "Token does not belong to this tenant");
+            return false;
         }
-        
-        if (StringUtils.hasText(tenantId)) {
+
+        if (tenantId != null) {
             TenantContext.setCurrentTenant(tenantId);
         }
-        
+        // Without a resolved tenant the one JwtAuthenticationFilter took from the token stays in effect
+        String tenant = tenantId != null ? tenantId : TenantContext.getCurrentTenant();
+        if (tenant != null && !knownTenants.isKnown(tenant)) {
+            // The identifier came from the client and is unbounded, so it is not used as a tag value
+            unknownTimers.of(null).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            TenantContext.clear();
+            reject(response, HttpStatus.BAD_REQUEST, "Unknown tenant");
+            return false;
+        }
+        long resolved = System.nanoTime();
+        (tenantId != null ? resolvedTimers : missingTimers).of(tenant).record(resolved - start, TimeUnit.NANOSECONDS);
+
+        // Waits while the first request for a drifted tenant migrates it; 503 only on timeout or failure
+        if (tenant != null && !tenantMigrationService.awaitMigration(tenant)) {
+            TenantContext.clear();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "5");
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, "Tenant schema is being migrated");
+            return false;
+        }
+
+        // An async dispatch continues a request that was admitted already
+        if (rateLimiter.isEnabled() && request.getDispatcherType() != DispatcherType.ASYNC) {
+            long waitNanos = rateLimiter.tryAcquire(tenant, resolved);
+            if (waitNanos > 0) {
+                rateLimitRejections.of(tenant).increment();
+                response.setHeader(HttpHeaders.RETRY_AFTER,
+                        String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999))));
+                reject(response, HttpStatus.TOO_MANY_REQUESTS, "Too many requests for this tenant");
+                return false;
+            }
+        }
         return true;
     }
 
+    private static void reject(HttpServletResponse response, HttpStatus status, String error) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"" + error + "\"}");
+    }
+
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
         TenantContext.clear();
@@ -0,0 +1,258 @@
+package com.example.multitenant1.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/* TenantMetrics hands out the hot-path timers and counters with a "tenant" tag. Every tenant value
+ * multiplies the number of series, so only the top-K tenants by recent activity get their own value
+ * and all others share "other". Activity is counted per tenant (bounded, decayed by half on every
+ * refresh); each refresh recomputes the top-K set and removes the meters of tenants that fell out
+ * of it, so a metric never has more than K + 1 tenant values for long.
+ *
+ * Meters are registered once per name, tags and tenant tag value and then looked up from a
+ * TenantMeters family, so recording on the request path is a few hash lookups: no meter builder,
+ * no registry lookup and no pattern match for a tenant that is already tagged.
+ */
+@Component
+public class TenantMetrics {
+
+    public static final String TENANT_TAG = "tenant";
+    static final String OTHER = "other";
+    private static final String DEFAULT_TENANT = "public";
+
+    // Same shape as a schema name; anything else is client garbage and never gets its own tag value
+    private static final Pattern TENANT_ID_PATTERN = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${metrics.tenant-tags.max-tenants:20}")
+    private int maxTaggedTenants;
+
+    // Tenants whose activity is counted; tenants beyond this are not counted until a refresh frees room
+    @Value("${metrics.tenant-tags.max-tracked:10000}")
+    private long maxTrackedTenants;
+
+    @Value("${metrics.tenant-tags.refresh-interval:PT1M}")
+    private Duration refreshInterval;
+
+    private final Map<String, LongAdder> activity = new ConcurrentHashMap<>();
+    private final Map<List<String>, TenantMeters<?>> families = new ConcurrentHashMap<>();
+    private volatile Set<String> tagged = Set.of();
+    private ScheduledExecutorService refresher;
+
+    @PostConstruct
+    public void init() {
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tenant-metrics-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMillis = refreshInterval.toMillis();
+        refresher.scheduleWithFixedDelay(this::refresh, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * The timers of one metric, one per tenant tag value. Hot paths keep the family in a field.
+     *
+     * @param name Meter name
+     * @param tags Extra tags as key/value pairs, from a small fixed set of values
+     * @return The family, shared by all callers asking for the same name and tags
+     */
+    @SuppressWarnings("unchecked")
+    public TenantMeters<Timer> timers(String name, String... tags) {
+        return (TenantMeters<Timer>) families.computeIfAbsent(familyKey("timer", name, tags), key ->
+                new TenantMeters<>(this, tag -> Timer.builder(name).tag(TENANT_TAG, tag).tags(tags).register(registry)));
+    }
+
+    /**
+     * The counters of one metric, one per tenant tag value. Hot paths keep the family in a field.
+     *
+     * @param name Meter name
+     * @param tags Extra tags as key/value pairs, from a small fixed set of values
+     * @return The family, shared by all callers asking for the same name and tags
+     */
+    @SuppressWarnings("unchecked")
+    public TenantMeters<Counter> counters(String name, String... tags) {
+        return (TenantMeters<Counter>) families.computeIfAbsent(familyKey("counter", name, tags), key ->
+                new TenantMeters<>(this, tag -> Counter.builder(name).tag(TENANT_TAG, tag).tags(tags).register(registry)));
+    }
+
+    /**
+     * A timer tagged with the tenant's tag value and the given extra tags.
+     *
+     * @param name     Meter name
+     * @param tenantId Tenant the measurement belongs to; null counts as the default tenant
+     * @param tags     Extra tags as key/value pairs, from a small fixed set of values
+     * @return The timer to record into
+     */
+    public Timer timer(String name, String tenantId, String... tags) {
+        return timers(name, tags).of(tenantId);
+    }
+
+    /**
+     * A counter tagged with the tenant's tag value and the given extra tags.
+     *
+     * @param name     Meter name
+     * @param tenantId Tenant the event belongs to; null counts as the default tenant
+     * @param tags     Extra tags as key/value pairs, from a small fixed set of values
+     * @return The counter to increment
+     */
+    public Counter counter(String name, String tenantId, String... tags) {
+        return counters(name, tags).of(tenantId);
+    }
+
+    /**
+     * The tenant tag value for a tenant: its own identifier while it is among the top-K tenants,
+     * "other" otherwise. Also counts the call as activity of the tenant.
+     *
+     * @param tenantId Tenant identifier; null counts as the default tenant
+     * @return The value to use for the tenant tag
+     */
+    public String tagOf(String tenantId) {
+        String tenant = tenantId != null ? tenantId : DEFAULT_TENANT;
+        Set<String> current = tagged;
+        if (current.contains(tenant)) {
+            countActivity(tenant);
+            return tenant;
+        }
+        // Only identifiers that were never admitted are checked against the pattern
+        if (!TENANT_ID_PATTERN.matcher(tenant).matches()) {
+            return OTHER;
+        }
+        countActivity(tenant);
+        // Until the first refresh has data, tenants are admitted as they show up
+        return current.size() < maxTaggedTenants && admit(tenant) ? tenant : OTHER;
+    }
+
+    Set<String> getTaggedTenants() {
+        return tagged;
+    }
+
+    private void countActivity(String tenant) {
+        LongAdder count = activity.get(tenant);
+        if (count == null) {
+            if (activity.size() >= maxTrackedTenants) {
+                return;
+            }
+            count = activity.computeIfAbsent(tenant, t -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    private synchronized boolean admit(String tenant) {
+        if (tagged.contains(tenant)) {
+            return true;
+        }
+        if (tagged.size() >= maxTaggedTenants) {
+            return false;
+        }
+        Set<String> next = new HashSet<>(tagged);
+        next.add(tenant);
+        tagged = Set.copyOf(next);
+        return true;
+    }
+
+    synchronized void refresh() {
+        Map<String, Long> counts = new HashMap<>();
+        activity.forEach((tenant, adder) -> {
+            // Halve instead of reset, so the ranking reflects more than the last interval
+            long count = adder.sumThenReset();
+            adder.add(count / 2);
+            counts.put(tenant, count);
+        });
+        // Tenants with no activity left make room for new ones
+        counts.forEach((tenant, count) -> {
+            if (count / 2 == 0) {
+                activity.remove(tenant);
+            }
+        });
+        tagged = counts.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(maxTaggedTenants)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toUnmodifiableSet());
+        removeUntaggedMeters();
+    }
+
+    private void removeUntaggedMeters() {
+        Set<String> current = tagged;
+        for (Meter meter : registry.getMeters()) {
+            String tenant = meter.getId().getTag(TENANT_TAG);
+            if (tenant != null && !tenant.equals(OTHER) && !current.contains(tenant)) {
+                registry.remove(meter);
+            }
+        }
+        // After the registry, so a meter looked up in between is at worst one that was just removed
+        families.values().forEach(family -> family.retain(current));
+    }
+
+    private static List<String> familyKey(String type, String name, String... tags) {
+        List<String> key = new ArrayList<>(tags.length + 2);
+        key.add(type);
+        key.add(name);
+        key.addAll(Arrays.asList(tags));
+        return key;
+    }
+
+    /**
+     * The meters of one metric name and tag set, by tenant tag value.
+     */
+    public static final class TenantMeters<M extends Meter> {
+        private final TenantMetrics metrics;
+        private final Function<String, M> factory;
+        private final Map<String, M> meters = new ConcurrentHashMap<>();
+
+        private TenantMeters(TenantMetrics metrics, Function<String, M> factory) {
+            this.metrics = metrics;
+            this.factory = factory;
+        }
+
+        /**
+         * The meter for a tenant, registered on first use of its tag value.
+         *
+         * @param tenantId Tenant the measurement belongs to; null counts as the default tenant
+         * @return The meter to record into
+         */
+        public M of(String tenantId) {
+            String tag = metrics.tagOf(tenantId);
+            M meter = meters.get(tag);
+            return meter != null ? meter : meters.computeIfAbsent(tag, factory);
+        }
+
+        private void retain(Set<String> tagged) {
+            meters.keySet().removeIf(tag -> !tag.equals(OTHER) && !tagged.contains(tag));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.multitenant1.config;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* TenantPartitionedRegionFactory backs Hibernate's second-level entity cache and query cache with
+ * in-process Caffeine caches. Every region is split per tenant (see TenantPartitionedStorageAccess):
+ * Hibernate's cache keys already include the tenant identifier, and the partitions add a size budget
+ * per tenant, so one tenant's working set cannot evict another's, and a whole tenant can be dropped
+ * when its rows are changed behind Hibernate's back.
+ */
+public class TenantPartitionedRegionFactory extends RegionFactoryTemplate {
+
+    private final long maxBytesPerTenant;
+    private final Duration ttl;
+    private final int maxTenants;
+
+    private final Map<String, TenantPartitionedStorageAccess> regions = new ConcurrentHashMap<>();
+
+    public TenantPartitionedRegionFactory(long maxBytesPerTenant, Duration ttl, int maxTenants) {
+        this.maxBytesPerTenant = maxBytesPerTenant;
+        this.ttl = ttl;
+        this.maxTenants = maxTenants;
+    }
+
+    @Override
+    protected void prepareForUse(SessionFactoryOptions settings, Map<String, Object> configValues) {
+    }
+
+    @Override
+    protected void releaseFromUse() {
+        regions.values().forEach(StorageAccess::release);
+        regions.clear();
+    }
+
+    @Override
+    protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+                                                                    DomainDataRegionBuildingContext buildingContext) {
+        return register(new TenantPartitionedStorageAccess(regionConfig.getRegionName(), maxBytesPerTenant, ttl, maxTenants));
+    }
+
+    @Override
+    protected StorageAccess createQueryResultsRegionStorageAccess(String regionName,
+                                                                  SessionFactoryImplementor sessionFactory) {
+        return register(new TenantPartitionedStorageAccess(regionName, maxBytesPerTenant, ttl, maxTenants));
+    }
+
+    @Override
+    protected StorageAccess createTimestampsRegionStorageAccess(String regionName,
+                                                                SessionFactoryImplementor sessionFactory) {
+        return register(new TenantPartitionedStorageAccess(regionName));
+    }
+
+    /**
+     * Drops every cached entity and query result of a tenant. Needed after writes that bypass
+     * Hibernate, such as moving a tenant between schema and shared tables with plain SQL.
+     *
+     * @param tenantId The tenant whose entries are dropped
+     */
+    public void evictTenant(String tenantId) {
+        // Update timestamps stay: they only ever make cached query results look older
+        regions.values().stream()
+                .filter(TenantPartitionedStorageAccess::isEvictable)
+                .forEach(region -> region.evictTenant(tenantId));
+    }
+
+    /**
+     * Hit ratio, evictions and size of every tenant partition, by region and tenant.
+     */
+    public Map<String, Map<String, TenantCacheStats>> getStats() {
+        Map<String, Map<String, TenantCacheStats>> stats = new TreeMap<>();
+        regions.forEach((name, region) -> stats.put(name, region.getStats()));
+        return stats;
+    }
+
+    private TenantPartitionedStorageAccess register(TenantPartitionedStorageAccess region) {
+        regions.put(region.getRegionName(), region);
+        return region;
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.multitenant1.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.hibernate.cache.spi.entry.CacheEntry;
+import org.hibernate.cache.spi.support.AbstractReadWriteAccess;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/* Storage of one second-level cache region, split into one Caffeine cache per tenant. The partition
+ * is chosen by the tenant of the session that reads or writes, so a tenant only ever sees entries
+ * its own sessions put there. Bounded partitions evict by approximate heap size and age; the
+ * timestamps region is unbounded, because a lost timestamp would make stale query results valid.
+ */
+class TenantPartitionedStorageAccess implements DomainDataStorageAccess {
+
+    private static final String DEFAULT_TENANT = "public";
+
+    // Fixed cost of a Caffeine node plus the cache key, which holds the id, entity name and tenant
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int UNKNOWN_VALUE_SIZE = 128;
+
+    private final String regionName;
+    private final long maxBytesPerTenant;
+    private final Duration ttl;
+    private final Cache<String, Cache<Object, Object>> partitions;
+
+    /**
+     * Creates a region whose partitions are bounded by size and age, and whose least recently
+     * used tenants are dropped beyond maxTenants.
+     */
+    TenantPartitionedStorageAccess(String regionName, long maxBytesPerTenant, Duration ttl, int maxTenants) {
+        this.regionName = regionName;
+        this.maxBytesPerTenant = maxBytesPerTenant;
+        this.ttl = ttl;
+        this.partitions = Caffeine.newBuilder().maximumSize(maxTenants).build();
+    }
+
+    /**
+     * Creates a region that never evicts.
+     */
+    TenantPartitionedStorageAccess(String regionName) {
+        this.regionName = regionName;
+        this.maxBytesPerTenant = 0;
+        this.ttl = null;
+        this.partitions = Caffeine.newBuilder().build();
+    }
+
+    String getRegionName() {
+        return regionName;
+    }
+
+    boolean isEvictable() {
+        return ttl != null;
+    }
+
+    @Override
+    public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+        return partition(session).getIfPresent(key);
+    }
+
+    @Override
+    public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+        partition(session).put(key, value);
+    }
+
+    @Override
+    public void removeFromCache(Object key, SharedSessionContractImplementor session) {
+        Cache<Object, Object> partition = partitions.getIfPresent(tenantOf(session));
+        if (partition != null) {
+            partition.invalidate(key);
+        }
+    }
+
+    @Override
+    public boolean contains(Object key) {
+        return partitions.asMap().values().stream().anyMatch(partition -> partition.asMap().containsKey(key));
+    }
+
+    @Override
+    public void evictData() {
+        partitions.asMap().values().forEach(Cache::invalidateAll);
+        partitions.invalidateAll();
+    }
+
+    @Override
+    public void evictData(Object key) {
+        // Called without a session; keys carry the tenant, so at most one partition holds it
+        partitions.asMap().values().forEach(partition -> partition.invalidate(key));
+    }
+
+    void evictTenant(String tenantId) {
+        Cache<Object, Object> partition = partitions.asMap().remove(tenantId != null ? tenantId : DEFAULT_TENANT);
+        if (partition != null) {
+            partition.invalidateAll();
+        }
+    }
+
+    @Override
+    public void release() {
+        evictData();
+    }
+
+    /**
+     * Hit and size counters of each tenant partition, by tenant.
+     */
+    Map<String, TenantCacheStats> getStats() {
+        Map<String, TenantCacheStats> stats = new TreeMap<>();
+        partitions.asMap().forEach((tenant, partition) -> {
+            CacheStats counters = partition.stats();
+            long weight = partition.policy().eviction()
+                    .map(eviction -> eviction.weightedSize().orElse(0L))
+                    .orElse(0L);
+            stats.put(tenant, new TenantCacheStats(
+                    counters.hitCount(),
+                    counters.missCount(),
+                    counters.hitRate(),
+                    counters.evictionCount(),
+                    partition.estimatedSize(),
+                    weight,
+                    maxBytesPerTenant));
+        });
+        return stats;
+    }
+
+    private Cache<Object, Object> partition(SharedSessionContractImplementor session) {
+        return partitions.get(tenantOf(session), tenant -> newPartition());
+    }
+
+    private Cache<Object, Object> newPartition() {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats();
+        if (ttl != null) {
+            builder.maximumWeight(maxBytesPerTenant)
+                    .weigher((key, value) -> ENTRY_OVERHEAD + sizeOf(value, 0))
+                    .expireAfterWrite(ttl);
+        }
+        return builder.build();
+    }
+
+    private static String tenantOf(SharedSessionContractImplementor session) {
+        Object tenant = session != null ? session.getTenantIdentifierValue() : null;
+        return tenant != null ? tenant.toString() : DEFAULT_TENANT;
+    }
+
+    // Approximate heap footprint; cached entity state is disassembled into strings, numbers and arrays
+    private static int sizeOf(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence text) {
+            return 40 + 2 * text.length();
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return 16;
+        }
+        if (depth > 3) {
+            return UNKNOWN_VALUE_SIZE;
+        }
+        if (value instanceof AbstractReadWriteAccess.Item item) {
+            return 32 + sizeOf(item.getValue(), depth + 1);
+        }
+        if (value instanceof CacheEntry entry) {
+            return 32 + sizeOf(entry.getDisassembledState(), depth + 1);
+        }
+        if (value instanceof Object[] array) {
+            int size = 16 + 8 * array.length;
+            for (Object element : array) {
+                size += sizeOf(element, depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof Collection<?> collection) {
+            int size = 32 + 8 * collection.size();
+            for (Object element : collection) {
+                size += sizeOf(element, depth + 1);
+            }
+            return size;
+        }
+        return UNKNOWN_VALUE_SIZE;
+    }
+}
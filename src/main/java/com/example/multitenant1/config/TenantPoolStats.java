@@ -0,0 +1,26 @@
+package com.example.multitenant1.config;
+
+/**
+ * Point-in-time connection usage of one tenant's pool partition.
+ *
+ * @param inUse                Connections the tenant currently holds
+ * @param peakInUse            Highest number of connections held at once
+ * @param maxPerTenant         The tenant's connection cap
+ * @param utilisation          inUse / maxPerTenant
+ * @param acquisitions         Successful checkouts
+ * @param overflowAcquisitions Checkouts served from the shared overflow area
+ * @param rejections           Checkouts that timed out at the tenant's cap or on the overflow area
+ * @param averageWaitMicros    Mean time spent waiting for a slot
+ * @param maxWaitMicros        Longest time spent waiting for a slot
+ */
+public record TenantPoolStats(
+        int inUse,
+        int peakInUse,
+        int maxPerTenant,
+        double utilisation,
+        long acquisitions,
+        long overflowAcquisitions,
+        long rejections,
+        long averageWaitMicros,
+        long maxWaitMicros) {
+}
@@ -0,0 +1,24 @@
+package com.example.multitenant1.config;
+
+/**
+ * Point-in-time rate limiter state of one tenant.
+ *
+ * @param rate       Requests per second the tenant's bucket refills with
+ * @param burst      Bucket size: requests the tenant may send at once after a quiet period
+ * @param weight     The tenant's weight when sharing spare node capacity
+ * @param available  Requests the bucket would admit right now
+ * @param borrowRate Requests per second the tenant may currently borrow beyond its rate; 0 without fair share
+ * @param allowed    Requests admitted from the tenant's own bucket
+ * @param borrowed   Requests admitted from spare node capacity
+ * @param rejected   Requests answered with 429
+ */
+public record TenantRateLimitStats(
+        double rate,
+        int burst,
+        double weight,
+        int available,
+        double borrowRate,
+        long allowed,
+        long borrowed,
+        long rejected) {
+}
@@ -0,0 +1,320 @@
+package com.example.multitenant1.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/* TenantRateLimiter admits requests per tenant with a token bucket, implemented as GCRA (generic cell
+ * rate algorithm): a bucket is a single AtomicLong holding the time at which it will be full again,
+ * so a check is one read and one compare-and-set, with no lock and nothing to refill.
+ *
+ * Each tenant gets rate requests per second with bursts of up to burst requests (defaults, or its own
+ * values under multitenancy.rate-limit.tenants.<id>). In fair-share mode a tenant over its own limit
+ * may borrow node capacity nobody else is using: a node-wide bucket caps the total, and each tenant
+ * may borrow at most its weighted share of the node rate among the tenants active recently.
+ */
+@Component
+public class TenantRateLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(TenantRateLimiter.class);
+
+    private static final String DEFAULT_TENANT = "public";
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Autowired
+    private Environment environment;
+
+    // Off by default: requests without a resolved tenant would all share the default tenant's bucket
+    @Value("${multitenancy.rate-limit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${multitenancy.rate-limit.default-rate:100}")
+    private double defaultRate;
+
+    @Value("${multitenancy.rate-limit.default-burst:200}")
+    private int defaultBurst;
+
+    // Upper bound on tenants with limiter state; the least recently seen are forgotten (their buckets start full)
+    @Value("${multitenancy.rate-limit.max-tenants:10000}")
+    private long maxTenants;
+
+    @Value("${multitenancy.rate-limit.fair-share.enabled:false}")
+    private boolean fairShareEnabled;
+
+    // Requests per second the node as a whole should admit; borrowing stops once it is used up
+    @Value("${multitenancy.rate-limit.fair-share.node-rate:1000}")
+    private double nodeRate;
+
+    @Value("${multitenancy.rate-limit.fair-share.node-burst:2000}")
+    private int nodeBurst;
+
+    // Tenants that sent a request within this window share the node rate by weight
+    @Value("${multitenancy.rate-limit.fair-share.active-window:PT10S}")
+    private Duration activeWindow;
+
+    private Map<String, TenantLimit> tenantLimits = Map.of();
+    private Cache<String, TenantState> tenants;
+    private Bucket node;
+    private ScheduledExecutorService rebalancer;
+
+    @PostConstruct
+    public void init() {
+        tenantLimits = Binder.get(environment)
+                .bind("multitenancy.rate-limit.tenants", Bindable.mapOf(String.class, TenantLimit.class))
+                .orElseGet(HashMap::new);
+        tenants = Caffeine.newBuilder().maximumSize(maxTenants).build();
+        node = new Bucket(nodeRate, nodeBurst);
+        if (enabled && fairShareEnabled) {
+            rebalancer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "tenant-rate-limit-rebalance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            rebalancer.scheduleWithFixedDelay(this::rebalance, 1, 1, TimeUnit.SECONDS);
+        }
+        logger.info("Tenant rate limiting {}: {} requests/s, burst {} by default, {} tenant overrides, fair share {}",
+                enabled ? "enabled" : "disabled", defaultRate, defaultBurst, tenantLimits.size(),
+                fairShareEnabled ? "on (node rate " + nodeRate + "/s)" : "off");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (rebalancer != null) {
+            rebalancer.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes one request from the tenant's bucket, or, in fair-share mode, from spare node capacity.
+     *
+     * @param tenantId The requesting tenant; null counts as the default tenant
+     * @return 0 if the request is admitted, otherwise the nanoseconds until the tenant's bucket admits one again
+     */
+    public long tryAcquire(String tenantId) {
+        return tryAcquire(tenantId, System.nanoTime());
+    }
+
+    /**
+     * Same as {@link #tryAcquire(String)}, for callers that have just read the clock.
+     *
+     * @param tenantId The requesting tenant; null counts as the default tenant
+     * @param now      Current System.nanoTime()
+     * @return 0 if the request is admitted, otherwise the nanoseconds until the tenant's bucket admits one again
+     */
+    public long tryAcquire(String tenantId, long now) {
+        String tenant = tenantId != null ? tenantId : DEFAULT_TENANT;
+        TenantState state = tenants.getIfPresent(tenant);
+        if (state == null) {
+            state = tenants.get(tenant, this::newState);
+        }
+        if (fairShareEnabled) {
+            state.lastSeenNanos = now;
+        }
+        long wait = state.own.tryAcquire(now);
+        if (wait == 0) {
+            state.allowed.increment();
+            if (fairShareEnabled) {
+                node.charge(now);
+            }
+            return 0;
+        }
+        if (fairShareEnabled && state.share.tryAcquire(now) == 0) {
+            if (node.tryAcquire(now) == 0) {
+                state.borrowed.increment();
+                return 0;
+            }
+            // The node is saturated; the tenant keeps its borrowing allowance for when it is not
+            state.share.refund();
+        }
+        state.rejected.increment();
+        return wait;
+    }
+
+    /**
+     * Limits, bucket fill and admission counters of every tenant the limiter currently knows.
+     */
+    public Map<String, TenantRateLimitStats> getStats() {
+        long now = System.nanoTime();
+        Map<String, TenantRateLimitStats> stats = new TreeMap<>();
+        tenants.asMap().forEach((tenant, state) -> stats.put(tenant, new TenantRateLimitStats(
+                state.own.getRate(),
+                state.own.getBurst(),
+                state.weight,
+                state.own.available(now),
+                fairShareEnabled ? state.share.getRate() : 0,
+                state.allowed.sum(),
+                state.borrowed.sum(),
+                state.rejected.sum())));
+        return stats;
+    }
+
+    private TenantState newState(String tenant) {
+        TenantLimit limit = tenantLimits.get(tenant);
+        double rate = limit != null && limit.getRate() != null ? limit.getRate() : defaultRate;
+        int burst = limit != null && limit.getBurst() != null ? limit.getBurst() : defaultBurst;
+        double weight = limit != null && limit.getWeight() != null ? limit.getWeight() : 1.0;
+        // Until the next rebalance a new tenant borrows as if one other tenant of weight 1 were active
+        return new TenantState(new Bucket(rate, burst), new Bucket(nodeRate * weight / (weight + 1), burst), weight);
+    }
+
+    // Recomputes each active tenant's borrowing rate: its weighted share of the node rate
+    private void rebalance() {
+        long activeSince = System.nanoTime() - activeWindow.toNanos();
+        double totalWeight = 0;
+        for (TenantState state : tenants.asMap().values()) {
+            if (state.lastSeenNanos - activeSince > 0) {
+                totalWeight += state.weight;
+            }
+        }
+        if (totalWeight == 0) {
+            return;
+        }
+        for (TenantState state : tenants.asMap().values()) {
+            if (state.lastSeenNanos - activeSince > 0) {
+                state.share.setRate(nodeRate * state.weight / totalWeight);
+            }
+        }
+    }
+
+    private static final class TenantState {
+        private final Bucket own;
+        // Borrowing allowance in fair-share mode
+        private final Bucket share;
+        private final double weight;
+        private volatile long lastSeenNanos;
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder borrowed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        private TenantState(Bucket own, Bucket share, double weight) {
+            this.own = own;
+            this.share = share;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * GCRA token bucket. theoreticalArrival is the time at which the bucket would be full again if
+     * nothing else arrived; a request fits if that time, advanced by one emission interval, is at
+     * most burst intervals ahead of now.
+     */
+    static final class Bucket {
+        private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+        private final int burst;
+        private volatile long emissionNanos;
+        private volatile long toleranceNanos;
+
+        Bucket(double rate, int burst) {
+            this.burst = Math.max(1, burst);
+            setRate(rate);
+        }
+
+        void setRate(double rate) {
+            long emission = Math.max(1, (long) (NANOS_PER_SECOND / Math.max(rate, 1e-9)));
+            emissionNanos = emission;
+            toleranceNanos = emission * burst;
+        }
+
+        double getRate() {
+            return (double) NANOS_PER_SECOND / emissionNanos;
+        }
+
+        int getBurst() {
+            return burst;
+        }
+
+        /**
+         * @return 0 if the request was taken, otherwise nanoseconds until one fits
+         */
+        long tryAcquire(long now) {
+            long emission = emissionNanos;
+            long tolerance = toleranceNanos;
+            while (true) {
+                long tat = theoreticalArrival.get();
+                long next = Math.max(tat, now) + emission;
+                long excess = next - now - tolerance;
+                if (excess > 0) {
+                    return excess;
+                }
+                if (theoreticalArrival.compareAndSet(tat, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * Takes a request even if the bucket is empty, so admitted traffic counts against the
+         * capacity others may borrow. Debt is capped at one full burst.
+         */
+        void charge(long now) {
+            long emission = emissionNanos;
+            long limit = now + toleranceNanos;
+            theoreticalArrival.accumulateAndGet(now, (tat, t) -> Math.min(Math.max(tat, t) + emission, limit));
+        }
+
+        /**
+         * Returns a request taken by tryAcquire that was not used after all.
+         */
+        void refund() {
+            theoreticalArrival.addAndGet(-emissionNanos);
+        }
+
+        int available(long now) {
+            long tat = Math.max(theoreticalArrival.get(), now);
+            return (int) Math.max(0, (toleranceNanos - (tat - now)) / emissionNanos);
+        }
+    }
+
+    // Per-tenant overrides bound from multitenancy.rate-limit.tenants.<tenant id>.*; unset values fall back to the defaults
+    public static class TenantLimit {
+        private Double rate;
+        private Integer burst;
+        private Double weight;
+
+        public Double getRate() {
+            return rate;
+        }
+
+        public void setRate(Double rate) {
+            this.rate = rate;
+        }
+
+        public Integer getBurst() {
+            return burst;
+        }
+
+        public void setBurst(Integer burst) {
+            this.burst = burst;
+        }
+
+        public Double getWeight() {
+            return weight;
+        }
+
+        public void setWeight(Double weight) {
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.multitenant1.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * One way of telling which tenant a request belongs to. TenantInterceptor asks a chain of
+ * resolvers, fixed at startup, in order and uses the first answer.
+ */
+@FunctionalInterface
+public interface TenantResolver {
+
+    /**
+     * Finds the tenant of a request.
+     *
+     * @param request The incoming request
+     * @return The tenant identifier, or null if this resolver finds none
+     */
+    String resolve(HttpServletRequest request);
+}
@@ -0,0 +1,36 @@
+package com.example.multitenant1.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/* VirtualThreadSupport reports at startup whether spring.threads.virtual.enabled took effect. Spring
+ * Boot switches Tomcat and its task executor to virtual threads only on Java 21 and later and keeps
+ * platform threads otherwise without a word; the build targets Java 17, so the setting does nothing
+ * unless the application runs on a newer JVM. The check is the one Boot's auto-configuration uses.
+ */
+@Component
+public class VirtualThreadSupport {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadSupport.class);
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean requested;
+
+    @Autowired
+    private Environment environment;
+
+    @PostConstruct
+    public void init() {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            logger.info("Requests and async tasks run on virtual threads");
+        } else if (requested) {
+            logger.warn("spring.threads.virtual.enabled=true has no effect: virtual threads need Java 21+, running on Java {}; "
+                    + "requests and async tasks stay on platform threads", Runtime.version().feature());
+        }
+    }
+}
@@ -3,27 +3,44 @@ package com.example.multitenant1.controller;
 import com.example.multitenant1.config.TenantContext;
 import com.example.multitenant1.model.User;
 import com.example.multitenant1.security.JwtTokenProvider;
+import com.example.multitenant1.security.PasswordHashingRejectedException;
+import com.example.multitenant1.security.VerifiedClaims;
+import com.example.multitenant1.service.BulkRegistrationResult;
+import com.example.multitenant1.service.BulkRegistrationService;
+import com.example.multitenant1.service.RefreshTokenService;
+import com.example.multitenant1.service.RotatedRefreshToken;
 import com.example.multitenant1.service.UserService;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 @RestController
 @RequestMapping("/auth")
 public class AuthController {
-
-    @Autowired
-    private AuthenticationManager authenticationManager;
+    private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
+    private static final String NDJSON = "application/x-ndjson";
 
     @Autowired
     private JwtTokenProvider tokenProvider;
@@ -31,9 +48,31 @@ public class AuthController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private BulkRegistrationService bulkRegistrationService;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Runs the work after a login's hash, off the password-hashing threads
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private Executor taskExecutor;
+
+    /**
+     * Registers a user. The request thread is released while the password is hashed.
+     *
+     * @param tenantId        The tenant the user belongs to
+     * @param registerRequest The user's details and raw password
+     * @return Future of the 201 response, or 400 (also for any role but USER), or 429/503 when
+     *         password hashing is at capacity
+     */
     @PostMapping("/register")
-    public ResponseEntity<?> registerUser(@RequestHeader(value = "X-Tenant-ID", required = true) String tenantId, 
-                                         @RequestBody RegisterRequest registerRequest) {
+    public CompletableFuture<ResponseEntity<?>> registerUser(@RequestHeader(value = "X-Tenant-ID", required = true) String tenantId,
+                                                             @RequestBody RegisterRequest registerRequest) {
         try {
             // Set the tenant context
             TenantContext.setCurrentTenant(tenantId);
@@ -44,57 +83,190 @@ public class AuthController {
             user.setEmail(registerRequest.getEmail());
             user.setPassword(registerRequest.getPassword());
             user.setTenantId(tenantId);
-            user.setRole(registerRequest.getRole());
+            // Anyone may register, so nobody may pick a role here; administrators are made by bulk import
+            String role = registerRequest.getRole();
+            if (role != null && !role.equalsIgnoreCase("USER")) {
+                throw new IllegalArgumentException("Role " + role + " cannot be chosen at registration");
+            }
+            user.setRole("USER");
             
-            User registeredUser = userService.registerUser(user);
-            
-            // Create response
-            Map<String, Object> response = new HashMap<>();
-            response.put("message", "User registered successfully");
-            response.put("userId", registeredUser.getId());
-            response.put("username", registeredUser.getUsername());
-            response.put("tenantId", registeredUser.getTenantId());
-            
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+            return userService.registerUserAsync(user)
+                .<ResponseEntity<?>>thenApply(registeredUser -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("message", "User registered successfully");
+                    response.put("userId", registeredUser.getId());
+                    response.put("username", registeredUser.getUsername());
+                    response.put("tenantId", registeredUser.getTenantId());
+                    return ResponseEntity.status(HttpStatus.CREATED).body(response);
+                })
+                .exceptionally(AuthController::registrationFailed);
         } catch (Exception e) {
-            Map<String, String> response = new HashMap<>();
-            response.put("error", e.getMessage());
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+            return CompletableFuture.completedFuture(registrationFailed(e));
         } finally {
             TenantContext.clear();
         }
     }
 
+    /**
+     * Registers many users of one tenant from newline-delimited JSON, one user per line with the fields
+     * of a single registration (or passwordHash instead of password for already hashed passwords). The
+     * body is read and answered as a stream: one NDJSON result line per input line, written chunk by
+     * chunk as the users are stored.
+     *
+     * @param tenantId The tenant the users belong to
+     * @param request  The request, whose body is read line by line
+     * @param response The response, receiving one result line per input line
+     * @throws IOException if the request body cannot be read
+     */
+    @PostMapping(value = "/register/bulk", consumes = NDJSON, produces = NDJSON)
+    public void registerUsersBulk(@RequestHeader(value = "X-Tenant-ID", required = true) String tenantId,
+                                  HttpServletRequest request, HttpServletResponse response) throws IOException {
+        TenantContext.setCurrentTenant(tenantId);
+        response.setContentType(NDJSON);
+        try (BufferedReader body = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+             OutputStream results = response.getOutputStream()) {
+            bulkRegistrationService.register(tenantId, body, chunk -> {
+                try {
+                    for (BulkRegistrationResult result : chunk) {
+                        results.write(objectMapper.writeValueAsBytes(result));
+                        results.write('\n');
+                    }
+                    results.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Users stored so far stay; the client has to resume from its last result line
+            logger.warn("Client went away during bulk registration for tenant {}: {}", tenantId, e.getMessage());
+        } finally {
+            TenantContext.clear();
+        }
+    }
+
+    /**
+     * Checks a username and password and issues an access and a refresh token. The request thread
+     * is released while the password is hashed.
+     *
+     * @param loginRequest The username and password
+     * @return Future of the tokens, or 401, or 429/503 when password hashing is at capacity
+     */
     @PostMapping("/login")
-    public ResponseEntity<?> authenticateUser(@RequestBody LoginRequest loginRequest) {
+    public CompletableFuture<ResponseEntity<?>> authenticateUser(@RequestBody LoginRequest loginRequest) {
+        String tenantId = TenantContext.getCurrentTenant();
         try {
-            Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                    loginRequest.getUsername(),
-                    loginRequest.getPassword()
-                )
-            );
-            
-            SecurityContextHolder.getContext().setAuthentication(authentication);
-            
-            User user = (User) authentication.getPrincipal();
-            String jwt = tokenProvider.generateToken(user);
-            
+            return userService.authenticateAsync(loginRequest.getUsername(), loginRequest.getPassword())
+                // Issuing the refresh token writes to the tenant's schema, so it leaves the hashing thread
+                .<ResponseEntity<?>>thenApplyAsync(user -> {
+                    TenantContext.setCurrentTenant(tenantId);
+                    try {
+                        return loginSucceeded(user);
+                    } finally {
+                        TenantContext.clear();
+                    }
+                }, taskExecutor)
+                .exceptionally(AuthController::loginFailed);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(loginFailed(e));
+        }
+    }
+
+    private ResponseEntity<?> loginSucceeded(User user) {
+        String jwt = tokenProvider.generateToken(user);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("token", jwt);
+        response.put("refreshToken", refreshTokenService.issue(user));
+        response.put("expiresIn", tokenProvider.getExpirationMillis() / 1000);
+        response.put("userId", user.getId());
+        response.put("username", user.getUsername());
+        response.put("email", user.getEmail());
+        response.put("tenantId", user.getTenantId());
+        response.put("role", user.getRole());
+        
+        return ResponseEntity.ok(response);
+    }
+
+    private static ResponseEntity<?> loginFailed(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof PasswordHashingRejectedException e) {
+            return hashingRejected(e);
+        }
+        if (cause instanceof AuthenticationException) {
+            Map<String, String> response = new HashMap<>();
+            response.put("error", "Invalid username or password");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+        }
+        throw error instanceof CompletionException completion ? completion : new CompletionException(cause);
+    }
+
+    private static ResponseEntity<?> registrationFailed(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof PasswordHashingRejectedException e) {
+            return hashingRejected(e);
+        }
+        Map<String, String> response = new HashMap<>();
+        response.put("error", cause.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+    
+    /**
+     * Exchanges a refresh token for a new access token and a new refresh token. The presented
+     * refresh token is used up; presenting it again revokes every token issued since its login.
+     *
+     * @param refreshRequest The refresh token issued at login or by the previous refresh
+     * @return The new tokens, or 401 if the refresh token is not valid
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refreshToken(@RequestBody RefreshRequest refreshRequest) {
+        try {
+            RotatedRefreshToken rotated = refreshTokenService.rotate(refreshRequest.getRefreshToken());
+
             Map<String, Object> response = new HashMap<>();
-            response.put("token", jwt);
-            response.put("userId", user.getId());
-            response.put("username", user.getUsername());
-            response.put("email", user.getEmail());
-            response.put("tenantId", user.getTenantId());
-            response.put("role", user.getRole());
-            
+            response.put("token", tokenProvider.generateToken(rotated.user()));
+            response.put("refreshToken", rotated.refreshToken());
+            response.put("expiresIn", tokenProvider.getExpirationMillis() / 1000);
             return ResponseEntity.ok(response);
         } catch (AuthenticationException e) {
             Map<String, String> response = new HashMap<>();
-            response.put("error", "Invalid username or password");
+            response.put("error", "Invalid refresh token");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
         }
     }
+
+    /**
+     * Revokes the request's access token and, if given, the refresh token with every token rotated
+     * from the same login.
+     *
+     * @param request        The request, carrying the verified claims of its access token
+     * @param refreshRequest Optional body with the refresh token to revoke
+     * @return 204 No Content
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(HttpServletRequest request,
+                                    @RequestBody(required = false) RefreshRequest refreshRequest) {
+        if (request.getAttribute(VerifiedClaims.REQUEST_ATTRIBUTE) instanceof VerifiedClaims claims) {
+            tokenProvider.revoke(claims);
+        }
+        if (refreshRequest != null) {
+            refreshTokenService.revoke(refreshRequest.getRefreshToken());
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    // 429 when the tenant used up its share of password hashing, 503 when hashing is overloaded as a whole
+    private static ResponseEntity<?> hashingRejected(PasswordHashingRejectedException e) {
+        Map<String, String> response = new HashMap<>();
+        response.put("error", e.getMessage());
+        return ResponseEntity
+            .status(e.isTenantLimited() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+            .body(response);
+    }
     
     // Request/Response DTOs
     public static class RegisterRequest {
@@ -137,6 +309,18 @@ public class AuthController {
         }
     }
     
+    public static class RefreshRequest {
+        private String refreshToken;
+
+        public String getRefreshToken() {
+            return refreshToken;
+        }
+
+        public void setRefreshToken(String refreshToken) {
+            this.refreshToken = refreshToken;
+        }
+    }
+
     public static class LoginRequest {
         private String username;
         private String password;
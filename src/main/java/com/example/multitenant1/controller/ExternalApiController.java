@@ -1,60 +1,231 @@
 package com.example.multitenant1.controller;
 
+import com.example.multitenant1.service.ExternalApiRejectedException;
 import com.example.multitenant1.service.ExternalApiService;
+import com.example.multitenant1.service.ExternalResponseCache;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 @RestController
 @RequestMapping("/external")
 public class ExternalApiController {
     private static final Logger logger = LoggerFactory.getLogger(ExternalApiController.class);
     private static final String DEFAULT_API_URL = "https://jsonplaceholder.typicode.com/posts";
+
+    // End-to-end headers worth passing on; hop-by-hop headers (Connection, Transfer-Encoding, ...) and
+    // anything tied to the upstream's own site (Set-Cookie, ...) stay behind
+    private static final List<String> RELAYED_HEADERS = List.of(
+        HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_ENCODING, HttpHeaders.CONTENT_LANGUAGE,
+        HttpHeaders.CACHE_CONTROL, HttpHeaders.ETAG, HttpHeaders.EXPIRES, HttpHeaders.LAST_MODIFIED, HttpHeaders.VARY);
     
+    private final ExternalResponseCache externalResponseCache;
     private final ExternalApiService externalApiService;
+
+    @Value("${external-api.streaming.buffer-size:16KB}")
+    private DataSize streamBufferSize;
     
     @Autowired
-    public ExternalApiController(ExternalApiService externalApiService) {
+    public ExternalApiController(ExternalResponseCache externalResponseCache, ExternalApiService externalApiService) {
+        this.externalResponseCache = externalResponseCache;
         this.externalApiService = externalApiService;
     }
     
     /**
-     * Fetches data from an external API with retry logic
+     * Fetches data from an external API with retry logic, served from the per-tenant response cache
+     * when possible. The request thread is released while the call and any retries are in flight.
      * 
      * @param url Optional URL parameter to specify a different API endpoint
-     * @return ResponseEntity containing the API response
+     * @return Future of the ResponseEntity containing the API response
      */
     @GetMapping("/data")
-    public ResponseEntity<?> getExternalData(@RequestParam(required = false) String url) {
+    public CompletableFuture<ResponseEntity<?>> getExternalData(@RequestParam(required = false) String url) {
         // Use the default URL if none is provided
         String apiUrl = (url != null && !url.isEmpty()) ? url : DEFAULT_API_URL;
-        
-        try {
-            logger.info("Received request to fetch external data from: {}", apiUrl);
-            ResponseEntity<String> externalResponse = externalApiService.fetchExternalData(apiUrl);
-            
-            return ResponseEntity
+
+        logger.info("Received request to fetch external data from: {}", apiUrl);
+        return externalResponseCache.fetch(apiUrl)
+            .<ResponseEntity<?>>thenApply(externalResponse -> ResponseEntity
                 .status(externalResponse.getStatusCode())
-                .headers(externalResponse.getHeaders())
-                .body(externalResponse.getBody());
-                
-        } catch (RestClientException e) {
-            logger.error("Failed to fetch external data: {}", e.getMessage());
+                .headers(relayedHeaders(externalResponse.getHeaders()))
+                .body(externalResponse.getBody()))
+            .exceptionally(ExternalApiController::failure);
+    }
+
+    /**
+     * Relays the external API's response body as it arrives, copying it through one fixed-size buffer
+     * so heap use does not grow with the payload. Bypasses the response cache; retries and the host's
+     * circuit breaker apply until the upstream's response headers arrive.
+     *
+     * The upstream response is closed by whatever ends the request first: the copy finishing, the
+     * request timing out or failing before or while the body is written, or the request completing
+     * without the body ever being written.
+     *
+     * @param url     Optional URL parameter to specify a different API endpoint
+     * @param request The current request, whose async lifecycle releases the upstream response
+     * @return Deferred ResponseEntity whose body streams the API response
+     */
+    @GetMapping("/stream")
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> streamExternalData(
+            @RequestParam(required = false) String url, HttpServletRequest request) {
+        String apiUrl = (url != null && !url.isEmpty()) ? url : DEFAULT_API_URL;
+
+        logger.info("Received request to stream external data from: {}", apiUrl);
+        int bufferSize = (int) streamBufferSize.toBytes();
+        UpstreamResponse upstream = new UpstreamResponse();
+        DeferredResult<ResponseEntity<StreamingResponseBody>> result = new DeferredResult<>();
+        result.onTimeout(upstream::release);
+        result.onError(e -> upstream.release());
+        // Covers the second async phase, in which the body is written
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(UpstreamResponse.class.getName(), upstream);
+
+        externalApiService.openStream(apiUrl, HttpHeaders.EMPTY).whenComplete((response, error) -> {
+            if (error != null) {
+                ResponseEntity<String> failure = failure(error);
+                byte[] message = failure.getBody().getBytes(StandardCharsets.UTF_8);
+                result.setResult(ResponseEntity.status(failure.getStatusCode())
+                    .headers(failure.getHeaders())
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(out -> out.write(message)));
+                return;
+            }
+            // Timed out or failed already: nobody will ever read this body
+            if (!upstream.attach(response)) {
+                return;
+            }
+            HttpHeaders headers = relayedHeaders(response.headers().map());
+            // Bytes pass through unchanged, so the upstream length still holds
+            response.headers().firstValueAsLong(HttpHeaders.CONTENT_LENGTH).ifPresent(headers::setContentLength);
+            boolean handedOver = result.setResult(ResponseEntity.status(response.statusCode())
+                .headers(headers)
+                .body(out -> copy(response, out, bufferSize)));
+            if (!handedOver) {
+                upstream.release();
+            }
+        });
+        return result;
+    }
+
+    private static void copy(HttpResponse<InputStream> upstream, OutputStream out, int bufferSize) throws IOException {
+        // Closing the upstream stream early (client gone, write failed) aborts the upstream exchange
+        try (InputStream in = upstream.body()) {
+            byte[] buffer = new byte[bufferSize];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (in.available() == 0) {
+                    // Upstream is slower than the client; pass on what has arrived so far
+                    out.flush();
+                }
+            }
+        }
+    }
+
+    /* The upstream response of one /stream request. Every way the request can end calls release;
+     * only the first call closes the body, and a response attached after release is closed at once.
+     */
+    private static final class UpstreamResponse implements CallableProcessingInterceptor {
+        private final AtomicReference<HttpResponse<InputStream>> response = new AtomicReference<>();
+        private volatile boolean released;
+
+        boolean attach(HttpResponse<InputStream> upstream) {
+            response.set(upstream);
+            if (released) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        void release() {
+            released = true;
+            HttpResponse<InputStream> upstream = response.getAndSet(null);
+            if (upstream != null) {
+                try {
+                    upstream.body().close();
+                } catch (IOException e) {
+                    logger.debug("Closing the upstream response failed: {}", e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public <T> Object handleTimeout(NativeWebRequest request, Callable<T> task) {
+            release();
+            return RESULT_NONE;
+        }
+
+        @Override
+        public <T> Object handleError(NativeWebRequest request, Callable<T> task, Throwable t) {
+            release();
+            return RESULT_NONE;
+        }
+
+        @Override
+        public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+            release();
+        }
+    }
+
+    private static HttpHeaders relayedHeaders(Map<String, List<String>> upstreamHeaders) {
+        HttpHeaders source = new HttpHeaders();
+        upstreamHeaders.forEach(source::addAll);
+        HttpHeaders relayed = new HttpHeaders();
+        for (String name : RELAYED_HEADERS) {
+            List<String> values = source.get(name);
+            if (values != null) {
+                relayed.addAll(name, values);
+            }
+        }
+        return relayed;
+    }
+
+    private static ResponseEntity<String> failure(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof ExternalApiRejectedException rejected) {
+            // Shed load right away; the upstream was not contacted
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, rejected.getRetryAfter().toSeconds())))
+                .body("Failed to retrieve data from external API: " + rejected.getMessage());
+        }
+        if (cause instanceof RestClientException) {
+            logger.error("Failed to fetch external data: {}", cause.getMessage());
             return ResponseEntity
                 .status(HttpStatus.SERVICE_UNAVAILABLE)
-                .body("Failed to retrieve data from external API: " + e.getMessage());
-        } catch (Exception e) {
-            logger.error("Unexpected error while fetching external data: {}", e.getMessage());
-            return ResponseEntity
-                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body("Unexpected error: " + e.getMessage());
+                .body("Failed to retrieve data from external API: " + cause.getMessage());
         }
+        logger.error("Unexpected error while fetching external data: {}", cause.getMessage());
+        return ResponseEntity
+            .status(HttpStatus.INTERNAL_SERVER_ERROR)
+            .body("Unexpected error: " + cause.getMessage());
     }
-}
\ No newline at end of file
+}
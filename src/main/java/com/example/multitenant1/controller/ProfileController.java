@@ -1,7 +1,7 @@
 package com.example.multitenant1.controller;
 
 import com.example.multitenant1.config.TenantContext;
-import com.example.multitenant1.model.User;
+import com.example.multitenant1.security.UserPrincipal;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -26,22 +26,22 @@ public class ProfileController {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not authenticated");
             }
 
-            User currentUser = (User) authentication.getPrincipal();
+            UserPrincipal currentUser = (UserPrincipal) authentication.getPrincipal();
             
             // Verify that user belongs to the correct tenant
             String currentTenant = TenantContext.getCurrentTenant();
-            if (currentTenant != null && !currentTenant.equals(currentUser.getTenantId())) {
+            if (currentTenant != null && !currentTenant.equals(currentUser.tenantId())) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body("User does not belong to the current tenant");
             }
 
             // Return user profile information
             Map<String, Object> userProfile = new HashMap<>();
-            userProfile.put("user_id", currentUser.getId());
-            userProfile.put("tenant_id", currentUser.getTenantId());
+            userProfile.put("user_id", currentUser.id());
+            userProfile.put("tenant_id", currentUser.tenantId());
             userProfile.put("username", currentUser.getUsername());
-            userProfile.put("email", currentUser.getEmail());
-            userProfile.put("role", currentUser.getRole());
+            userProfile.put("email", currentUser.email());
+            userProfile.put("role", currentUser.role());
             
             return ResponseEntity.ok(userProfile);
         } catch (Exception e) {
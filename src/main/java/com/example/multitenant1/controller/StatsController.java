@@ -0,0 +1,149 @@
+package com.example.multitenant1.controller;
+
+import com.example.multitenant1.config.DatabaseMultiTenantConnectionProvider;
+import com.example.multitenant1.config.SchemaMultiTenantConnectionProvider;
+import com.example.multitenant1.config.TenantPartitionedRegionFactory;
+import com.example.multitenant1.config.TenantRateLimiter;
+import com.example.multitenant1.security.PasswordHashingExecutor;
+import com.example.multitenant1.service.ExternalApiService;
+import com.example.multitenant1.service.ExternalResponseCache;
+import com.example.multitenant1.service.TenantMigrationService;
+import com.example.multitenant1.service.UserMembershipFilter;
+import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+    @Autowired
+    private MultiTenantConnectionProvider<String> connectionProvider;
+
+    @Autowired
+    private TenantMigrationService tenantMigrationService;
+
+    @Autowired
+    private ExternalResponseCache externalResponseCache;
+
+    @Autowired
+    private ExternalApiService externalApiService;
+
+    @Autowired
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    @Autowired
+    private UserMembershipFilter userMembershipFilter;
+
+    @Autowired
+    private TenantPartitionedRegionFactory cacheRegionFactory;
+
+    @Autowired
+    private TenantRateLimiter tenantRateLimiter;
+
+    @Value("${multitenancy.isolation:schema}")
+    private String isolation;
+
+    /**
+     * Connection usage per tenant: pool partitions and schema-switch counters in schema and
+     * discriminator mode, dedicated pools in database mode
+     *
+     * @return ResponseEntity containing the connection statistics
+     */
+    @GetMapping("/connection-pools")
+    public ResponseEntity<?> getConnectionPoolStats() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("isolation", isolation.toLowerCase());
+        if (connectionProvider instanceof SchemaMultiTenantConnectionProvider schemaProvider) {
+            response.put("schemaSwitches", schemaProvider.getSchemaSwitches());
+            response.put("schemaSwitchesAvoided", schemaProvider.getSchemaSwitchesAvoided());
+            response.put("affinityHits", schemaProvider.getAffinityHits());
+            response.put("affinityMisses", schemaProvider.getAffinityMisses());
+            response.put("tenants", schemaProvider.getTenantPoolStats());
+        } else if (connectionProvider instanceof DatabaseMultiTenantConnectionProvider databaseProvider) {
+            response.put("tenants", databaseProvider.getTenantDataSourceStats());
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Outcome of the most recent migration of each tenant
+     *
+     * @return ResponseEntity containing status and duration per tenant
+     */
+    @GetMapping("/tenant-migrations")
+    public ResponseEntity<?> getTenantMigrationStats() {
+        return ResponseEntity.ok(tenantMigrationService.getResults());
+    }
+
+    /**
+     * Hit, miss, coalesced and revalidation counters of the /external/data response cache
+     *
+     * @return ResponseEntity containing the cache statistics
+     */
+    @GetMapping("/external-cache")
+    public ResponseEntity<?> getExternalCacheStats() {
+        return ResponseEntity.ok(externalResponseCache.getStats());
+    }
+
+    /**
+     * Circuit breaker state, transitions and bulkhead usage per upstream host of /external/data
+     *
+     * @return ResponseEntity containing the statistics per host
+     */
+    @GetMapping("/external-hosts")
+    public ResponseEntity<?> getExternalHostStats() {
+        return ResponseEntity.ok(externalApiService.getHostStats());
+    }
+
+    /**
+     * Load of the password-hashing executor: queue depth, rejections, throughput, queue wait and hash time
+     *
+     * @return ResponseEntity containing the hashing statistics
+     */
+    @GetMapping("/password-hashing")
+    public ResponseEntity<?> getPasswordHashingStats() {
+        return ResponseEntity.ok(passwordHashingExecutor.getStats());
+    }
+
+    /**
+     * Lookups of the per-tenant username/email membership filters and how many of them skipped the database
+     *
+     * @return ResponseEntity containing the filter statistics
+     */
+    @GetMapping("/membership-filter")
+    public ResponseEntity<?> getMembershipFilterStats() {
+        return ResponseEntity.ok(userMembershipFilter.getStats());
+    }
+
+    /**
+     * Hit ratio, evictions and size of the Hibernate second-level and query caches, per region and tenant
+     *
+     * @return ResponseEntity containing the statistics by region and tenant
+     */
+    @GetMapping("/second-level-cache")
+    public ResponseEntity<?> getSecondLevelCacheStats() {
+        return ResponseEntity.ok(cacheRegionFactory.getStats());
+    }
+
+    /**
+     * Request rate limits per tenant: configured rate and burst, current bucket fill, borrowing rate
+     * in fair-share mode, and admitted, borrowed and rejected requests
+     *
+     * @return ResponseEntity containing the limiter state per tenant
+     */
+    @GetMapping("/rate-limits")
+    public ResponseEntity<?> getRateLimitStats() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("enabled", tenantRateLimiter.isEnabled());
+        response.put("tenants", tenantRateLimiter.getStats());
+        return ResponseEntity.ok(response);
+    }
+}
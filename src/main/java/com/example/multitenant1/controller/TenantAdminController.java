@@ -0,0 +1,131 @@
+package com.example.multitenant1.controller;
+
+import com.example.multitenant1.service.TenantIsolationMigrationService;
+import com.example.multitenant1.service.TenantProvisioningResult;
+import com.example.multitenant1.service.TenantProvisioningService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/tenants")
+public class TenantAdminController {
+
+    @Autowired
+    private TenantIsolationMigrationService isolationMigrationService;
+
+    @Autowired
+    private TenantProvisioningService provisioningService;
+
+    /**
+     * Registers a tenant and creates its schema, from a spare or template clone where possible
+     *
+     * @param request The tenant to create
+     * @return ResponseEntity containing how the tenant was provisioned
+     */
+    @PostMapping
+    public ResponseEntity<?> createTenant(@RequestBody CreateTenantRequest request) {
+        TenantProvisioningResult result = provisioningService.provision(request.getTenantId());
+        if (result.isFailed()) {
+            Map<String, String> response = new HashMap<>();
+            response.put("error", result.error());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("tenantId", request.getTenantId());
+        response.put("source", result.source());
+        response.put("durationMillis", result.durationMillis());
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    /**
+     * Registers many tenants at once, e.g. during a customer migration
+     *
+     * @param request The tenants to create
+     * @return ResponseEntity containing the result per tenant
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<?> createTenants(@RequestBody BulkCreateTenantsRequest request) {
+        long start = System.nanoTime();
+        Map<String, TenantProvisioningResult> results = provisioningService.provisionAll(request.getTenantIds());
+        long failed = results.values().stream().filter(TenantProvisioningResult::isFailed).count();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("created", results.size() - failed);
+        response.put("failed", failed);
+        response.put("durationMillis", (System.nanoTime() - start) / 1_000_000);
+        response.put("tenants", results);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Moves a tenant's data between schema-per-tenant storage and the shared discriminator tables
+     *
+     * @param tenantId The tenant to move
+     * @param target   Either "discriminator" or "schema"
+     * @return ResponseEntity containing the number of users moved
+     */
+    @PostMapping("/{tenantId}/isolation/{target}")
+    public ResponseEntity<?> migrateIsolation(@PathVariable String tenantId, @PathVariable String target) {
+        try {
+            int moved;
+            switch (target.toLowerCase()) {
+                case "discriminator":
+                    moved = isolationMigrationService.moveToShared(tenantId);
+                    break;
+                case "schema":
+                    moved = isolationMigrationService.moveToSchema(tenantId);
+                    break;
+                default:
+                    Map<String, String> error = new HashMap<>();
+                    error.put("error", "Unknown isolation target: " + target);
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("tenantId", tenantId);
+            response.put("target", target.toLowerCase());
+            response.put("usersMoved", moved);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, String> response = new HashMap<>();
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
+    public static class CreateTenantRequest {
+        private String tenantId;
+
+        public String getTenantId() {
+            return tenantId;
+        }
+
+        public void setTenantId(String tenantId) {
+            this.tenantId = tenantId;
+        }
+    }
+
+    public static class BulkCreateTenantsRequest {
+        private List<String> tenantIds = new ArrayList<>();
+
+        public List<String> getTenantIds() {
+            return tenantIds;
+        }
+
+        public void setTenantIds(List<String> tenantIds) {
+            this.tenantIds = tenantIds;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.multitenant1.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import lombok.Data;
+import org.hibernate.annotations.TenantId;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+/* A refresh token issued at login or by rotation. Only the SHA-256 digest of the token is stored.
+ * All tokens rotated from one login share a family; presenting a token that was already used
+ * revokes the whole family.
+ */
+@Data
+@Entity
+@Table(name = "refresh_tokens")
+public class RefreshToken implements Persistable<String> {
+    // Hex SHA-256 of the token handed to the client
+    @Id
+    @Column(length = 64)
+    private String tokenHash;
+
+    @TenantId
+    @Column(nullable = false)
+    private String tenantId;
+
+    @Column(nullable = false, length = 36)
+    private String familyId;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+
+    // Set once the token has been exchanged; kept until expiry to detect reuse
+    @Column(nullable = false)
+    private boolean used;
+
+    // The id is assigned before saving, so without this the repository would merge (select, then insert)
+    @Transient
+    private boolean persisted;
+
+    @Override
+    public String getId() {
+        return tokenHash;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        persisted = true;
+    }
+}
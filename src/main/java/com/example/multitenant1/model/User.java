@@ -2,6 +2,9 @@ package com.example.multitenant1.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.TenantId;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -13,9 +16,14 @@ import java.util.Collections;
 @Data
 @Entity
 @Table(name = "users")
+// Second-level cached per tenant (see TenantPartitionedRegionFactory); writes through Hibernate update the cache
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
 public class User implements UserDetails {
+    // Sequence ids are allocated 50 at a time (pooled-lo), which lets Hibernate batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true)
@@ -27,8 +35,10 @@ public class User implements UserDetails {
     private String role;
     
     // This field stores the tenant ID that the user belongs to
-    // It's not used for data isolation (that's handled by schemas)
-    // but for business logic to identify which tenant a user belongs to
+    // In schema and database isolation it is a consistency check on top of the schema boundary;
+    // in discriminator isolation it is the boundary itself: Hibernate filters every query on it
+    // and fills it in on insert from the current tenant
+    @TenantId
     @Column(nullable = false)
     private String tenantId;
 
@@ -0,0 +1,30 @@
+package com.example.multitenant1.repository;
+
+import com.example.multitenant1.model.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, String> {
+
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    // Succeeds for exactly one of several concurrent exchanges of the same token
+    @Modifying
+    @Query("update RefreshToken t set t.used = true where t.tokenHash = :tokenHash and t.used = false")
+    int markUsed(@Param("tokenHash") String tokenHash);
+
+    @Modifying
+    @Query("delete from RefreshToken t where t.familyId = :familyId")
+    int deleteByFamily(@Param("familyId") String familyId);
+
+    @Modifying
+    @Query("delete from RefreshToken t where t.userId = :userId and t.expiresAt < :now")
+    int deleteExpired(@Param("userId") Long userId, @Param("now") Instant now);
+}
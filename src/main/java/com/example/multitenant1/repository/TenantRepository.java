@@ -0,0 +1,86 @@
+package com.example.multitenant1.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/* TenantRepository reads and writes the tenant registry (public.tenants).
+ * The registry is global, so it is accessed with plain JDBC outside Hibernate's tenant routing.
+ */
+@Repository
+public class TenantRepository {
+    // Identifiers bound per IN list, well below the driver's limit on bind parameters
+    private static final int LOOKUP_BATCH_SIZE = 500;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public List<String> findAllTenantIds() {
+        return jdbcTemplate.queryForList("SELECT tenant_id FROM public.tenants ORDER BY tenant_id", String.class);
+    }
+
+    public boolean exists(String tenantId) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM public.tenants WHERE tenant_id = ?", Integer.class, tenantId);
+        return count != null && count > 0;
+    }
+
+    /**
+     * Which of the given tenants are registered. Costs one indexed lookup per identifier, however
+     * many tenants the registry holds.
+     *
+     * @param tenantIds Tenants to look up
+     * @return The registered ones among them
+     */
+    public Set<String> findExistingTenantIds(Collection<String> tenantIds) {
+        List<String> ids = tenantIds.stream().filter(Objects::nonNull).distinct().toList();
+        Set<String> existing = new HashSet<>();
+        for (int from = 0; from < ids.size(); from += LOOKUP_BATCH_SIZE) {
+            List<String> batch = ids.subList(from, Math.min(ids.size(), from + LOOKUP_BATCH_SIZE));
+            existing.addAll(jdbcTemplate.queryForList("SELECT tenant_id FROM public.tenants WHERE tenant_id IN ("
+                    + String.join(", ", Collections.nCopies(batch.size(), "?")) + ")", String.class, batch.toArray()));
+        }
+        return existing;
+    }
+
+    /**
+     * Stored changelog fingerprint per tenant; null for tenants that were never migrated
+     */
+    public Map<String, String> findAllFingerprints() {
+        Map<String, String> fingerprints = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT tenant_id, schema_fingerprint FROM public.tenants ORDER BY tenant_id",
+                (RowCallbackHandler) rs -> fingerprints.put(rs.getString(1), rs.getString(2)));
+        return fingerprints;
+    }
+
+    public String findFingerprint(String tenantId) {
+        List<String> fingerprints = jdbcTemplate.queryForList(
+                "SELECT schema_fingerprint FROM public.tenants WHERE tenant_id = ?", String.class, tenantId);
+        return fingerprints.isEmpty() ? null : fingerprints.get(0);
+    }
+
+    public void updateFingerprint(String tenantId, String fingerprint) {
+        jdbcTemplate.update("UPDATE public.tenants SET schema_fingerprint = ? WHERE tenant_id = ?", fingerprint, tenantId);
+    }
+
+    public void save(String tenantId) {
+        jdbcTemplate.update("INSERT INTO public.tenants (tenant_id) VALUES (?)", tenantId);
+    }
+
+    /**
+     * Registers a tenant whose schema was created at the given changelog fingerprint
+     */
+    public void save(String tenantId, String fingerprint) {
+        jdbcTemplate.update("INSERT INTO public.tenants (tenant_id, schema_fingerprint) VALUES (?, ?)", tenantId, fingerprint);
+    }
+}
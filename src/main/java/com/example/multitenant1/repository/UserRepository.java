@@ -1,18 +1,53 @@
 package com.example.multitenant1.repository;
 
 import com.example.multitenant1.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
+    // Query-cached per tenant; any write to the tenant's users through Hibernate invalidates the results
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     Optional<User> findByUsername(String username);
     
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     Optional<User> findByEmail(String email);
     
     boolean existsByUsername(String username);
     
     boolean existsByEmail(String email);
+
+    // existsByUsername and existsByEmail in one round trip; both columns have a unique index
+    @Query("select count(case when u.username = :username then 1 end) as usernameMatches, "
+            + "count(case when u.email = :email then 1 end) as emailMatches "
+            + "from User u where u.username = :username or u.email = :email")
+    Conflicts findConflicts(@Param("username") String username, @Param("email") String email);
+
+    // Set-based variants of existsByUsername / existsByEmail for bulk registration
+    @Query("select u.username from User u where u.username in :usernames")
+    Set<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+    @Query("select u.email from User u where u.email in :emails")
+    Set<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    // Feeds UserMembershipFilter; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select u.username, u.email from User u")
+    Stream<Object[]> streamUsernamesAndEmails();
+
+    interface Conflicts {
+        long getUsernameMatches();
+
+        long getEmailMatches();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.example.multitenant1.security;
+
+import com.example.multitenant1.config.TenantContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+
+/* BoundedPasswordEncoder moves the hashing of a delegate encoder onto the PasswordHashingExecutor,
+ * charged to the current tenant. The PasswordEncoder methods wait for their hash; request paths use
+ * the async variants so their thread is free while the hash is queued and running. Upgrades of an
+ * outdated hash (e.g. after the BCrypt cost was raised) are only requested while the executor has
+ * spare capacity, so re-hashing on login never competes with regular logins for CPU.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final PasswordHashingExecutor executor;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, PasswordHashingExecutor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return executor.execute(TenantContext.getCurrentTenant(), () -> delegate.encode(rawPassword));
+    }
+
+    /**
+     * Encodes without waiting, so a caller with many passwords can keep every hashing thread busy.
+     *
+     * @param tenantId    Tenant the hash is charged to
+     * @param rawPassword The password to encode
+     * @return Future completed with the encoded password
+     * @throws PasswordHashingRejectedException if the tenant's share or the whole queue is full
+     */
+    public CompletableFuture<String> encodeAsync(String tenantId, CharSequence rawPassword) {
+        return executor.submit(tenantId, () -> delegate.encode(rawPassword));
+    }
+
+    /**
+     * Checks a password without waiting, so the calling request thread is not held while it is hashed.
+     *
+     * @param tenantId        Tenant the hash is charged to
+     * @param rawPassword     The password to check
+     * @param encodedPassword The stored hash
+     * @return Future completed with whether the password matches
+     * @throws PasswordHashingRejectedException if the tenant's share or the whole queue is full
+     */
+    public CompletableFuture<Boolean> matchesAsync(String tenantId, CharSequence rawPassword, String encodedPassword) {
+        return executor.submit(tenantId, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return executor.execute(TenantContext.getCurrentTenant(), () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword) && executor.hasIdleCapacity();
+    }
+}
@@ -1,7 +1,11 @@
 package com.example.multitenant1.security;
 
 import com.example.multitenant1.config.TenantContext;
+import com.example.multitenant1.config.TenantMetrics;
 import com.example.multitenant1.service.UserDetailsServiceImpl;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,6 +20,7 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
@@ -26,33 +31,67 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private UserDetailsServiceImpl userDetailsService;
 
+    @Autowired
+    private TenantMetrics tenantMetrics;
+
+    private TenantMetrics.TenantMeters<Timer> validTimers;
+    private TenantMetrics.TenantMeters<Timer> invalidTimers;
+
+    @PostConstruct
+    public void init() {
+        validTimers = tenantMetrics.timers("jwt.verification", "outcome", "valid");
+        invalidTimers = tenantMetrics.timers("jwt.verification", "outcome", "invalid");
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) 
             throws ServletException, IOException {
         try {
             String jwt = getJwtFromRequest(request);
 
-            if (StringUtils.hasText(jwt) && jwtTokenProvider.validateToken(jwt, null)) {
-                String username = jwtTokenProvider.extractUsername(jwt);
-                String tenantId = jwtTokenProvider.extractTenantId(jwt);
+            if (StringUtils.hasText(jwt)) {
+                // Single verification per request; repeat tokens are served from the claims cache
+                VerifiedClaims claims = verifyToken(jwt);
+                String tenantId = claims.getTenantId();
+                request.setAttribute(VerifiedClaims.REQUEST_ATTRIBUTE, claims);
                 
                 // Set the tenant context from the JWT token
                 if (tenantId != null) {
                     TenantContext.setCurrentTenant(tenantId);
                 }
                 
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                UserDetails userDetails = userDetailsService.loadUserByClaims(claims);
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities());
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
                 SecurityContextHolder.getContext().setAuthentication(authentication);
             }
+        } catch (JwtException ex) {
+            logger.debug("Rejected JWT: " + ex.getMessage());
         } catch (Exception ex) {
             logger.error("Could not set user authentication in security context", ex);
         }
 
-        filterChain.doFilter(request, response);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            // Requests rejected before reaching a handler never run TenantInterceptor.afterCompletion
+            TenantContext.clear();
+        }
+    }
+
+    private VerifiedClaims verifyToken(String jwt) {
+        long start = System.nanoTime();
+        try {
+            VerifiedClaims claims = jwtTokenProvider.verifyToken(jwt);
+            validTimers.of(claims.getTenantId()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return claims;
+        } catch (RuntimeException e) {
+            // The token's tenant claim cannot be trusted, so rejections count for the default tenant
+            invalidTimers.of(null).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
     }
 
     private String getJwtFromRequest(HttpServletRequest request) {
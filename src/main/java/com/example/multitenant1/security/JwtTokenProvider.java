@@ -2,6 +2,8 @@ package com.example.multitenant1.security;
 
 import com.example.multitenant1.model.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -14,6 +16,7 @@ import java.security.Key;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.function.Function;
 
 @Component
@@ -22,20 +25,41 @@ public class JwtTokenProvider {
     @Value("${jwt.secret:defaultSecretKey12345678901234567890}")
     private String secret;
 
-    @Value("${jwt.expiration:86400000}") // 24 hours in milliseconds
+    // Access tokens are short-lived; clients renew them at /auth/refresh
+    @Value("${jwt.expiration:900000}") // 15 minutes in milliseconds
     private long jwtExpiration;
 
+    @Value("${jwt.claims-cache.max-size:10000}")
+    private long claimsCacheMaxSize;
+
     private Key key;
 
+    // Parsers are immutable and thread-safe, so one instance serves every request
+    private JwtParser jwtParser;
+
+    private VerifiedClaimsCache claimsCache;
+
+    private TokenRevocationList revocations;
+
     @PostConstruct
     public void init() {
         this.key = Keys.hmacShaKeyFor(secret.getBytes());
+        this.jwtParser = Jwts.parser()
+                .setSigningKey(key)
+                .build();
+        this.claimsCache = new VerifiedClaimsCache(claimsCacheMaxSize);
+        this.revocations = new TokenRevocationList();
+    }
+
+    public long getExpirationMillis() {
+        return jwtExpiration;
     }
 
     public String generateToken(User user) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("user_id", user.getId());
         claims.put("tenant_id", user.getTenantId());
+        claims.put("email", user.getEmail());
         claims.put("roles", user.getRole());
         
         return createToken(claims, user.getUsername());
@@ -48,28 +72,60 @@ public class JwtTokenProvider {
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(subject)
+                .setId(UUID.randomUUID().toString())
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
                 .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    /**
+     * Verifies the token once and returns its claims. Repeat calls for the same token are served
+     * from the verified-claims cache until the token expires.
+     *
+     * @param token The compact JWT
+     * @return The verified claims
+     * @throws JwtException if the signature is invalid, the token has expired or it was revoked
+     */
+    public VerifiedClaims verifyToken(String token) {
+        VerifiedClaims claims = claimsCache.get(token, t -> VerifiedClaims.from(extractAllClaims(t)));
+        // Checked on every call, so a revocation also applies to tokens already in the claims cache
+        if (revocations.isRevoked(claims.getTokenId())) {
+            throw new JwtException("Token has been revoked");
+        }
+        return claims;
+    }
+
+    /**
+     * Revokes a token before its expiry. The revocation is held in memory until the token would
+     * have expired, so checking it costs no database access.
+     *
+     * @param claims Verified claims of the token to revoke
+     */
+    public void revoke(VerifiedClaims claims) {
+        if (claims.getTokenId() != null) {
+            revocations.revoke(claims.getTokenId(), claims.getExpiresAtMillis());
+        }
+    }
+
+    public long getRevokedTokenCount() {
+        return revocations.size();
+    }
+
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return verifyToken(token).getSubject();
     }
 
     public Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+        return new Date(verifyToken(token).getExpiresAtMillis());
     }
 
     public String extractTenantId(String token) {
-        final Claims claims = extractAllClaims(token);
-        return claims.get("tenant_id", String.class);
+        return verifyToken(token).getTenantId();
     }
 
     public Long extractUserId(String token) {
-        final Claims claims = extractAllClaims(token);
-        return claims.get("user_id", Long.class);
+        return verifyToken(token).getUserId();
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
@@ -78,19 +134,17 @@ public class JwtTokenProvider {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .setSigningKey(key)
-                .build()
+        return jwtParser
                 .parseClaimsJws(token)
                 .getBody();
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
-
     public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        try {
+            final VerifiedClaims claims = verifyToken(token);
+            return userDetails == null || claims.getSubject().equals(userDetails.getUsername());
+        } catch (JwtException | IllegalArgumentException e) {
+            return false;
+        }
     }
 }
\ No newline at end of file
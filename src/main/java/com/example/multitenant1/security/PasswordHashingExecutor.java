@@ -0,0 +1,335 @@
+package com.example.multitenant1.security;
+
+import com.example.multitenant1.config.TenantMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/* PasswordHashingExecutor runs password hashes on a fixed set of worker threads, one per core by
+ * default, so a login burst or credential-stuffing wave costs at most that much CPU and request
+ * threads stay free for everything else. Request paths submit their hash and get a future back, so
+ * no request thread is parked while it is queued; execute is left for callers that cannot continue
+ * asynchronously. The queue in front of the workers is bounded in total and per tenant, and a full
+ * queue rejects at submission instead of piling up work. Each tenant has its own queue and workers
+ * serve tenants round-robin, so a tenant with a deep backlog delays other tenants by at most one
+ * hash per worker.
+ */
+@Component
+public class PasswordHashingExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashingExecutor.class);
+
+    private static final String DEFAULT_TENANT = "public";
+
+    @Autowired
+    private TenantMetrics tenantMetrics;
+
+    // 0 = one worker per available processor
+    @Value("${security.password-hashing.threads:0}")
+    private int threads;
+
+    @Value("${security.password-hashing.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${security.password-hashing.max-queued-per-tenant:16}")
+    private int maxQueuedPerTenant;
+
+    // Hashes that waited longer are dropped; their caller has most likely given up already
+    @Value("${security.password-hashing.max-queue-wait:PT2S}")
+    private Duration maxQueueWait;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    // Tenants with queued hashes, in the order the workers serve them
+    private final ArrayDeque<String> ready = new ArrayDeque<>();
+    private final Map<String, ArrayDeque<Task<?>>> queues = new HashMap<>();
+    private int queued;
+
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejectedTenantLimit = new LongAdder();
+    private final LongAdder rejectedOverloaded = new LongAdder();
+    private final LongAdder pickedUp = new LongAdder();
+    private final LongAdder totalQueueWaitNanos = new LongAdder();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+    private final LongAdder totalHashNanos = new LongAdder();
+
+    // Completions per wall-clock second, for the throughput figure
+    private long currentSecond;
+    private long completedThisSecond;
+    private long completedLastSecond;
+
+    private TenantMetrics.TenantMeters<Counter> tenantLimitRejections;
+    private TenantMetrics.TenantMeters<Counter> overloadedRejections;
+    private TenantMetrics.TenantMeters<Counter> expiredRejections;
+    private TenantMetrics.TenantMeters<Timer> queueWaitTimers;
+    private TenantMetrics.TenantMeters<Timer> successTimers;
+    private TenantMetrics.TenantMeters<Timer> errorTimers;
+
+    @PostConstruct
+    public void init() {
+        tenantLimitRejections = tenantMetrics.counters("password.hashing.rejections", "reason", "tenant_limit");
+        overloadedRejections = tenantMetrics.counters("password.hashing.rejections", "reason", "overloaded");
+        expiredRejections = tenantMetrics.counters("password.hashing.rejections", "reason", "expired");
+        queueWaitTimers = tenantMetrics.timers("password.hashing.queue.wait");
+        successTimers = tenantMetrics.timers("password.hashing", "outcome", "success");
+        errorTimers = tenantMetrics.timers("password.hashing", "outcome", "error");
+        int workerCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "password-hashing-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        logger.info("Password hashing on {} threads, queue capacity {} ({} per tenant)",
+                workerCount, queueCapacity, maxQueuedPerTenant);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.forEach(Thread::interrupt);
+        lock.lock();
+        try {
+            queues.values().forEach(queue -> queue.forEach(task -> task.result.completeExceptionally(
+                    new PasswordHashingRejectedException("Password hashing is shutting down", false, Duration.ZERO))));
+            queues.clear();
+            ready.clear();
+            queued = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the hash on a worker thread and waits for its result. Request paths use submit instead.
+     *
+     * @param tenantId Tenant the hash is charged to; null counts as the default tenant
+     * @param hash     The hashing work, e.g. an encode or matches call of the actual encoder
+     * @return The hash's result
+     * @throws PasswordHashingRejectedException if the tenant's share or the whole queue is full,
+     *                                          or the hash waited longer than max-queue-wait
+     */
+    public <T> T execute(String tenantId, Supplier<T> hash) {
+        try {
+            return submit(tenantId, hash).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Queues the hash without waiting for it. Admission is the same as for execute; a rejection is
+     * thrown right away rather than through the future.
+     *
+     * @param tenantId Tenant the hash is charged to; null counts as the default tenant
+     * @param hash     The hashing work
+     * @return Future completed with the hash's result, or exceptionally if it waited too long
+     * @throws PasswordHashingRejectedException if the tenant's share or the whole queue is full
+     */
+    public <T> CompletableFuture<T> submit(String tenantId, Supplier<T> hash) {
+        String tenant = tenantId != null ? tenantId : DEFAULT_TENANT;
+        Task<T> task = new Task<>(tenant, hash);
+        lock.lock();
+        try {
+            ArrayDeque<Task<?>> queue = queues.get(tenant);
+            if (queue != null && queue.size() >= maxQueuedPerTenant) {
+                rejectedTenantLimit.increment();
+                tenantLimitRejections.of(tenant).increment();
+                throw new PasswordHashingRejectedException(
+                        "Too many password checks in progress for tenant " + tenant, true, retryAfter());
+            }
+            if (queued >= queueCapacity) {
+                rejectedOverloaded.increment();
+                overloadedRejections.of(tenant).increment();
+                throw new PasswordHashingRejectedException("Password hashing is overloaded", false, retryAfter());
+            }
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(tenant, queue);
+                ready.addLast(tenant);
+            }
+            queue.addLast(task);
+            queued++;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        return task.result;
+    }
+
+    public int getThreads() {
+        return workers.size();
+    }
+
+    public int getMaxQueuedPerTenant() {
+        return maxQueuedPerTenant;
+    }
+
+    /**
+     * Whether a hash submitted now would start right away. Used to skip optional work, such as
+     * re-hashing a password at a new cost, while the executor is busy.
+     */
+    public boolean hasIdleCapacity() {
+        lock.lock();
+        try {
+            return queued == 0 && active.get() < workers.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public PasswordHashingStats getStats() {
+        int queuedNow;
+        int queuedTenants;
+        lock.lock();
+        try {
+            queuedNow = queued;
+            queuedTenants = queues.size();
+        } finally {
+            lock.unlock();
+        }
+        long done = completed.sum();
+        long picked = pickedUp.sum();
+        return new PasswordHashingStats(
+                workers.size(),
+                active.get(),
+                queuedNow,
+                queueCapacity,
+                queuedTenants,
+                done,
+                rejectedTenantLimit.sum(),
+                rejectedOverloaded.sum(),
+                throughputPerSecond(),
+                picked == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalQueueWaitNanos.sum() / picked),
+                TimeUnit.NANOSECONDS.toMicros(maxQueueWaitNanos.get()),
+                done == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalHashNanos.sum() / done));
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Task<?> task;
+            try {
+                lock.lockInterruptibly();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                while (ready.isEmpty()) {
+                    workAvailable.await();
+                }
+                String tenant = ready.pollFirst();
+                ArrayDeque<Task<?>> queue = queues.get(tenant);
+                task = queue.pollFirst();
+                if (queue.isEmpty()) {
+                    queues.remove(tenant);
+                } else {
+                    // Back of the line: every other waiting tenant gets one hash first
+                    ready.addLast(tenant);
+                }
+                queued--;
+                active.incrementAndGet();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    private Duration retryAfter() {
+        // Time for the workers to drain the current queue, at the observed hash cost
+        long done = completed.sum();
+        long averageHashNanos = done == 0 ? 0 : totalHashNanos.sum() / done;
+        long drainNanos = averageHashNanos * (queued + 1) / Math.max(1, workers.size());
+        return Duration.ofSeconds(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(drainNanos) + 1));
+    }
+
+    private synchronized void recordCompletion() {
+        long second = System.currentTimeMillis() / 1000;
+        if (second != currentSecond) {
+            completedLastSecond = second == currentSecond + 1 ? completedThisSecond : 0;
+            completedThisSecond = 0;
+            currentSecond = second;
+        }
+        completedThisSecond++;
+    }
+
+    private synchronized long throughputPerSecond() {
+        long second = System.currentTimeMillis() / 1000;
+        if (second == currentSecond) {
+            return completedLastSecond;
+        }
+        return second == currentSecond + 1 ? completedThisSecond : 0;
+    }
+
+    private final class Task<T> {
+        private final String tenant;
+        private final Supplier<T> hash;
+        private final long submittedNanos = System.nanoTime();
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private Task(String tenant, Supplier<T> hash) {
+            this.tenant = tenant;
+            this.hash = hash;
+        }
+
+        private void run() {
+            long start = System.nanoTime();
+            long waitNanos = start - submittedNanos;
+            pickedUp.increment();
+            totalQueueWaitNanos.add(waitNanos);
+            maxQueueWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            queueWaitTimers.of(tenant).record(waitNanos, TimeUnit.NANOSECONDS);
+            if (waitNanos > maxQueueWait.toNanos()) {
+                rejectedOverloaded.increment();
+                expiredRejections.of(tenant).increment();
+                result.completeExceptionally(new PasswordHashingRejectedException(
+                        "Password hashing queue wait exceeded " + maxQueueWait, false, retryAfter()));
+                return;
+            }
+            TenantMetrics.TenantMeters<Timer> timers = successTimers;
+            try {
+                result.complete(hash.get());
+            } catch (RuntimeException e) {
+                timers = errorTimers;
+                result.completeExceptionally(e);
+            } finally {
+                long hashNanos = System.nanoTime() - start;
+                totalHashNanos.add(hashNanos);
+                timers.of(tenant).record(hashNanos, TimeUnit.NANOSECONDS);
+                completed.increment();
+                recordCompletion();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.multitenant1.security;
+
+import java.time.Duration;
+
+/* Thrown instead of hashing when the password-hashing executor cannot take more work. tenantLimited
+ * tells a tenant that used up its own share of the queue (429) from an overloaded executor (503). */
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    private final boolean tenantLimited;
+    private final Duration retryAfter;
+
+    public PasswordHashingRejectedException(String message, boolean tenantLimited, Duration retryAfter) {
+        super(message);
+        this.tenantLimited = tenantLimited;
+        this.retryAfter = retryAfter;
+    }
+
+    public boolean isTenantLimited() {
+        return tenantLimited;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
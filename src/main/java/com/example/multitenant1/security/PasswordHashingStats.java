@@ -0,0 +1,32 @@
+package com.example.multitenant1.security;
+
+/**
+ * Point-in-time load and counters of the password-hashing executor.
+ *
+ * @param threads                Worker threads, one hash each at a time
+ * @param active                 Hashes currently running
+ * @param queued                 Hashes waiting for a worker
+ * @param queueCapacity          Upper bound on queued hashes across all tenants
+ * @param queuedTenants          Tenants with at least one hash waiting
+ * @param completed              Hashes finished since startup
+ * @param rejectedTenantLimit    Hashes refused because the tenant's queue share was used up
+ * @param rejectedOverloaded     Hashes refused because the queue was full or the wait ran out
+ * @param throughputPerSecond    Hashes finished per second over the last completed second
+ * @param averageQueueWaitMicros Mean time between submission and a worker picking the hash up
+ * @param maxQueueWaitMicros     Longest such wait
+ * @param averageHashMicros      Mean time spent hashing
+ */
+public record PasswordHashingStats(
+        int threads,
+        int active,
+        int queued,
+        int queueCapacity,
+        int queuedTenants,
+        long completed,
+        long rejectedTenantLimit,
+        long rejectedOverloaded,
+        long throughputPerSecond,
+        long averageQueueWaitMicros,
+        long maxQueueWaitMicros,
+        long averageHashMicros) {
+}
@@ -0,0 +1,51 @@
+package com.example.multitenant1.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.util.concurrent.TimeUnit;
+
+/* Ids (jti) of access tokens revoked before their expiry, each held only until the token would have
+ * expired anyway. Access tokens are short-lived, so the set stays small: at most the tokens revoked
+ * within one token lifetime. It is deliberately not size-bounded, since dropping an entry early would
+ * make a revoked token valid again. Revocations are local to this node.
+ */
+class TokenRevocationList {
+
+    private final Cache<String, Long> revoked = Caffeine.newBuilder()
+            .expireAfter(new UntilTokenExpiry())
+            .build();
+
+    void revoke(String tokenId, long expiresAtMillis) {
+        if (expiresAtMillis > System.currentTimeMillis()) {
+            revoked.put(tokenId, expiresAtMillis);
+        }
+    }
+
+    boolean isRevoked(String tokenId) {
+        return tokenId != null && revoked.getIfPresent(tokenId) != null;
+    }
+
+    long size() {
+        return revoked.estimatedSize();
+    }
+
+    private static final class UntilTokenExpiry implements Expiry<String, Long> {
+
+        @Override
+        public long expireAfterCreate(String key, Long expiresAtMillis, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expiresAtMillis - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Long expiresAtMillis, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, expiresAtMillis, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Long expiresAtMillis, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
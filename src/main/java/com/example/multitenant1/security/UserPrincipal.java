@@ -0,0 +1,50 @@
+package com.example.multitenant1.security;
+
+import com.example.multitenant1.model.User;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.List;
+
+/* UserPrincipal is the authenticated user of a request carrying a JWT: an immutable snapshot of the
+ * user's identity and authorities, without the password hash. Unlike a User entity it is safe to
+ * share between the concurrent requests that read it from PrincipalCache, and nothing a request does
+ * with it can change what the next one sees.
+ */
+public record UserPrincipal(Long id, String username, String email, String tenantId, String role,
+                            List<GrantedAuthority> authorities) implements UserDetails {
+
+    public UserPrincipal {
+        authorities = List.copyOf(authorities);
+    }
+
+    public static UserPrincipal of(Long id, String username, String email, String tenantId, String role) {
+        return new UserPrincipal(id, username, email, tenantId, role,
+                List.of(new SimpleGrantedAuthority("ROLE_" + (role != null ? role : "USER"))));
+    }
+
+    public static UserPrincipal of(User user) {
+        return of(user.getId(), user.getUsername(), user.getEmail(), user.getTenantId(), user.getRole());
+    }
+
+    public static UserPrincipal of(VerifiedClaims claims) {
+        return of(claims.getUserId(), claims.getSubject(), claims.getEmail(), claims.getTenantId(), claims.getRoles());
+    }
+
+    @Override
+    public List<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    // Never needed once the token is verified, so it is not kept in memory
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.multitenant1.security;
+
+import io.jsonwebtoken.Claims;
+
+import java.util.Date;
+
+/**
+ * Immutable view of the claims of a JWT whose signature and expiry have already been verified.
+ * Instances are shared between requests through the verified-claims cache, so they must never be mutated.
+ */
+public final class VerifiedClaims {
+
+    // Request attribute under which JwtAuthenticationFilter leaves the claims of the request's token
+    public static final String REQUEST_ATTRIBUTE = VerifiedClaims.class.getName();
+
+    private final String subject;
+    // jti; null for tokens issued before token ids were introduced, which cannot be revoked
+    private final String tokenId;
+    private final String tenantId;
+    private final Long userId;
+    private final String email;
+    private final String roles;
+    private final long expiresAtMillis;
+
+    public VerifiedClaims(String subject, String tokenId, String tenantId, Long userId, String email, String roles,
+                          long expiresAtMillis) {
+        this.subject = subject;
+        this.tokenId = tokenId;
+        this.tenantId = tenantId;
+        this.userId = userId;
+        this.email = email;
+        this.roles = roles;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    static VerifiedClaims from(Claims claims) {
+        Date expiration = claims.getExpiration();
+        return new VerifiedClaims(
+                claims.getSubject(),
+                claims.getId(),
+                claims.get("tenant_id", String.class),
+                claims.get("user_id", Long.class),
+                claims.get("email", String.class),
+                claims.get("roles", String.class),
+                expiration != null ? expiration.getTime() : Long.MAX_VALUE);
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getRoles() {
+        return roles;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAtMillis;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.multitenant1.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/* Bounded cache of verified JWT claims keyed by the SHA-256 digest of the raw token.
+ * Raw tokens are never retained, and every entry expires no later than the token itself,
+ * so a cache hit is always as trustworthy as a fresh signature check.
+ */
+class VerifiedClaimsCache {
+
+    private final Cache<ByteBuffer, VerifiedClaims> cache;
+    private final MessageDigest digestPrototype;
+
+    VerifiedClaimsCache(long maximumSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new UntilTokenExpiry())
+                .build();
+        try {
+            this.digestPrototype = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    VerifiedClaims get(String token, Function<String, VerifiedClaims> verifier) {
+        ByteBuffer key = digest(token);
+        VerifiedClaims cached = cache.getIfPresent(key);
+        if (cached != null && !cached.isExpired(System.currentTimeMillis())) {
+            return cached;
+        }
+        // Verification failures propagate and are never cached
+        VerifiedClaims verified = verifier.apply(token);
+        cache.put(key, verified);
+        return verified;
+    }
+
+    long size() {
+        return cache.estimatedSize();
+    }
+
+    private ByteBuffer digest(String token) {
+        MessageDigest digest;
+        try {
+            digest = (MessageDigest) digestPrototype.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 digest is not cloneable", e);
+        }
+        return ByteBuffer.wrap(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static final class UntilTokenExpiry implements Expiry<ByteBuffer, VerifiedClaims> {
+
+        @Override
+        public long expireAfterCreate(ByteBuffer key, VerifiedClaims value, long currentTime) {
+            long remainingMillis = value.getExpiresAtMillis() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        }
+
+        @Override
+        public long expireAfterUpdate(ByteBuffer key, VerifiedClaims value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(ByteBuffer key, VerifiedClaims value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
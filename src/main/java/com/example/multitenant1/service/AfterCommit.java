@@ -0,0 +1,28 @@
+package com.example.multitenant1.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/* Runs cache maintenance once the surrounding transaction has committed. An eviction inside the
+ * transaction would let a concurrent request reload the old rows into the cache before the commit,
+ * and an addition would survive a rollback. Without a transaction the change is already committed,
+ * so the action runs at once.
+ */
+final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
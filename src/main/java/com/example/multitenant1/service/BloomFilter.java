@@ -0,0 +1,86 @@
+package com.example.multitenant1.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* Fixed-size Bloom filter over strings. mightContain never answers false for an added value; it
+ * answers true for a value never added with roughly the false-positive rate the filter was sized for,
+ * as long as no more than its capacity has been added. Adds and lookups are lock-free.
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private final AtomicInteger added = new AtomicInteger();
+
+    BloomFilter(int capacity, double falsePositiveRate) {
+        this.capacity = Math.max(1, capacity);
+        // Optimal sizing: m = -n ln p / (ln 2)^2 bits and k = m / n ln 2 hash functions
+        long optimalBits = (long) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (optimalBits + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / this.capacity * Math.log(2)));
+    }
+
+    void add(String value) {
+        long hash = hash(value);
+        long h1 = hash;
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                // Another bit of the same word changed; retry with the new value
+            }
+        }
+        added.incrementAndGet();
+    }
+
+    boolean mightContain(String value) {
+        long hash = hash(value);
+        long h1 = hash;
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether more values were added than the filter was sized for, so its false-positive rate has degraded.
+     */
+    boolean isSaturated() {
+        return added.get() > capacity;
+    }
+
+    long sizeInBytes() {
+        return bitCount / 8;
+    }
+
+    // 64-bit FNV-1a over the UTF-16 code units, finished with the murmur3 mixer
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB27A2D1B6C53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
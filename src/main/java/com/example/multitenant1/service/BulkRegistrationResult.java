@@ -0,0 +1,35 @@
+package com.example.multitenant1.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one line of a bulk registration request.
+ *
+ * @param line     1-based line number in the request body
+ * @param username The line's username, if it could be read
+ * @param status   CREATED or REJECTED
+ * @param userId   Id of the created user, null if rejected
+ * @param error    Reason for the rejection, null if created
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BulkRegistrationResult(
+        int line,
+        String username,
+        String status,
+        Long userId,
+        String error) {
+
+    static BulkRegistrationResult created(int line, String username, long userId) {
+        return new BulkRegistrationResult(line, username, "CREATED", userId, null);
+    }
+
+    static BulkRegistrationResult rejected(int line, String username, String error) {
+        return new BulkRegistrationResult(line, username, "REJECTED", null, error);
+    }
+
+    @JsonIgnore
+    public boolean isRejected() {
+        return error != null;
+    }
+}
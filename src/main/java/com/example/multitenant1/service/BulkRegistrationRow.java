@@ -0,0 +1,19 @@
+package com.example.multitenant1.service;
+
+/**
+ * One line of a bulk registration request.
+ *
+ * @param username     Required, unique within the tenant
+ * @param email        Required, unique within the tenant
+ * @param password     Plain password, hashed during the import; mutually exclusive with passwordHash
+ * @param passwordHash Existing BCrypt hash, e.g. exported from the system being migrated from;
+ *                     stored as is, which skips hashing altogether
+ * @param role         Optional, USER (the default) or ADMIN
+ */
+public record BulkRegistrationRow(
+        String username,
+        String email,
+        String password,
+        String passwordHash,
+        String role) {
+}
@@ -0,0 +1,290 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.model.User;
+import com.example.multitenant1.repository.UserRepository;
+import com.example.multitenant1.security.BoundedPasswordEncoder;
+import com.example.multitenant1.security.PasswordHashingExecutor;
+import com.example.multitenant1.security.PasswordHashingRejectedException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/* BulkRegistrationService imports users from newline-delimited JSON, one user per line, for onboarding
+ * tenants with many users. Lines are processed in chunks: uniqueness is checked for a whole chunk with
+ * two set-based queries, passwords are hashed in parallel on the password-hashing executor, and the
+ * chunk is inserted in one transaction as JDBC batches (ids come from the pooled users_seq). Every
+ * line gets a result; a rejected line never affects the others.
+ */
+@Service
+public class BulkRegistrationService {
+    private static final Logger logger = LoggerFactory.getLogger(BulkRegistrationService.class);
+    private static final Pattern BCRYPT_HASH = Pattern.compile("\\$2[aby]?\\$\\d{2}\\$[./A-Za-z0-9]{53}");
+    private static final Set<String> ROLES = Set.of("USER", "ADMIN");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BoundedPasswordEncoder passwordEncoder;
+
+    @Autowired
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private UserMembershipFilter membershipFilter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${security.bulk-registration.chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * Registers the users of every line for the tenant. Results are handed over chunk by chunk, in
+     * line order, as soon as a chunk is committed.
+     *
+     * @param tenantId The tenant the users belong to; must also be the current tenant
+     * @param ndjson   The request body, one JSON user per line; blank lines are skipped
+     * @param results  Receives the results of each chunk
+     * @return Number of users created
+     * @throws IOException if the request body cannot be read
+     */
+    public long register(String tenantId, BufferedReader ndjson, Consumer<List<BulkRegistrationResult>> results)
+            throws IOException {
+        long start = System.nanoTime();
+        long created = 0;
+        long lines = 0;
+        List<PendingUser> chunk = new ArrayList<>(chunkSize);
+        List<BulkRegistrationResult> malformed = new ArrayList<>();
+        String text;
+        int lineNumber = 0;
+        while ((text = ndjson.readLine()) != null) {
+            lineNumber++;
+            if (text.isBlank()) {
+                continue;
+            }
+            lines++;
+            try {
+                chunk.add(new PendingUser(lineNumber, objectMapper.readValue(text, BulkRegistrationRow.class)));
+            } catch (JsonProcessingException e) {
+                malformed.add(BulkRegistrationResult.rejected(lineNumber, null, "Malformed JSON: " + e.getOriginalMessage()));
+            }
+            if (chunk.size() + malformed.size() >= chunkSize) {
+                created += flush(tenantId, chunk, malformed, results);
+            }
+        }
+        if (!chunk.isEmpty() || !malformed.isEmpty()) {
+            created += flush(tenantId, chunk, malformed, results);
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        logger.info("Bulk registration for tenant {}: {} of {} users created in {} ms ({} users/s)",
+                tenantId, created, lines, millis, created * 1000 / millis);
+        return created;
+    }
+
+    private long flush(String tenantId, List<PendingUser> chunk, List<BulkRegistrationResult> malformed,
+                       Consumer<List<BulkRegistrationResult>> results) {
+        List<BulkRegistrationResult> chunkResults = new ArrayList<>(malformed);
+        long created;
+        try {
+            created = registerChunk(tenantId, chunk, chunkResults);
+        } catch (RuntimeException e) {
+            logger.warn("Bulk registration chunk for tenant {} failed: {}", tenantId, e.getMessage());
+            chunk.stream()
+                    .filter(pending -> pending.result == null)
+                    .forEach(pending -> chunkResults.add(pending.reject("Registration failed: " + e.getMessage())));
+            created = chunkResults.stream().filter(result -> !result.isRejected()).count();
+        }
+        chunkResults.sort((a, b) -> Integer.compare(a.line(), b.line()));
+        chunk.clear();
+        malformed.clear();
+        results.accept(chunkResults);
+        return created;
+    }
+
+    private long registerChunk(String tenantId, List<PendingUser> chunk, List<BulkRegistrationResult> results) {
+        // Field checks and duplicates within the chunk; earlier chunks are already in the table
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        List<PendingUser> valid = new ArrayList<>();
+        for (PendingUser pending : chunk) {
+            String error = validate(pending.row);
+            if (error == null && !usernames.add(pending.row.username())) {
+                error = "Duplicate username in request";
+            }
+            if (error == null && !emails.add(pending.row.email())) {
+                error = "Duplicate email in request";
+            }
+            if (error != null) {
+                results.add(pending.reject(error));
+            } else {
+                valid.add(pending);
+            }
+        }
+        if (valid.isEmpty()) {
+            return 0;
+        }
+
+        // Only values the tenant's membership filter cannot rule out need the database
+        usernames.removeIf(username -> !membershipFilter.mightContainUsername(tenantId, username));
+        emails.removeIf(email -> !membershipFilter.mightContainEmail(tenantId, email));
+        Set<String> takenUsernames = usernames.isEmpty() ? Set.of() : userRepository.findExistingUsernames(usernames);
+        Set<String> takenEmails = emails.isEmpty() ? Set.of() : userRepository.findExistingEmails(emails);
+        List<PendingUser> available = new ArrayList<>(valid.size());
+        for (PendingUser pending : valid) {
+            if (takenUsernames.contains(pending.row.username())) {
+                results.add(pending.reject("Username is already taken"));
+            } else if (takenEmails.contains(pending.row.email())) {
+                results.add(pending.reject("Email is already in use"));
+            } else {
+                available.add(pending);
+            }
+        }
+
+        List<PendingUser> hashed = hash(tenantId, available, results);
+        if (hashed.isEmpty()) {
+            return 0;
+        }
+        return insert(hashed, results);
+    }
+
+    private List<PendingUser> hash(String tenantId, List<PendingUser> pendingUsers, List<BulkRegistrationResult> results) {
+        // Keep no more hashes queued than the tenant's share, leaving logins of the same tenant room
+        Semaphore window = new Semaphore(Math.max(1, Math.min(passwordHashingExecutor.getThreads(),
+                passwordHashingExecutor.getMaxQueuedPerTenant() / 2)));
+        List<CompletableFuture<String>> hashes = new ArrayList<>(pendingUsers.size());
+        for (PendingUser pending : pendingUsers) {
+            if (pending.row.passwordHash() != null) {
+                hashes.add(CompletableFuture.completedFuture(pending.row.passwordHash()));
+                continue;
+            }
+            window.acquireUninterruptibly();
+            try {
+                hashes.add(passwordEncoder.encodeAsync(tenantId, pending.row.password())
+                        .whenComplete((hash, error) -> window.release()));
+            } catch (PasswordHashingRejectedException e) {
+                window.release();
+                hashes.add(CompletableFuture.failedFuture(e));
+            }
+        }
+
+        List<PendingUser> hashed = new ArrayList<>(pendingUsers.size());
+        for (int i = 0; i < pendingUsers.size(); i++) {
+            PendingUser pending = pendingUsers.get(i);
+            try {
+                pending.user = toUser(tenantId, pending.row, hashes.get(i).join());
+                hashed.add(pending);
+            } catch (CompletionException e) {
+                results.add(pending.reject("Password hashing failed: " + e.getCause().getMessage()));
+            }
+        }
+        return hashed;
+    }
+
+    private long insert(List<PendingUser> pendingUsers, List<BulkRegistrationResult> results) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        try {
+            transaction.executeWithoutResult(status -> {
+                userRepository.saveAll(pendingUsers.stream().map(pending -> pending.user).toList());
+                userRepository.flush();
+            });
+            pendingUsers.forEach(pending -> results.add(pending.created()));
+            return pendingUsers.size();
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent registration took a username or email after the check; find the rows one by one.
+            // Depends on the unique indexes on username and email (changesets tenant-4 and shared-init1):
+            // without them the batch would commit the duplicates and this fallback would never run
+            logger.info("Bulk insert hit a constraint, retrying {} users one at a time", pendingUsers.size());
+        }
+        long created = 0;
+        for (PendingUser pending : pendingUsers) {
+            pending.user.setId(null);
+            try {
+                transaction.executeWithoutResult(status -> userRepository.saveAndFlush(pending.user));
+                results.add(pending.created());
+                created++;
+            } catch (DataIntegrityViolationException e) {
+                results.add(pending.reject(UserService.conflictMessage(e)));
+            }
+        }
+        return created;
+    }
+
+    private User toUser(String tenantId, BulkRegistrationRow row, String passwordHash) {
+        User user = new User();
+        user.setUsername(row.username());
+        user.setEmail(row.email());
+        user.setPassword(passwordHash);
+        user.setTenantId(tenantId);
+        user.setRole(row.role() != null ? row.role() : "USER");
+        return user;
+    }
+
+    private static String validate(BulkRegistrationRow row) {
+        if (row.username() == null || row.username().isBlank()) {
+            return "Username is required";
+        }
+        if (row.email() == null || row.email().isBlank()) {
+            return "Email is required";
+        }
+        if ((row.password() == null) == (row.passwordHash() == null)) {
+            return "Exactly one of password and passwordHash is required";
+        }
+        if (row.passwordHash() != null && !BCRYPT_HASH.matcher(row.passwordHash()).matches()) {
+            return "passwordHash is not a BCrypt hash";
+        }
+        if (row.role() != null && !ROLES.contains(row.role())) {
+            return "Unknown role: " + row.role();
+        }
+        return null;
+    }
+
+    private final class PendingUser {
+        private final int line;
+        private final BulkRegistrationRow row;
+        private User user;
+        private BulkRegistrationResult result;
+
+        private PendingUser(int line, BulkRegistrationRow row) {
+            this.line = line;
+            this.row = row;
+        }
+
+        private BulkRegistrationResult created() {
+            principalCache.invalidate(user.getTenantId(), user.getUsername());
+            membershipFilter.add(user.getTenantId(), user.getUsername(), user.getEmail());
+            result = BulkRegistrationResult.created(line, row.username(), user.getId());
+            return result;
+        }
+
+        private BulkRegistrationResult reject(String error) {
+            result = BulkRegistrationResult.rejected(line, row.username(), error);
+            return result;
+        }
+    }
+}
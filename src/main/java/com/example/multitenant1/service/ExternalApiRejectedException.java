@@ -0,0 +1,20 @@
+package com.example.multitenant1.service;
+
+import org.springframework.web.client.RestClientException;
+
+import java.time.Duration;
+
+/* Thrown without contacting the upstream when its circuit is open or its bulkhead is full. */
+public class ExternalApiRejectedException extends RestClientException {
+
+    private final Duration retryAfter;
+
+    public ExternalApiRejectedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -1,27 +1,175 @@
 package com.example.multitenant1.service;
 
+import com.example.multitenant1.config.TenantContext;
+import com.example.multitenant1.config.TenantMetrics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
+/* ExternalApiService calls external HTTP APIs without holding a request thread. Requests go through
+ * one shared JDK HttpClient, which keeps connections alive and reuses them per host, with connect
+ * and response timeouts. Failed attempts are retried with exponential backoff and jitter, scheduled
+ * on a timer thread, so no thread sleeps between attempts. Bodies are either read into a String or,
+ * through openStream, handed over unread for the caller to relay.
+ *
+ * Every attempt passes the target host's ExternalHostGuard first: while a host's circuit is open
+ * or its bulkhead is full, attempts fail fast with ExternalApiRejectedException and are not retried,
+ * so a struggling upstream sees less traffic instead of three attempts per request.
+ */
 @Service
 public class ExternalApiService {
     private static final Logger logger = LoggerFactory.getLogger(ExternalApiService.class);
-    private static final int MAX_RETRIES = 3;
-    private static final long RETRY_DELAY_MS = 1000; // 1 second delay between retries
-    
-    private final RestTemplate restTemplate;
-    
-    public ExternalApiService() {
-        this.restTemplate = new RestTemplate();
-    }
-    
+
+    @Autowired
+    private TenantMetrics tenantMetrics;
+
+    @Value("${external-api.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${external-api.connect-timeout:PT2S}")
+    private Duration connectTimeout;
+
+    // Time allowed until the response headers arrive, per attempt
+    @Value("${external-api.read-timeout:PT5S}")
+    private Duration readTimeout;
+
+    @Value("${external-api.initial-backoff:PT0.5S}")
+    private Duration initialBackoff;
+
+    @Value("${external-api.max-backoff:PT5S}")
+    private Duration maxBackoff;
+
+    @Value("${external-api.circuit-breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${external-api.circuit-breaker.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${external-api.circuit-breaker.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${external-api.circuit-breaker.slow-call-rate-threshold:0.8}")
+    private double slowCallRateThreshold;
+
+    @Value("${external-api.circuit-breaker.slow-call-duration:PT2S}")
+    private Duration slowCallDuration;
+
+    @Value("${external-api.circuit-breaker.open-duration:PT30S}")
+    private Duration openDuration;
+
+    @Value("${external-api.circuit-breaker.half-open-calls:3}")
+    private int halfOpenCalls;
+
+    @Value("${external-api.bulkhead.max-concurrent-calls:20}")
+    private int maxConcurrentCalls;
+
+    private HttpClient httpClient;
+    private ScheduledExecutorService retryScheduler;
+    private TenantMetrics.TenantMeters<Counter> rejections;
+    private TenantMetrics.TenantMeters<Counter> retries;
+    private TenantMetrics.TenantMeters<Timer> successTimers;
+    private TenantMetrics.TenantMeters<Timer> retryableFailureTimers;
+    private TenantMetrics.TenantMeters<Timer> failureTimers;
+    private ExternalHostGuard.Settings guardSettings;
+    // Caller-supplied URLs can name any host, so idle guards are dropped
+    private final Cache<String, ExternalHostGuard> hostGuards = Caffeine.newBuilder()
+            .maximumSize(1_000)
+            .expireAfterAccess(Duration.ofMinutes(30))
+            .build();
+
+    @PostConstruct
+    public void init() {
+        rejections = tenantMetrics.counters("external.api.rejections");
+        retries = tenantMetrics.counters("external.api.retries");
+        successTimers = tenantMetrics.timers("external.api.attempts", "outcome", "success");
+        retryableFailureTimers = tenantMetrics.timers("external.api.attempts", "outcome", "retryable_failure");
+        failureTimers = tenantMetrics.timers("external.api.attempts", "outcome", "failure");
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        guardSettings = new ExternalHostGuard.Settings(windowSize, minimumCalls, failureRateThreshold,
+                slowCallRateThreshold, slowCallDuration, openDuration, halfOpenCalls, maxConcurrentCalls);
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "external-api-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+
+    /**
+     * Fetches data from an external API with retry logic, without blocking the calling thread
+     *
+     * @param url The URL of the external API
+     * @return Future completed with the API response, or exceptionally with a RestClientException
+     *         once all attempts have failed
+     */
+    public CompletableFuture<ResponseEntity<String>> fetchExternalDataAsync(String url) {
+        return fetchExternalDataAsync(url, HttpHeaders.EMPTY);
+    }
+
+    /**
+     * Like fetchExternalDataAsync(url), sending extra request headers such as If-None-Match
+     *
+     * @param url     The URL of the external API
+     * @param headers Headers added to every attempt
+     * @return Future completed with the API response
+     */
+    public CompletableFuture<ResponseEntity<String>> fetchExternalDataAsync(String url, HttpHeaders headers) {
+        return send(url, headers, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(ExternalApiService::toEntity);
+    }
+
+    /**
+     * Opens the upstream response as a stream, for relaying large bodies without holding them in memory.
+     * Attempts are retried until response headers arrive; once the future completes, the body has not
+     * been read yet and the caller must close it.
+     *
+     * @param url     The URL of the external API
+     * @param headers Headers added to every attempt
+     * @return Future completed with the response whose body is still to be read
+     */
+    public CompletableFuture<HttpResponse<InputStream>> openStream(String url, HttpHeaders headers) {
+        return send(url, headers, HttpResponse.BodyHandlers.ofInputStream());
+    }
+
     /**
      * Fetches data from an external API with retry logic
      * 
@@ -30,43 +178,146 @@ public class ExternalApiService {
      * @throws RestClientException if all retry attempts fail
      */
     public ResponseEntity<String> fetchExternalData(String url) {
-        int retryCount = 0;
-        RestClientException lastException = null;
-        
-        while (retryCount < MAX_RETRIES) {
-            try {
-                logger.info("Attempting to fetch data from external API: {}, attempt: {}", url, retryCount + 1);
-                ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-                logger.info("Successfully retrieved data from external API");
-                return response;
-            } catch (ResourceAccessException e) {
-                // Handle timeout or connection errors
-                lastException = e;
-                logger.warn("Connection error when accessing external API: {}, attempt: {}, error: {}", 
-                    url, retryCount + 1, e.getMessage());
-            } catch (RestClientException e) {
-                // Handle other REST client exceptions
-                lastException = e;
-                logger.warn("Error when accessing external API: {}, attempt: {}, error: {}", 
-                    url, retryCount + 1, e.getMessage());
+        try {
+            return fetchExternalDataAsync(url).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RestClientException restClientException) {
+                throw restClientException;
             }
-            
-            retryCount++;
-            
-            if (retryCount < MAX_RETRIES) {
-                try {
-                    logger.info("Waiting {} ms before retry attempt {}", RETRY_DELAY_MS, retryCount + 1);
-                    TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MS);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException("Thread interrupted during retry delay", ie);
-                }
+            throw e;
+        }
+    }
+
+    /**
+     * Circuit breaker and bulkhead state per upstream host
+     */
+    public Map<String, ExternalHostStats> getHostStats() {
+        Map<String, ExternalHostStats> stats = new TreeMap<>();
+        hostGuards.asMap().forEach((host, guard) -> stats.put(host, guard.snapshot()));
+        return stats;
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> send(String url, HttpHeaders headers,
+                                                       HttpResponse.BodyHandler<T> bodyHandler) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).timeout(readTimeout).GET();
+            headers.forEach((name, values) -> values.forEach(value -> builder.header(name, value)));
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            result.completeExceptionally(new RestClientException("Invalid external API URL: " + url, e));
+            return result;
+        }
+        // Attempts complete and retry on other threads, so the tenant for metrics is taken here
+        attempt(request, bodyHandler, TenantContext.getCurrentTenant(), 1, result);
+        return result;
+    }
+
+    private <T> void attempt(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, String tenantId,
+                             int attempt, CompletableFuture<HttpResponse<T>> result) {
+        String host = hostOf(request.uri());
+        ExternalHostGuard guard = hostGuards.get(host, h -> new ExternalHostGuard(h, guardSettings));
+        ExternalHostGuard.Permit permit;
+        try {
+            permit = guard.acquire();
+        } catch (ExternalApiRejectedException e) {
+            logger.warn("Rejected call to external API: {}", e.getMessage());
+            rejections.of(tenantId).increment();
+            result.completeExceptionally(e);
+            return;
+        }
+
+        logger.info("Attempting to fetch data from external API: {}, attempt: {}", request.uri(), attempt);
+        long start = System.nanoTime();
+        httpClient.sendAsync(request, bodyHandler)
+                .whenComplete((response, error) -> {
+                    RestClientException failure = error != null ? toException(request, error) : toException(response);
+                    guard.onResult(permit, failure != null && isRetryable(failure));
+                    (failure == null ? successTimers : isRetryable(failure) ? retryableFailureTimers : failureTimers)
+                            .of(tenantId).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    if (failure == null) {
+                        logger.info("Successfully retrieved data from external API");
+                        result.complete(response);
+                    } else if (attempt < maxAttempts && isRetryable(failure)) {
+                        long delay = backoffMillis(attempt);
+                        logger.warn("Error when accessing external API: {}, attempt: {}, error: {}; retrying in {} ms",
+                                request.uri(), attempt, failure.getMessage(), delay);
+                        retries.of(tenantId).increment();
+                        retryScheduler.schedule(() -> attempt(request, bodyHandler, tenantId, attempt + 1, result),
+                                delay, TimeUnit.MILLISECONDS);
+                    } else {
+                        logger.error("Failed to fetch data from external API after {} attempts", attempt);
+                        result.completeExceptionally(failure);
+                    }
+                });
+    }
+
+    /**
+     * Exponential backoff with equal jitter: half the capped delay is fixed, the other half random,
+     * so retries of many failing calls spread out instead of hitting the API in waves.
+     */
+    private long backoffMillis(int attempt) {
+        long capped = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt - 1, 20));
+        long half = capped / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    private static String hostOf(URI uri) {
+        return uri.getPort() < 0 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+    }
+
+    private static boolean isRetryable(RestClientException failure) {
+        // Connection problems, timeouts, throttling and server errors may go away; other client errors will not
+        return failure instanceof ResourceAccessException
+                || failure instanceof HttpServerErrorException
+                || (failure instanceof HttpClientErrorException clientError && clientError.getStatusCode().value() == 429);
+    }
+
+    private static RestClientException toException(HttpRequest request, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof IOException) {
+            String reason = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+            return new ResourceAccessException("I/O error on GET request for \"" + request.uri() + "\": " + reason,
+                    (IOException) cause);
+        }
+        return new RestClientException("Error on GET request for \"" + request.uri() + "\"", cause);
+    }
+
+    private static RestClientException toException(HttpResponse<?> response) {
+        HttpStatusCode status = HttpStatusCode.valueOf(response.statusCode());
+        if (!status.isError()) {
+            return null;
+        }
+        byte[] body = bodyOf(response);
+        if (status.is4xxClientError()) {
+            return HttpClientErrorException.create(status, "", headersOf(response), body, StandardCharsets.UTF_8);
+        }
+        return HttpServerErrorException.create(status, "", headersOf(response), body, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bodyOf(HttpResponse<?> response) {
+        if (response.body() instanceof String text) {
+            return text.getBytes(StandardCharsets.UTF_8);
+        }
+        if (response.body() instanceof InputStream stream) {
+            // Error bodies of streamed responses are dropped; closing the stream releases the connection
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // Nothing to release beyond the aborted exchange
             }
         }
-        
-        // If we've exhausted all retries, throw the last exception
-        logger.error("Failed to fetch data from external API after {} attempts", MAX_RETRIES);
-        throw lastException != null ? lastException : 
-            new RestClientException("Failed to fetch data from external API after " + MAX_RETRIES + " attempts");
+        return null;
+    }
+
+    private static ResponseEntity<String> toEntity(HttpResponse<String> response) {
+        return ResponseEntity.status(response.statusCode()).headers(headersOf(response)).body(response.body());
+    }
+
+    private static HttpHeaders headersOf(HttpResponse<?> response) {
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+        return headers;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,181 @@
+package com.example.multitenant1.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/* ExternalHostGuard protects one upstream host with a circuit breaker and a bulkhead.
+ *
+ * The breaker records the outcome of the last window-size calls. Once at least minimum-calls are
+ * recorded and either the failure rate or the slow-call rate reaches its threshold, it opens and
+ * rejects calls for open-duration. It then lets half-open-calls probes through: if they all succeed
+ * it closes again, a single failed probe re-opens it. The bulkhead caps calls in flight to the host
+ * and rejects the excess immediately instead of queueing it. Transitions happen under the guard's
+ * lock; the call path itself only takes it briefly to record an outcome.
+ */
+class ExternalHostGuard {
+    private static final Logger logger = LoggerFactory.getLogger(ExternalHostGuard.class);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Breaker and bulkhead limits, shared by all hosts.
+     */
+    record Settings(int windowSize, int minimumCalls, double failureRateThreshold, double slowCallRateThreshold,
+                    Duration slowCallDuration, Duration openDuration, int halfOpenCalls, int maxConcurrentCalls) {
+    }
+
+    /**
+     * Admission to one call; hand it back through onResult.
+     */
+    record Permit(long generation, long startNanos) {
+    }
+
+    private final String host;
+    private final Settings settings;
+    private final Semaphore bulkhead;
+
+    // Ring buffer of the last windowSize outcomes
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int recorded;
+    private int next;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    // Incremented on every transition so late results of an earlier state are ignored
+    private long generation;
+    private long openUntilNanos;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    private final LongAdder rejectedByCircuit = new LongAdder();
+    private final LongAdder rejectedByBulkhead = new LongAdder();
+    private final Map<String, LongAdder> transitions = new ConcurrentHashMap<>();
+
+    ExternalHostGuard(String host, Settings settings) {
+        this.host = host;
+        this.settings = settings;
+        this.bulkhead = new Semaphore(settings.maxConcurrentCalls());
+        this.failed = new boolean[settings.windowSize()];
+        this.slow = new boolean[settings.windowSize()];
+    }
+
+    /**
+     * Admits a call.
+     *
+     * @throws ExternalApiRejectedException if the circuit is open, its probes are taken, or the bulkhead is full
+     */
+    Permit acquire() {
+        long generationAtAdmission;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (state == State.OPEN && now - openUntilNanos >= 0) {
+                transitionTo(State.HALF_OPEN);
+            }
+            if (state == State.OPEN) {
+                rejectedByCircuit.increment();
+                throw new ExternalApiRejectedException("Circuit open for " + host, Duration.ofNanos(openUntilNanos - now));
+            }
+            if (state == State.HALF_OPEN && probesStarted >= settings.halfOpenCalls()) {
+                rejectedByCircuit.increment();
+                throw new ExternalApiRejectedException("Circuit half-open for " + host + ", probes in progress", Duration.ZERO);
+            }
+            if (!bulkhead.tryAcquire()) {
+                rejectedByBulkhead.increment();
+                throw new ExternalApiRejectedException("Too many concurrent calls to " + host, Duration.ZERO);
+            }
+            if (state == State.HALF_OPEN) {
+                probesStarted++;
+            }
+            generationAtAdmission = generation;
+        }
+        return new Permit(generationAtAdmission, System.nanoTime());
+    }
+
+    /**
+     * Records the outcome of an admitted call and frees its bulkhead slot.
+     */
+    void onResult(Permit permit, boolean callFailed) {
+        bulkhead.release();
+        boolean callSlow = System.nanoTime() - permit.startNanos() >= settings.slowCallDuration().toNanos();
+        synchronized (this) {
+            if (permit.generation() != generation) {
+                return;
+            }
+            if (state == State.HALF_OPEN) {
+                if (callFailed || callSlow) {
+                    transitionTo(State.OPEN);
+                } else if (++probesSucceeded >= settings.halfOpenCalls()) {
+                    transitionTo(State.CLOSED);
+                }
+            } else if (state == State.CLOSED) {
+                record(callFailed, callSlow);
+                if (recorded >= settings.minimumCalls()
+                        && (failureRate() >= settings.failureRateThreshold() || slowCallRate() >= settings.slowCallRateThreshold())) {
+                    transitionTo(State.OPEN);
+                }
+            }
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    synchronized ExternalHostStats snapshot() {
+        Map<String, Long> transitionCounts = new TreeMap<>();
+        transitions.forEach((name, count) -> transitionCounts.put(name, count.sum()));
+        return new ExternalHostStats(state.name(), failureRate(), slowCallRate(), recorded,
+                settings.maxConcurrentCalls() - bulkhead.availablePermits(), settings.maxConcurrentCalls(),
+                rejectedByCircuit.sum(), rejectedByBulkhead.sum(), transitionCounts);
+    }
+
+    private void record(boolean callFailed, boolean callSlow) {
+        if (recorded == failed.length) {
+            // Overwrite the oldest outcome
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[next] = callFailed;
+        slow[next] = callSlow;
+        failures += callFailed ? 1 : 0;
+        slowCalls += callSlow ? 1 : 0;
+        next = (next + 1) % failed.length;
+    }
+
+    private double failureRate() {
+        return recorded == 0 ? 0 : (double) failures / recorded;
+    }
+
+    private double slowCallRate() {
+        return recorded == 0 ? 0 : (double) slowCalls / recorded;
+    }
+
+    private void transitionTo(State target) {
+        logger.warn("Circuit for {} {} -> {} (failure rate {}, slow-call rate {})", host, state, target,
+                String.format("%.2f", failureRate()), String.format("%.2f", slowCallRate()));
+        transitions.computeIfAbsent(state + "->" + target, t -> new LongAdder()).increment();
+        state = target;
+        generation++;
+        probesStarted = 0;
+        probesSucceeded = 0;
+        if (target == State.OPEN) {
+            openUntilNanos = System.nanoTime() + settings.openDuration().toNanos();
+        } else if (target == State.CLOSED) {
+            recorded = 0;
+            next = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.multitenant1.service;
+
+import java.util.Map;
+
+/**
+ * Point-in-time circuit breaker and bulkhead state of one upstream host.
+ *
+ * @param state              CLOSED, OPEN or HALF_OPEN
+ * @param failureRate        Share of failed calls in the breaker's window
+ * @param slowCallRate       Share of slow calls in the breaker's window
+ * @param bufferedCalls      Calls currently recorded in the window
+ * @param inFlight           Calls currently holding a bulkhead slot
+ * @param maxConcurrentCalls The bulkhead's capacity
+ * @param rejectedByCircuit  Calls rejected while the circuit was open or probing
+ * @param rejectedByBulkhead Calls rejected because the bulkhead was full
+ * @param transitions        Count per state transition, e.g. CLOSED->OPEN
+ */
+public record ExternalHostStats(
+        String state,
+        double failureRate,
+        double slowCallRate,
+        int bufferedCalls,
+        int inFlight,
+        int maxConcurrentCalls,
+        long rejectedByCircuit,
+        long rejectedByBulkhead,
+        Map<String, Long> transitions) {
+}
@@ -0,0 +1,263 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.config.TenantContext;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/* ExternalResponseCache sits in front of ExternalApiService. Responses are cached per (tenant, URL),
+ * or per URL when external-api.cache.scope=shared, in a Caffeine cache bounded by approximate heap
+ * size (W-TinyLFU eviction). Freshness follows the upstream Cache-Control header (no-store, private,
+ * no-cache, max-age, s-maxage) with a default TTL when there is none. Stale entries carrying an ETag
+ * are kept for a while and revalidated with If-None-Match, so an unchanged resource costs a 304
+ * instead of a full body. Concurrent misses for the same key share a single upstream call.
+ */
+@Service
+public class ExternalResponseCache {
+
+    private static final String SHARED_SCOPE = "*";
+    private static final String DEFAULT_TENANT = "public";
+
+    @Autowired
+    private ExternalApiService externalApiService;
+
+    @Value("${external-api.cache.enabled:true}")
+    private boolean enabled;
+
+    // tenant: entries are private to the requesting tenant; shared: one entry per URL for all tenants
+    @Value("${external-api.cache.scope:tenant}")
+    private String scope;
+
+    @Value("${external-api.cache.max-size:16MB}")
+    private DataSize maxSize;
+
+    // Freshness when the upstream sends no Cache-Control max-age
+    @Value("${external-api.cache.default-ttl:PT30S}")
+    private Duration defaultTtl;
+
+    @Value("${external-api.cache.max-ttl:PT10M}")
+    private Duration maxTtl;
+
+    // How long a stale entry with an ETag is kept for revalidation
+    @Value("${external-api.cache.stale-retention:PT10M}")
+    private Duration staleRetention;
+
+    private Cache<Key, CachedResponse> cache;
+    private final ConcurrentMap<Key, CompletableFuture<ResponseEntity<String>>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder uncacheable = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Key key, CachedResponse response) -> response.weight())
+                .expireAfter(new Expiry<Key, CachedResponse>() {
+                    @Override
+                    public long expireAfterCreate(Key key, CachedResponse response, long currentTime) {
+                        return response.retainNanos(currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, CachedResponse response, long currentTime, long currentDuration) {
+                        return response.retainNanos(currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, CachedResponse response, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the response for the URL from the cache when fresh, revalidates it when stale, and
+     * otherwise fetches it, sharing the upstream call with concurrent requests for the same key
+     *
+     * @param url The URL of the external API
+     * @return Future completed with the API response
+     */
+    public CompletableFuture<ResponseEntity<String>> fetch(String url) {
+        if (!enabled) {
+            return externalApiService.fetchExternalDataAsync(url);
+        }
+        Key key = new Key(scopeOf(), url);
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null && cached.isFresh(System.nanoTime())) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached.toResponse());
+        }
+
+        CompletableFuture<ResponseEntity<String>> call = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<String>> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            coalesced.increment();
+            return running;
+        }
+        misses.increment();
+
+        HttpHeaders conditional = new HttpHeaders();
+        if (cached != null && cached.etag() != null) {
+            conditional.setIfNoneMatch(cached.etag());
+        }
+        externalApiService.fetchExternalDataAsync(url, conditional).whenComplete((response, error) -> {
+            ResponseEntity<String> result = null;
+            Throwable failure = error;
+            try {
+                if (error == null) {
+                    result = store(key, cached, response);
+                }
+            } catch (Throwable e) {
+                // The caller and every coalesced waiter would otherwise wait forever
+                failure = e;
+            } finally {
+                inFlight.remove(key, call);
+            }
+            if (failure != null) {
+                call.completeExceptionally(failure);
+            } else {
+                call.complete(result);
+            }
+        });
+        return call;
+    }
+
+    /**
+     * Counters since startup plus the cache's current size
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("scope", scope.toLowerCase(Locale.ROOT));
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("revalidated", revalidated.sum());
+        stats.put("uncacheable", uncacheable.sum());
+        stats.put("entries", cache.estimatedSize());
+        stats.put("weightedBytes", cache.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L));
+        stats.put("maxBytes", maxSize.toBytes());
+        stats.put("evictions", cache.stats().evictionCount());
+        return stats;
+    }
+
+    private ResponseEntity<String> store(Key key, CachedResponse cached, ResponseEntity<String> response) {
+        long now = System.nanoTime();
+        if (response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value() && cached != null) {
+            revalidated.increment();
+            // A 304 may carry updated caching headers; otherwise the previous policy applies again
+            CachedResponse refreshed = cached.refreshed(now, freshnessNanos(response.getHeaders(), cached.freshnessNanos(), SHARED_SCOPE.equals(key.scope())));
+            cache.put(key, refreshed);
+            return refreshed.toResponse();
+        }
+        String cacheControl = String.join(",", response.getHeaders().getOrEmpty(HttpHeaders.CACHE_CONTROL)).toLowerCase(Locale.ROOT);
+        boolean shared = SHARED_SCOPE.equals(key.scope());
+        if (!response.getStatusCode().is2xxSuccessful() || cacheControl.contains("no-store")
+                || (shared && cacheControl.contains("private"))) {
+            uncacheable.increment();
+            cache.invalidate(key);
+            return response;
+        }
+        long freshness = freshnessNanos(response.getHeaders(), defaultTtl.toNanos(), shared);
+        cache.put(key, new CachedResponse(response.getStatusCode().value(), response.getHeaders(), response.getBody(),
+                response.getHeaders().getETag(), now, freshness, staleRetention.toNanos()));
+        return response;
+    }
+
+    private long freshnessNanos(HttpHeaders headers, long fallbackNanos, boolean shared) {
+        long maxAge = -1;
+        for (String value : headers.getOrEmpty(HttpHeaders.CACHE_CONTROL)) {
+            for (String directive : value.toLowerCase(Locale.ROOT).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-cache")) {
+                    return 0;
+                }
+                if (directive.startsWith("max-age=") && maxAge < 0) {
+                    maxAge = parseSeconds(directive.substring("max-age=".length()));
+                } else if (shared && directive.startsWith("s-maxage=")) {
+                    // s-maxage overrides max-age for shared caches
+                    maxAge = parseSeconds(directive.substring("s-maxage=".length()));
+                }
+            }
+        }
+        long nanos = maxAge >= 0 ? Duration.ofSeconds(maxAge).toNanos() : fallbackNanos;
+        return Math.min(nanos, maxTtl.toNanos());
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value.replace("\"", "").trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private String scopeOf() {
+        if ("shared".equalsIgnoreCase(scope)) {
+            return SHARED_SCOPE;
+        }
+        String tenant = TenantContext.getCurrentTenant();
+        return tenant != null ? tenant : DEFAULT_TENANT;
+    }
+
+    private record Key(String scope, String url) {
+    }
+
+    private record CachedResponse(int status, HttpHeaders headers, String body, String etag,
+                                  long storedAtNanos, long freshnessNanos, long staleRetentionNanos) {
+
+        boolean isFresh(long now) {
+            return now - storedAtNanos < freshnessNanos;
+        }
+
+        long retainNanos(long now) {
+            // Entries without a validator are useless once stale
+            long retain = freshnessNanos + (etag != null ? staleRetentionNanos : 0);
+            return Math.max(0, retain - (now - storedAtNanos));
+        }
+
+        CachedResponse refreshed(long now, long freshness) {
+            return new CachedResponse(status, headers, body, etag, now, freshness, staleRetentionNanos);
+        }
+
+        int weight() {
+            // Approximate heap footprint: UTF-16 body plus header strings and a fixed overhead
+            long bytes = 128L + (body != null ? 2L * body.length() : 0);
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                bytes += 2L * header.getKey().length();
+                for (String value : header.getValue()) {
+                    bytes += 2L * value.length();
+                }
+            }
+            return (int) Math.min(Integer.MAX_VALUE, bytes);
+        }
+
+        ResponseEntity<String> toResponse() {
+            return ResponseEntity.status(status).headers(headers).body(body);
+        }
+    }
+}
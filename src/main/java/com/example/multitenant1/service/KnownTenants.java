@@ -0,0 +1,103 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.repository.TenantRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/* KnownTenants keeps the identifiers of all registered tenants (public.tenants) in memory, so a
+ * request naming a tenant that does not exist can be turned away with a set lookup instead of
+ * reaching Hibernate and the database. The set is loaded at startup, extended by provisioning
+ * as tenants are registered on this node, and reloaded periodically to pick up tenants
+ * registered elsewhere. Tenants are never deregistered, so entries are only ever added.
+ */
+@Service
+public class KnownTenants {
+    private static final Logger logger = LoggerFactory.getLogger(KnownTenants.class);
+
+    @Autowired
+    private TenantRepository tenantRepository;
+
+    @Value("${multitenancy.tenant-validation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${multitenancy.tenant-validation.refresh-interval:PT1M}")
+    private Duration refreshInterval;
+
+    private final Set<String> tenants = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService refresher;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        refresh();
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "known-tenants-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMillis = refreshInterval.toMillis();
+        refresher.scheduleWithFixedDelay(this::refresh, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether a tenant is registered. Always true when validation is disabled.
+     *
+     * @param tenantId Tenant identifier taken from a request
+     * @return true if requests for the tenant may proceed
+     */
+    public boolean isKnown(String tenantId) {
+        return !enabled || tenants.contains(tenantId);
+    }
+
+    /**
+     * Makes a tenant known right after it was registered, without waiting for the next reload.
+     *
+     * @param tenantId The registered tenant
+     */
+    public void register(String tenantId) {
+        tenants.add(tenantId);
+    }
+
+    public int size() {
+        return tenants.size();
+    }
+
+    void refresh() {
+        try {
+            int before = tenants.size();
+            tenants.addAll(tenantRepository.findAllTenantIds());
+            if (tenants.size() != before) {
+                logger.info("Known tenants: {}", tenants.size());
+            }
+        } catch (DataAccessException e) {
+            // Keep what is known; the next reload tries again
+            logger.warn("Could not load the tenant registry: {}", e.getMessage());
+        }
+    }
+}
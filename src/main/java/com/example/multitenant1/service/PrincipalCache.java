@@ -0,0 +1,73 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.security.UserPrincipal;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/* PrincipalCache keeps recently authenticated users per tenant so that requests carrying a
+ * valid JWT do not need a database round trip. It holds immutable UserPrincipal snapshots rather
+ * than User entities, so concurrent requests share no mutable state and no password hash stays
+ * cached. Every tenant gets its own size- and TTL-bounded partition, which keeps a large tenant from
+ * evicting the principals of small ones and lets a whole tenant be dropped at once. Partitions of
+ * rarely seen tenants are dropped beyond max-tenants.
+ */
+@Component
+public class PrincipalCache {
+
+    private static final String DEFAULT_TENANT = "public";
+
+    @Value("${security.principal-cache.max-size-per-tenant:1000}")
+    private long maxSizePerTenant;
+
+    @Value("${security.principal-cache.ttl:PT5M}")
+    private Duration ttl;
+
+    @Value("${security.principal-cache.max-tenants:1000}")
+    private long maxTenants;
+
+    private Cache<String, Cache<String, UserPrincipal>> tenants;
+
+    @PostConstruct
+    public void init() {
+        tenants = Caffeine.newBuilder().maximumSize(maxTenants).build();
+    }
+
+    /**
+     * Returns the cached principal or loads it with the given loader. Loader exceptions
+     * (e.g. user not found) propagate and nothing is cached.
+     */
+    public UserPrincipal get(String tenantId, String username, Function<String, UserPrincipal> loader) {
+        return partition(tenantId).get(username, loader);
+    }
+
+    public void invalidate(String tenantId, String username) {
+        Cache<String, UserPrincipal> partition = tenants.getIfPresent(keyOf(tenantId));
+        if (partition != null) {
+            partition.invalidate(username);
+        }
+    }
+
+    public void invalidateTenant(String tenantId) {
+        Cache<String, UserPrincipal> partition = tenants.asMap().remove(keyOf(tenantId));
+        if (partition != null) {
+            partition.invalidateAll();
+        }
+    }
+
+    private Cache<String, UserPrincipal> partition(String tenantId) {
+        return tenants.get(keyOf(tenantId), t -> Caffeine.newBuilder()
+                .maximumSize(maxSizePerTenant)
+                .expireAfterWrite(ttl)
+                .build());
+    }
+
+    private static String keyOf(String tenantId) {
+        return tenantId != null ? tenantId : DEFAULT_TENANT;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.config.TenantContext;
+import com.example.multitenant1.model.RefreshToken;
+import com.example.multitenant1.model.User;
+import com.example.multitenant1.repository.RefreshTokenRepository;
+import com.example.multitenant1.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+/* RefreshTokenService issues and rotates the long-lived refresh tokens that renew short-lived access
+ * tokens. Tokens are random, stored per tenant as their SHA-256 digest, and single-use: each exchange
+ * marks the token used and issues a successor in the same family. A used token presented again means
+ * it was copied, so the whole family is deleted and the user has to log in again.
+ *
+ * Refreshing is the one point where the user is read from the database, so a deleted user cannot
+ * renew access; requests in between are authenticated from the access token alone.
+ */
+@Service
+public class RefreshTokenService {
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenService.class);
+    private static final int TOKEN_BYTES = 32;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${security.refresh-token.expiration:P14D}")
+    private Duration expiration;
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Issues the first refresh token of a new family, at login.
+     *
+     * @param user The authenticated user
+     * @return The refresh token to hand to the client
+     */
+    @Transactional
+    public String issue(User user) {
+        refreshTokenRepository.deleteExpired(user.getId(), Instant.now());
+        return save(user, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Exchanges a refresh token for its successor.
+     *
+     * @param refreshToken The refresh token presented by the client
+     * @return The token's user and the new refresh token
+     * @throws BadCredentialsException if the token is unknown, expired or already used
+     */
+    @Transactional(noRollbackFor = BadCredentialsException.class)
+    public RotatedRefreshToken rotate(String refreshToken) {
+        if (refreshToken == null || refreshToken.isEmpty()) {
+            throw new BadCredentialsException("Invalid refresh token");
+        }
+        String tokenHash = hash(refreshToken);
+        RefreshToken stored = refreshTokenRepository.findByTokenHash(tokenHash)
+                .orElseThrow(() -> new BadCredentialsException("Invalid refresh token"));
+        // A lost race with a concurrent exchange counts as reuse as well
+        if (stored.isUsed() || refreshTokenRepository.markUsed(tokenHash) == 0) {
+            refreshTokenRepository.deleteByFamily(stored.getFamilyId());
+            logger.warn("Refresh token reuse for user {} of tenant {}; revoked its token family",
+                    stored.getUserId(), TenantContext.getCurrentTenant());
+            throw new BadCredentialsException("Invalid refresh token");
+        }
+        if (stored.getExpiresAt().isBefore(Instant.now())) {
+            throw new BadCredentialsException("Invalid refresh token");
+        }
+        Optional<User> user = userRepository.findById(stored.getUserId());
+        if (user.isEmpty()) {
+            refreshTokenRepository.deleteByFamily(stored.getFamilyId());
+            throw new BadCredentialsException("Invalid refresh token");
+        }
+        return new RotatedRefreshToken(user.get(), save(user.get(), stored.getFamilyId()));
+    }
+
+    /**
+     * Revokes a refresh token together with every token rotated from the same login.
+     *
+     * @param refreshToken The refresh token presented by the client
+     * @return true if the token was known
+     */
+    @Transactional
+    public boolean revoke(String refreshToken) {
+        if (refreshToken == null || refreshToken.isEmpty()) {
+            return false;
+        }
+        Optional<RefreshToken> stored = refreshTokenRepository.findByTokenHash(hash(refreshToken));
+        stored.ifPresent(token -> refreshTokenRepository.deleteByFamily(token.getFamilyId()));
+        return stored.isPresent();
+    }
+
+    private String save(User user, String familyId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        RefreshToken refreshToken = new RefreshToken();
+        refreshToken.setTokenHash(hash(token));
+        refreshToken.setTenantId(user.getTenantId());
+        refreshToken.setFamilyId(familyId);
+        refreshToken.setUserId(user.getId());
+        refreshToken.setExpiresAt(Instant.now().plus(expiration));
+        refreshTokenRepository.save(refreshToken);
+        return token;
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
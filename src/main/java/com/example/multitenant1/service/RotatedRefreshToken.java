@@ -0,0 +1,12 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.model.User;
+
+/**
+ * Result of exchanging a refresh token.
+ *
+ * @param user         The token's user, freshly loaded, to issue the new access token for
+ * @param refreshToken The refresh token replacing the one that was exchanged
+ */
+public record RotatedRefreshToken(User user, String refreshToken) {
+}
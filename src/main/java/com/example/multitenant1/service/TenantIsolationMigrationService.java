@@ -0,0 +1,86 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.config.SchemaMultiTenantConnectionProvider;
+import com.example.multitenant1.config.TenantPartitionedRegionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/* Moves a tenant's rows between schema-per-tenant storage and the shared discriminator tables.
+ * Each move copies and deletes in one transaction, so a tenant is never visible in both places.
+ * Ids are regenerated by the target table, so tokens carrying the old user_id must be re-issued;
+ * the tenant's refresh tokens are dropped for the same reason, and its users log in again.
+ * The tenant's cached principals, membership filter and second-level cache entries are evicted
+ * once the move has committed.
+ */
+@Service
+public class TenantIsolationMigrationService {
+    private static final Logger logger = LoggerFactory.getLogger(TenantIsolationMigrationService.class);
+    private static final String USER_COLUMNS = "username, password, email, role";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private UserMembershipFilter membershipFilter;
+
+    @Autowired
+    private TenantPartitionedRegionFactory cacheRegionFactory;
+
+    @Value("${multitenancy.discriminator.schema:public}")
+    private String sharedSchema;
+
+    /**
+     * Moves a tenant from its own schema into the shared tables
+     *
+     * @param tenantId The tenant to move
+     * @return Number of users moved
+     */
+    @Transactional
+    public int moveToShared(String tenantId) {
+        String schema = SchemaMultiTenantConnectionProvider.validateTenantIdentifier(tenantId);
+        int moved = jdbcTemplate.update(
+                "INSERT INTO " + sharedSchema + ".users (tenant_id, " + USER_COLUMNS + ") "
+                        + "SELECT ?, " + USER_COLUMNS + " FROM " + schema + ".users", tenantId);
+        jdbcTemplate.update("DELETE FROM " + schema + ".users");
+        jdbcTemplate.update("DELETE FROM " + schema + ".refresh_tokens");
+        evictAfterCommit(tenantId);
+        logger.info("Moved {} users of tenant {} from schema {} to shared schema {}", moved, tenantId, schema, sharedSchema);
+        return moved;
+    }
+
+    /**
+     * Moves a tenant from the shared tables into its own, already migrated schema
+     *
+     * @param tenantId The tenant to move
+     * @return Number of users moved
+     */
+    @Transactional
+    public int moveToSchema(String tenantId) {
+        String schema = SchemaMultiTenantConnectionProvider.validateTenantIdentifier(tenantId);
+        int moved = jdbcTemplate.update(
+                "INSERT INTO " + schema + ".users (tenant_id, " + USER_COLUMNS + ") "
+                        + "SELECT tenant_id, " + USER_COLUMNS + " FROM " + sharedSchema + ".users WHERE tenant_id = ?",
+                tenantId);
+        jdbcTemplate.update("DELETE FROM " + sharedSchema + ".users WHERE tenant_id = ?", tenantId);
+        jdbcTemplate.update("DELETE FROM " + sharedSchema + ".refresh_tokens WHERE tenant_id = ?", tenantId);
+        evictAfterCommit(tenantId);
+        logger.info("Moved {} users of tenant {} from shared schema {} to schema {}", moved, tenantId, sharedSchema, schema);
+        return moved;
+    }
+
+    private void evictAfterCommit(String tenantId) {
+        AfterCommit.run(() -> {
+            principalCache.invalidateTenant(tenantId);
+            membershipFilter.invalidateTenant(tenantId);
+            cacheRegionFactory.evictTenant(tenantId);
+        });
+    }
+}
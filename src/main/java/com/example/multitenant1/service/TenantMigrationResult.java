@@ -0,0 +1,30 @@
+package com.example.multitenant1.service;
+
+/**
+ * Outcome of migrating one tenant with the shared tenant changelog.
+ *
+ * @param status         SUCCEEDED, SKIPPED (fingerprint unchanged) or FAILED
+ * @param durationMillis Time spent on the tenant, including schema creation
+ * @param error          Failure message, null on success
+ */
+public record TenantMigrationResult(
+        String status,
+        long durationMillis,
+        String error) {
+
+    static TenantMigrationResult succeeded(long durationMillis) {
+        return new TenantMigrationResult("SUCCEEDED", durationMillis, null);
+    }
+
+    static TenantMigrationResult skipped() {
+        return new TenantMigrationResult("SKIPPED", 0, null);
+    }
+
+    static TenantMigrationResult failed(long durationMillis, Throwable error) {
+        return new TenantMigrationResult("FAILED", durationMillis, String.valueOf(error.getMessage()));
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+}
@@ -0,0 +1,442 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.config.DatabaseMultiTenantConnectionProvider;
+import com.example.multitenant1.config.SchemaMultiTenantConnectionProvider;
+import com.example.multitenant1.config.TenantDatabaseRegistry;
+import com.example.multitenant1.repository.TenantRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import liquibase.Scope;
+import liquibase.ThreadLocalScopeManager;
+import liquibase.integration.spring.SpringLiquibase;
+import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Applies the shared tenant changelog to every tenant in the registry. Tenants are migrated in
+ * parallel on a bounded worker pool; each tenant keeps its own Liquibase changelog and lock tables
+ * inside its schema, so workers never contend on a global lock and one failing tenant does not stop
+ * the others. Migrations use dedicated, unpooled connections so the search_path Liquibase sets
+ * never leaks into connections Hibernate later routes to another tenant.
+ *
+ * A SHA-256 fingerprint of the tenant changelog is stored per tenant in the registry after each
+ * successful migration. Tenants whose stored fingerprint matches the current changelog skip
+ * Liquibase entirely (no lock, no DATABASECHANGELOG read, no checksum validation); only drifted
+ * tenants are migrated.
+ *
+ * In lazy mode startup does not migrate tenants at all, so time-to-ready does not depend on the number
+ * of tenants; each tenant is migrated when its first request arrives. TenantInterceptor calls
+ * awaitMigration, and the first request for a drifted tenant (in either mode, e.g. one registered by
+ * another node before a deployment) starts its migration on a bounded worker pool. Concurrent requests
+ * for the same tenant join that migration, and all of them wait for it up to
+ * multitenancy.migration.first-use-timeout. Tenants missing from the registry and failed migrations are
+ * remembered for multitenancy.migration.retry-interval, so they cost no registry query per request.
+ */
+@Service
+public class TenantMigrationService {
+    private static final Logger logger = LoggerFactory.getLogger(TenantMigrationService.class);
+    private static final String TENANT_CHANGELOG = "classpath:db/changelog/tenant/tenant-changelog.xml";
+    private static final String SCHEMA_PARAMETER = "tenant.schema";
+
+    private static boolean threadLocalScopes;
+
+    @Autowired
+    private TenantRepository tenantRepository;
+
+    @Autowired
+    private MultiTenantConnectionProvider<String> connectionProvider;
+
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Value("${multitenancy.isolation:schema}")
+    private String isolation;
+
+    @Value("${multitenancy.migration.enabled:${spring.liquibase.enabled:true}}")
+    private boolean enabled;
+
+    // eager: every registered tenant before startup completes; lazy: each tenant on its first request
+    @Value("${multitenancy.migration.mode:eager}")
+    private String mode;
+
+    // Lazy mode only: also migrate every drifted tenant in the background after startup
+    @Value("${multitenancy.migration.lazy-warmup:false}")
+    private boolean lazyWarmup;
+
+    // How long a request waits for its tenant's migration before it is turned away with 503
+    @Value("${multitenancy.migration.first-use-timeout:PT10S}")
+    private Duration firstUseTimeout;
+
+    // 0 means one worker per available processor
+    @Value("${multitenancy.migration.parallelism:0}")
+    private int parallelism;
+
+    @Value("${multitenancy.migration.fail-on-error:false}")
+    private boolean failOnError;
+
+    // Disable to always run Liquibase, e.g. after changing a tenant schema by hand
+    @Value("${multitenancy.migration.fingerprint-check:true}")
+    private boolean fingerprintCheck;
+
+    // How long an unregistered tenant or a failed migration is remembered before the registry is asked again
+    @Value("${multitenancy.migration.retry-interval:PT30S}")
+    private Duration retryInterval;
+
+    private String changelogFingerprint;
+
+    private final Map<String, TenantMigrationResult> results = new ConcurrentHashMap<>();
+    // Tenants whose schema is known to be current; checked on every session, so lookups must stay cheap
+    private final Set<String> upToDate = ConcurrentHashMap.newKeySet();
+    // First-use migrations queued or running, at most one per tenant; requests for the tenant wait on it
+    private final Map<String, CompletableFuture<TenantMigrationResult>> inFlight = new ConcurrentHashMap<>();
+    // true: not in the registry, nothing to migrate; false: the last migration failed
+    private Cache<String, Boolean> recentChecks;
+    private ExecutorService onFirstUse;
+
+    @PostConstruct
+    public void init() {
+        changelogFingerprint = fingerprint(TENANT_CHANGELOG);
+        recentChecks = Caffeine.newBuilder()
+                .expireAfterWrite(retryInterval)
+                .maximumSize(10_000)
+                .build();
+        if ("discriminator".equalsIgnoreCase(isolation)) {
+            logger.info("Discriminator isolation: tenants share the tables of the master changelog, nothing to migrate");
+            enabled = false;
+        }
+        if (!enabled) {
+            return;
+        }
+        // Drifted tenants found by requests are migrated here, as many at a time as at startup
+        AtomicInteger threads = new AtomicInteger();
+        onFirstUse = Executors.newFixedThreadPool(workers(), r -> {
+            Thread thread = new Thread(r, "tenant-migration-on-use-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        useThreadLocalLiquibaseScopes();
+        if ("lazy".equalsIgnoreCase(mode)) {
+            if (lazyWarmup) {
+                logger.info("Lazy tenant migration: tenants are migrated on first use and in the background");
+                Thread warmup = new Thread(this::migrateAll, "tenant-migration-warmup");
+                warmup.setDaemon(true);
+                warmup.start();
+            } else {
+                logger.info("Lazy tenant migration: tenants are migrated on first use");
+            }
+            return;
+        }
+        Map<String, TenantMigrationResult> outcome = migrateAll();
+        long failed = outcome.values().stream().filter(TenantMigrationResult::isFailed).count();
+        if (failed > 0 && failOnError) {
+            throw new IllegalStateException(failed + " of " + outcome.size() + " tenant migrations failed");
+        }
+    }
+
+    /**
+     * Migrates every registered tenant whose stored fingerprint differs from the current changelog,
+     * on a bounded worker pool
+     *
+     * @return Result per tenant
+     */
+    public Map<String, TenantMigrationResult> migrateAll() {
+        Map<String, String> fingerprints = tenantRepository.findAllFingerprints();
+        Map<String, TenantMigrationResult> outcome = new ConcurrentHashMap<>();
+        List<String> tenants = new ArrayList<>();
+        fingerprints.forEach((tenant, stored) -> {
+            if (isCurrent(stored)) {
+                upToDate.add(tenant);
+                outcome.put(tenant, TenantMigrationResult.skipped());
+                results.put(tenant, TenantMigrationResult.skipped());
+            } else {
+                tenants.add(tenant);
+            }
+        });
+        logger.info("{} of {} tenants match changelog fingerprint {}, {} to migrate",
+                outcome.size(), fingerprints.size(), changelogFingerprint, tenants.size());
+        if (tenants.isEmpty()) {
+            return new TreeMap<>(outcome);
+        }
+        int workers = Math.min(tenants.size(), workers());
+        if (workers > 1) {
+            useThreadLocalLiquibaseScopes();
+        }
+
+        long start = System.nanoTime();
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "tenant-migration-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletableFuture.allOf(tenants.stream()
+                    .map(tenant -> CompletableFuture.runAsync(() -> {
+                        TenantMigrationResult result = migrate(tenant);
+                        outcome.put(tenant, result);
+                        logger.info("Tenant {} {} in {} ms ({}/{})", tenant,
+                                result.isFailed() ? "failed" : "migrated", result.durationMillis(),
+                                done.incrementAndGet(), tenants.size());
+                    }, executor))
+                    .toArray(CompletableFuture[]::new))
+                    .join();
+        } finally {
+            executor.shutdown();
+        }
+
+        long failed = outcome.values().stream().filter(TenantMigrationResult::isFailed).count();
+        logger.info("Migrated {} tenants with {} workers in {} ms, {} failed", tenants.size(), workers,
+                (System.nanoTime() - start) / 1_000_000, failed);
+        return new TreeMap<>(outcome);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (onFirstUse != null) {
+            onFirstUse.shutdownNow();
+        }
+    }
+
+    /**
+     * Whether requests may use the tenant's schema, migrating it first if needed. Costs a set lookup
+     * once the tenant is up to date, and a cache lookup while an earlier answer about it is remembered.
+     * Otherwise the registry is asked once: a tenant at the current fingerprint is up to date from then
+     * on, a drifted one is migrated, and the caller waits for that up to the first-use timeout.
+     * Concurrent callers for the same tenant share one migration. Identifiers that are not in the
+     * registry have nothing to migrate.
+     *
+     * @param tenantId The tenant about to be used
+     * @return false if the migration failed, or did not finish within the first-use timeout
+     */
+    public boolean awaitMigration(String tenantId) {
+        if (!enabled || upToDate.contains(tenantId)) {
+            return true;
+        }
+        Boolean remembered = recentChecks.getIfPresent(tenantId);
+        if (remembered != null) {
+            return remembered;
+        }
+        CompletableFuture<TenantMigrationResult> migration = inFlight.get(tenantId);
+        if (migration == null) {
+            String stored;
+            try {
+                if (!tenantRepository.exists(tenantId)) {
+                    recentChecks.put(tenantId, true);
+                    return true;
+                }
+                stored = tenantRepository.findFingerprint(tenantId);
+            } catch (DataAccessException e) {
+                logger.warn("Could not check the schema of tenant {}: {}", tenantId, e.getMessage());
+                return false;
+            }
+            if (isCurrent(stored)) {
+                upToDate.add(tenantId);
+                results.put(tenantId, TenantMigrationResult.skipped());
+                return true;
+            }
+            migration = migrateOnFirstUse(tenantId);
+        }
+        try {
+            return !migration.get(firstUseTimeout.toMillis(), TimeUnit.MILLISECONDS).isFailed();
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private CompletableFuture<TenantMigrationResult> migrateOnFirstUse(String tenantId) {
+        CompletableFuture<TenantMigrationResult> migration = new CompletableFuture<>();
+        CompletableFuture<TenantMigrationResult> running = inFlight.putIfAbsent(tenantId, migration);
+        if (running != null) {
+            return running;
+        }
+        logger.info("Tenant {} is behind the current changelog, migrating it on first use", tenantId);
+        try {
+            onFirstUse.execute(() -> {
+                try {
+                    // Another node, or a concurrent run, may have migrated it meanwhile
+                    TenantMigrationResult result = migrateIfDrifted(tenantId);
+                    if (result.isFailed()) {
+                        recentChecks.put(tenantId, false);
+                    }
+                    migration.complete(result);
+                } catch (RuntimeException e) {
+                    logger.error("Migration of tenant {} failed", tenantId, e);
+                    recentChecks.put(tenantId, false);
+                    migration.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(tenantId, migration);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            inFlight.remove(tenantId, migration);
+            migration.completeExceptionally(e);
+        }
+        return migration;
+    }
+
+    /**
+     * Creates the tenant's schema if needed and applies the tenant changelog to it. Never throws;
+     * failures are logged and returned so callers can migrate tenants independently.
+     *
+     * @param tenantId The tenant to migrate
+     * @return The migration result
+     */
+    public TenantMigrationResult migrate(String tenantId) {
+        long start = System.nanoTime();
+        TenantMigrationResult result;
+        try {
+            String tenant = SchemaMultiTenantConnectionProvider.validateTenantIdentifier(tenantId);
+            boolean databasePerTenant = connectionProvider instanceof DatabaseMultiTenantConnectionProvider;
+            // A tenant database keeps its tables in public; otherwise the schema is named after the tenant
+            String schema = databasePerTenant ? "public" : tenant;
+            DataSource dataSource = migrationDataSource(tenant);
+            if (!databasePerTenant) {
+                new JdbcTemplate(dataSource).execute("CREATE SCHEMA IF NOT EXISTS " + schema);
+            }
+            applyChangelog(dataSource, schema);
+            tenantRepository.updateFingerprint(tenantId, changelogFingerprint);
+            upToDate.add(tenantId);
+            result = TenantMigrationResult.succeeded((System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            logger.error("Migration of tenant {} failed", tenantId, e);
+            result = TenantMigrationResult.failed((System.nanoTime() - start) / 1_000_000, e);
+        }
+        results.put(tenantId, result);
+        return result;
+    }
+
+    /**
+     * Creates a schema that does not belong to a registered tenant (e.g. a provisioning template) in
+     * the main database and applies the tenant changelog to it
+     *
+     * @param schema The schema to migrate
+     * @throws Exception if Liquibase fails
+     */
+    public void migrateSchema(String schema) throws Exception {
+        useThreadLocalLiquibaseScopes();
+        DataSource dataSource = migrationDataSource(SchemaMultiTenantConnectionProvider.validateTenantIdentifier(schema));
+        new JdbcTemplate(dataSource).execute("CREATE SCHEMA IF NOT EXISTS " + schema);
+        applyChangelog(dataSource, schema);
+    }
+
+    /**
+     * Records that a tenant's schema was created at the current changelog by other means than
+     * Liquibase, so neither startup nor first use migrates it again
+     *
+     * @param tenantId The provisioned tenant
+     */
+    public void markUpToDate(String tenantId) {
+        upToDate.add(tenantId);
+    }
+
+    public String getChangelogFingerprint() {
+        return changelogFingerprint;
+    }
+
+    /**
+     * Outcome of the most recent migration of each tenant
+     */
+    public Map<String, TenantMigrationResult> getResults() {
+        return new TreeMap<>(results);
+    }
+
+    private void applyChangelog(DataSource dataSource, String schema) throws Exception {
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setResourceLoader(resourceLoader);
+        liquibase.setChangeLog(TENANT_CHANGELOG);
+        liquibase.setDefaultSchema(schema);
+        liquibase.setLiquibaseSchema(schema);
+        liquibase.setChangeLogParameters(Map.of(SCHEMA_PARAMETER, schema));
+        liquibase.afterPropertiesSet();
+    }
+
+    private TenantMigrationResult migrateIfDrifted(String tenantId) {
+        if (isCurrent(tenantRepository.findFingerprint(tenantId))) {
+            upToDate.add(tenantId);
+            results.put(tenantId, TenantMigrationResult.skipped());
+            return TenantMigrationResult.skipped();
+        }
+        return migrate(tenantId);
+    }
+
+    private int workers() {
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    private boolean isCurrent(String storedFingerprint) {
+        return fingerprintCheck && changelogFingerprint.equals(storedFingerprint);
+    }
+
+    private String fingerprint(String location) {
+        try (InputStream in = resourceLoader.getResource(location).getInputStream()) {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(in.readAllBytes()));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot fingerprint " + location, e);
+        }
+    }
+
+    private DataSource migrationDataSource(String tenant) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource();
+        dataSource.setDriverClassName(dataSourceProperties.determineDriverClassName());
+        if (connectionProvider instanceof DatabaseMultiTenantConnectionProvider databaseProvider) {
+            TenantDatabaseRegistry registry = databaseProvider.getRegistry();
+            dataSource.setUrl(registry.getJdbcUrl(tenant));
+            dataSource.setUsername(registry.getUsername(tenant));
+            dataSource.setPassword(registry.getPassword(tenant));
+        } else {
+            dataSource.setUrl(dataSourceProperties.determineUrl());
+            dataSource.setUsername(dataSourceProperties.determineUsername());
+            dataSource.setPassword(dataSourceProperties.determinePassword());
+        }
+        return dataSource;
+    }
+
+    private static synchronized void useThreadLocalLiquibaseScopes() {
+        // Liquibase keeps its current scope in a JVM-wide singleton by default, which parallel runs would corrupt
+        if (!threadLocalScopes) {
+            Scope.setScopeManager(new ThreadLocalScopeManager());
+            threadLocalScopes = true;
+        }
+    }
+}
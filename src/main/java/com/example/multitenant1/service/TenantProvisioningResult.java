@@ -0,0 +1,28 @@
+package com.example.multitenant1.service;
+
+/**
+ * Outcome of provisioning one tenant.
+ *
+ * @param source         How the tenant's storage was created: spare (renamed pre-cloned schema),
+ *                       template (cloned from the template schema), migration (tenant changelog run
+ *                       with Liquibase) or registry (discriminator mode, no storage of its own)
+ * @param durationMillis Time spent on the tenant; for batched clones the batch time divided evenly
+ * @param error          Failure message, null on success
+ */
+public record TenantProvisioningResult(
+        String source,
+        long durationMillis,
+        String error) {
+
+    static TenantProvisioningResult created(String source, long durationMillis) {
+        return new TenantProvisioningResult(source, durationMillis, null);
+    }
+
+    static TenantProvisioningResult failed(String error) {
+        return new TenantProvisioningResult(null, 0, error);
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+}
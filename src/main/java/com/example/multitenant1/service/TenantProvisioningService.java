@@ -0,0 +1,315 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.config.SchemaMultiTenantConnectionProvider;
+import com.example.multitenant1.repository.TenantRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/* TenantProvisioningService onboards tenants without replaying the tenant changelog changeset by
+ * changeset. A template schema is migrated with Liquibase once per process; a tenant schema is then
+ * cloned from the template's table definitions (CREATE TABLE ... LIKE ... INCLUDING ALL) together with
+ * its Liquibase history, in the same transaction that registers the tenant. A few spare schemas are
+ * cloned ahead of time in the background, so provisioning a single tenant is usually just a rename.
+ *
+ * Cloning relies on PostgreSQL's transactional DDL. On other databases and with database-per-tenant
+ * isolation tenants are registered and migrated with Liquibase instead; in discriminator mode
+ * registering the tenant is all there is to do.
+ */
+@Service
+public class TenantProvisioningService {
+    private static final Logger logger = LoggerFactory.getLogger(TenantProvisioningService.class);
+    private static final String SPARE_PREFIX = "spare_";
+    private static final List<String> LIQUIBASE_TABLES = List.of("databasechangelog", "databasechangeloglock");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TenantRepository tenantRepository;
+
+    @Autowired
+    private TenantMigrationService tenantMigrationService;
+
+    @Autowired
+    private KnownTenants knownTenants;
+
+    @Value("${multitenancy.isolation:schema}")
+    private String isolation;
+
+    @Value("${multitenancy.provisioning.template-schema:tenant_template}")
+    private String templateSchema;
+
+    @Value("${multitenancy.provisioning.spare-schemas:4}")
+    private int spareSchemas;
+
+    // Tenants cloned per transaction during bulk provisioning
+    @Value("${multitenancy.provisioning.batch-size:200}")
+    private int batchSize;
+
+    private final Queue<String> spares = new ConcurrentLinkedQueue<>();
+    private final ExecutorService replenisher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "tenant-spare-schemas");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Base tables of the template schema; null until the template has been migrated
+    private volatile List<String> templateTables;
+    // Sequences (name -> increment) and the columns that draw their default from one
+    private volatile Map<String, Long> templateSequences;
+    private volatile List<SequenceDefault> templateSequenceDefaults;
+    private volatile Boolean cloneSupported;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void prepareSpares() {
+        if (spareSchemas > 0 && isCloneSupported()) {
+            replenisher.execute(() -> {
+                try {
+                    prepareTemplate();
+                } catch (Exception e) {
+                    logger.warn("Could not prepare template schema {}", templateSchema, e);
+                    return;
+                }
+                replenish();
+            });
+        }
+    }
+
+    /**
+     * Registers a tenant and creates its storage
+     *
+     * @param tenantId The new tenant
+     * @return How the tenant was provisioned, or why it failed
+     */
+    public TenantProvisioningResult provision(String tenantId) {
+        return provisionAll(List.of(tenantId)).get(tenantId);
+    }
+
+    /**
+     * Registers many tenants at once. Schemas are cloned in batches of one transaction each; a
+     * failing batch is retried tenant by tenant so one bad tenant does not fail its neighbours.
+     *
+     * @param tenantIds The new tenants
+     * @return Result per tenant
+     */
+    public Map<String, TenantProvisioningResult> provisionAll(List<String> tenantIds) {
+        Map<String, TenantProvisioningResult> results = new LinkedHashMap<>();
+        // Only the requested identifiers are looked up, so onboarding does not slow down as the registry grows
+        Set<String> existing = tenantRepository.findExistingTenantIds(tenantIds);
+        List<String> accepted = new ArrayList<>();
+        for (String tenantId : tenantIds) {
+            String error = checkTenantId(tenantId, existing);
+            if (error != null) {
+                results.put(tenantId, TenantProvisioningResult.failed(error));
+            } else {
+                existing.add(tenantId);
+                accepted.add(tenantId);
+            }
+        }
+
+        if ("discriminator".equalsIgnoreCase(isolation)) {
+            for (String tenantId : accepted) {
+                long start = System.nanoTime();
+                tenantRepository.save(tenantId);
+                results.put(tenantId, TenantProvisioningResult.created("registry", (System.nanoTime() - start) / 1_000_000));
+            }
+        } else if (!isCloneSupported()) {
+            for (String tenantId : accepted) {
+                tenantRepository.save(tenantId);
+                TenantMigrationResult migration = tenantMigrationService.migrate(tenantId);
+                results.put(tenantId, migration.isFailed()
+                        ? TenantProvisioningResult.failed(migration.error())
+                        : TenantProvisioningResult.created("migration", migration.durationMillis()));
+            }
+        } else if (!accepted.isEmpty()) {
+            try {
+                prepareTemplate();
+            } catch (Exception e) {
+                accepted.forEach(t -> results.put(t, TenantProvisioningResult.failed(
+                        "Template schema " + templateSchema + " could not be migrated: " + e.getMessage())));
+                return results;
+            }
+            for (int from = 0; from < accepted.size(); from += batchSize) {
+                results.putAll(cloneBatch(accepted.subList(from, Math.min(accepted.size(), from + batchSize))));
+            }
+            replenisher.execute(this::replenish);
+        }
+
+        // Requests for the new tenants are accepted right away, not only after the next registry reload
+        results.forEach((tenantId, result) -> {
+            if (!result.isFailed()) {
+                knownTenants.register(tenantId);
+            }
+        });
+        long created = results.values().stream().filter(r -> !r.isFailed()).count();
+        logger.info("Provisioned {} of {} tenants", created, tenantIds.size());
+        return results;
+    }
+
+    public int getSpareSchemas() {
+        return spares.size();
+    }
+
+    private Map<String, TenantProvisioningResult> cloneBatch(List<String> batch) {
+        Map<String, String> sources = new LinkedHashMap<>();
+        List<String> usedSpares = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                for (String tenantId : batch) {
+                    String spare = spares.poll();
+                    if (spare != null) {
+                        usedSpares.add(spare);
+                        jdbcTemplate.execute("ALTER SCHEMA " + spare + " RENAME TO " + tenantId);
+                        sources.put(tenantId, "spare");
+                    } else {
+                        cloneTemplate(tenantId);
+                        sources.put(tenantId, "template");
+                    }
+                    tenantRepository.save(tenantId, tenantMigrationService.getChangelogFingerprint());
+                }
+            });
+        } catch (RuntimeException e) {
+            // The renames were rolled back with the batch, so the spares are still there
+            spares.addAll(usedSpares);
+            if (batch.size() == 1) {
+                logger.warn("Provisioning of tenant {} failed", batch.get(0), e);
+                return Map.of(batch.get(0), TenantProvisioningResult.failed(e.getMessage()));
+            }
+            logger.warn("Provisioning batch of {} tenants failed, retrying one by one: {}", batch.size(), e.getMessage());
+            Map<String, TenantProvisioningResult> results = new LinkedHashMap<>();
+            for (String tenantId : batch) {
+                results.putAll(cloneBatch(List.of(tenantId)));
+            }
+            return results;
+        }
+
+        long perTenant = (System.nanoTime() - start) / 1_000_000 / batch.size();
+        Map<String, TenantProvisioningResult> results = new LinkedHashMap<>();
+        sources.forEach((tenantId, source) -> {
+            tenantMigrationService.markUpToDate(tenantId);
+            results.put(tenantId, TenantProvisioningResult.created(source, perTenant));
+        });
+        return results;
+    }
+
+    private void cloneTemplate(String schema) {
+        jdbcTemplate.execute("CREATE SCHEMA " + schema);
+        templateSequences.forEach((sequence, increment) -> jdbcTemplate.execute(
+                "CREATE SEQUENCE " + schema + "." + sequence + " INCREMENT BY " + increment));
+        for (String table : templateTables) {
+            jdbcTemplate.execute("CREATE TABLE " + schema + "." + table
+                    + " (LIKE " + templateSchema + "." + table + " INCLUDING ALL)");
+        }
+        // LIKE copies defaults verbatim, so they would still draw from the template's sequences
+        for (SequenceDefault column : templateSequenceDefaults) {
+            jdbcTemplate.execute("ALTER TABLE " + schema + "." + column.table() + " ALTER COLUMN " + column.column()
+                    + " SET DEFAULT nextval('" + schema + "." + column.sequence() + "')");
+            jdbcTemplate.execute("ALTER SEQUENCE " + schema + "." + column.sequence()
+                    + " OWNED BY " + schema + "." + column.table() + "." + column.column());
+        }
+        // Carry over the Liquibase history so later changelog versions apply on top of the clone
+        for (String table : LIQUIBASE_TABLES) {
+            if (templateTables.contains(table)) {
+                jdbcTemplate.execute("INSERT INTO " + schema + "." + table + " SELECT * FROM " + templateSchema + "." + table);
+            }
+        }
+    }
+
+    private synchronized void prepareTemplate() throws Exception {
+        if (templateTables != null) {
+            return;
+        }
+        long start = System.nanoTime();
+        tenantMigrationService.migrateSchema(SchemaMultiTenantConnectionProvider.validateTenantIdentifier(templateSchema));
+        // Spares left by an earlier process may predate the current changelog
+        for (String spare : jdbcTemplate.queryForList("SELECT schema_name FROM information_schema.schemata "
+                + "WHERE schema_name LIKE ?", String.class, SPARE_PREFIX.replace("_", "\\_") + "%")) {
+            jdbcTemplate.execute("DROP SCHEMA " + spare + " CASCADE");
+        }
+        Map<String, Long> sequences = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT sequence_name, increment FROM information_schema.sequences WHERE sequence_schema = ?",
+                rs -> {
+                    sequences.put(rs.getString(1), Long.parseLong(rs.getString(2)));
+                }, templateSchema);
+        templateSequences = sequences;
+        // pg_get_serial_sequence is null for a nextval() default on a sequence the column does not own
+        templateSequenceDefaults = jdbcTemplate.query("SELECT table_name, column_name, serial_sequence FROM ("
+                        + "SELECT table_name, column_name, pg_get_serial_sequence("
+                        + "quote_ident(table_schema) || '.' || quote_ident(table_name), column_name) AS serial_sequence "
+                        + "FROM information_schema.columns WHERE table_schema = ? AND column_default LIKE 'nextval(%'"
+                        + ") serial WHERE serial_sequence IS NOT NULL",
+                (rs, rowNum) -> new SequenceDefault(rs.getString(1), rs.getString(2),
+                        rs.getString(3).substring(rs.getString(3).indexOf('.') + 1)),
+                templateSchema).stream()
+                .filter(column -> sequences.containsKey(column.sequence()))
+                .toList();
+        templateTables = jdbcTemplate.queryForList("SELECT table_name FROM information_schema.tables "
+                + "WHERE table_schema = ? AND table_type = 'BASE TABLE'", String.class, templateSchema);
+        logger.info("Template schema {} ready with {} tables in {} ms", templateSchema, templateTables.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void replenish() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        while (templateTables != null && spares.size() < spareSchemas) {
+            String spare = SPARE_PREFIX + UUID.randomUUID().toString().replace("-", "");
+            try {
+                transaction.executeWithoutResult(status -> cloneTemplate(spare));
+            } catch (RuntimeException e) {
+                logger.warn("Could not create spare schema {}", spare, e);
+                return;
+            }
+            spares.add(spare);
+        }
+    }
+
+    private String checkTenantId(String tenantId, Set<String> existing) {
+        try {
+            SchemaMultiTenantConnectionProvider.validateTenantIdentifier(tenantId);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        if (tenantId.equals(templateSchema) || tenantId.startsWith(SPARE_PREFIX)
+                || tenantId.equals("public") || tenantId.startsWith("pg_")) {
+            return "Reserved tenant identifier: " + tenantId;
+        }
+        if (existing.contains(tenantId)) {
+            return "Tenant already exists: " + tenantId;
+        }
+        return null;
+    }
+
+    private boolean isCloneSupported() {
+        if (cloneSupported == null) {
+            cloneSupported = "schema".equalsIgnoreCase(isolation) && "PostgreSQL".equals(jdbcTemplate.execute(
+                    (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName()));
+        }
+        return cloneSupported;
+    }
+
+    private record SequenceDefault(String table, String column, String sequence) {
+    }
+}
@@ -1,21 +1,133 @@
 package com.example.multitenant1.service;
 
+import com.example.multitenant1.config.TenantContext;
+import com.example.multitenant1.config.TenantMetrics;
+import com.example.multitenant1.model.User;
 import com.example.multitenant1.repository.UserRepository;
+import com.example.multitenant1.security.UserPrincipal;
+import com.example.multitenant1.security.VerifiedClaims;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
+    private static final Logger logger = LoggerFactory.getLogger(UserDetailsServiceImpl.class);
 
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private TenantMetrics tenantMetrics;
+
+    // Options: database (cached repository lookup), claims (principal built from the verified JWT)
+    @Value("${security.principal-source:database}")
+    private String principalSource;
+
+    private TenantMetrics.TenantMeters<Timer> claimsLoads;
+    private TenantMetrics.TenantMeters<Timer> cacheLoads;
+    private TenantMetrics.TenantMeters<Timer> databaseLoads;
+    private TenantMetrics.TenantMeters<Timer> notFoundLoads;
+
+    @PostConstruct
+    public void init() {
+        claimsLoads = userLoadTimers("claims", "found");
+        cacheLoads = userLoadTimers("cache", "found");
+        databaseLoads = userLoadTimers("database", "found");
+        notFoundLoads = userLoadTimers("database", "not_found");
+    }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        long start = System.nanoTime();
+        try {
+            User user = findUser(username);
+            recordLoad(databaseLoads, TenantContext.getCurrentTenant(), start);
+            return user;
+        } catch (UsernameNotFoundException e) {
+            recordLoad(notFoundLoads, TenantContext.getCurrentTenant(), start);
+            throw e;
+        }
+    }
+
+    /**
+     * Resolves the principal for an already verified token. Depending on
+     * {@code security.principal-source} this is either served from the tenant-scoped
+     * principal cache or built from the claims without any database access.
+     *
+     * @param claims Verified claims of the request's JWT
+     * @return The principal to place in the security context
+     */
+    public UserDetails loadUserByClaims(VerifiedClaims claims) throws UsernameNotFoundException {
+        long start = System.nanoTime();
+        if ("claims".equalsIgnoreCase(principalSource)) {
+            UserPrincipal principal = UserPrincipal.of(claims);
+            recordLoad(claimsLoads, claims.getTenantId(), start);
+            return principal;
+        }
+        AtomicBoolean loaded = new AtomicBoolean();
+        try {
+            UserPrincipal principal = principalCache.get(claims.getTenantId(), claims.getSubject(), username -> {
+                loaded.set(true);
+                return UserPrincipal.of(findUser(username));
+            });
+            recordLoad(loaded.get() ? databaseLoads : cacheLoads, claims.getTenantId(), start);
+            return principal;
+        } catch (UsernameNotFoundException e) {
+            recordLoad(notFoundLoads, claims.getTenantId(), start);
+            throw e;
+        }
+    }
+
+    /**
+     * Stores a password re-hashed at the current encoder settings after a successful login.
+     * Best effort: if the update fails, the login still succeeds with the old hash in place.
+     *
+     * @param user        The principal just authenticated by its old hash
+     * @param newPassword The password encoded at the current cost
+     * @return The principal to place in the security context
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        if (!(user instanceof User existing)) {
+            return user;
+        }
+        try {
+            existing.setPassword(newPassword);
+            User saved = userRepository.save(existing);
+            AfterCommit.run(() -> principalCache.invalidate(saved.getTenantId(), saved.getUsername()));
+            logger.info("Re-hashed password of user {} at the current cost", saved.getUsername());
+            return saved;
+        } catch (RuntimeException e) {
+            logger.warn("Could not store re-hashed password of user {}: {}", user.getUsername(), e.getMessage());
+            return user;
+        }
+    }
+
+    private User findUser(String username) {
         return userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
     }
-}
\ No newline at end of file
+
+    private TenantMetrics.TenantMeters<Timer> userLoadTimers(String source, String outcome) {
+        return tenantMetrics.timers("user.load", "source", source, "outcome", outcome);
+    }
+
+    private static void recordLoad(TenantMetrics.TenantMeters<Timer> timers, String tenantId, long startNanos) {
+        timers.of(tenantId).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
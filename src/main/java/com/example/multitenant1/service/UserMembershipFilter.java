@@ -0,0 +1,230 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.config.TenantContext;
+import com.example.multitenant1.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/* UserMembershipFilter keeps a Bloom filter of the taken usernames and emails of each tenant, so a
+ * registration whose username and email are both definitely free needs no uniqueness query. A filter
+ * is built from the users table in the background on a tenant's first registration, which asks the
+ * database like every registration until the filter is ready, and is kept up to date by the
+ * registrations of this process. Users created elsewhere (another instance, plain SQL) are unknown to
+ * it, which is why the unique indexes remain the authority and a filter is only ever used to skip a
+ * query, never to reject. Filters are sized with headroom at build time and rebuilt once outgrown.
+ */
+@Component
+public class UserMembershipFilter {
+    private static final Logger logger = LoggerFactory.getLogger(UserMembershipFilter.class);
+
+    private static final String DEFAULT_TENANT = "public";
+
+    @Value("${security.membership-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${security.membership-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    // Tenants with a filter in memory; the least recently used ones are dropped beyond this
+    @Value("${security.membership-filter.max-tenants:1000}")
+    private long maxTenants;
+
+    @Value("${security.membership-filter.min-capacity:1024}")
+    private int minCapacity;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Cache<String, TenantFilter> filters;
+    // Builds scan a whole users table, so they run one at a time and off the request threads
+    private ExecutorService builder;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder definitelyFree = new LongAdder();
+    private final LongAdder databaseChecks = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder builds = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        filters = Caffeine.newBuilder().maximumSize(maxTenants).build();
+        builder = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "membership-filter-build");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+
+    /**
+     * Whether the username may be taken in the tenant. False means it is definitely free as far as
+     * this process knows; true means the database has to be asked.
+     */
+    public boolean mightContainUsername(String tenantId, String username) {
+        TenantFilter filter = filter(tenantId);
+        return filter == null || record(filter.usernames.mightContain(username));
+    }
+
+    /**
+     * Whether the email may be taken in the tenant; see mightContainUsername.
+     */
+    public boolean mightContainEmail(String tenantId, String email) {
+        TenantFilter filter = filter(tenantId);
+        return filter == null || record(filter.emails.mightContain(email));
+    }
+
+    /**
+     * Records a newly stored user, so its username and email are no longer reported as free.
+     */
+    public void add(String tenantId, String username, String email) {
+        if (!enabled) {
+            return;
+        }
+        String tenant = keyOf(tenantId);
+        TenantFilter filter = filters.getIfPresent(tenant);
+        if (filter == null) {
+            return;
+        }
+        // Also during a build: the scan may already be past this row
+        BloomFilter usernames = filter.usernames;
+        BloomFilter emails = filter.emails;
+        if (usernames != null) {
+            usernames.add(username);
+            emails.add(email);
+            if (usernames.isSaturated()) {
+                filters.invalidate(tenant);
+            }
+        }
+    }
+
+    /**
+     * Counts the outcome of a database check made because the filter could not rule a value out.
+     *
+     * @param taken Whether the database found the username or email
+     */
+    public void recordDatabaseCheck(boolean taken) {
+        databaseChecks.increment();
+        if (!taken) {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * Drops the tenant's filter, e.g. after its users were moved; the next registration rebuilds it.
+     */
+    public void invalidateTenant(String tenantId) {
+        filters.invalidate(keyOf(tenantId));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("tenants", filters.estimatedSize());
+        stats.put("bytes", filters.asMap().values().stream()
+                .filter(filter -> filter.ready)
+                .mapToLong(filter -> filter.usernames.sizeInBytes() + filter.emails.sizeInBytes())
+                .sum());
+        stats.put("builds", builds.sum());
+        stats.put("lookups", lookups.sum());
+        stats.put("definitelyFree", definitelyFree.sum());
+        stats.put("databaseChecks", databaseChecks.sum());
+        stats.put("falsePositives", falsePositives.sum());
+        return stats;
+    }
+
+    private boolean record(boolean mightContain) {
+        lookups.increment();
+        if (!mightContain) {
+            definitelyFree.increment();
+        }
+        return mightContain;
+    }
+
+    // Null while disabled or until the filter is built; callers then ask the database
+    private TenantFilter filter(String tenantId) {
+        if (!enabled) {
+            return null;
+        }
+        String tenant = keyOf(tenantId);
+        TenantFilter filter = filters.get(tenant, t -> new TenantFilter());
+        if (filter.ready) {
+            return filter;
+        }
+        if (filter.started.compareAndSet(false, true)) {
+            try {
+                // Scanned in the tenant's context, like the registration that asked for it
+                builder.execute(new TenantContext.Snapshot(tenant, null).wrap(() -> build(tenant, filter)));
+            } catch (RejectedExecutionException e) {
+                filters.invalidate(tenant);
+            }
+        }
+        return null;
+    }
+
+    private void build(String tenant, TenantFilter filter) {
+        try {
+            filter.build(tenant);
+        } catch (RuntimeException e) {
+            logger.warn("Could not build membership filter for tenant {}: {}", tenant, e.getMessage());
+            // The next registration starts another attempt
+            filters.asMap().remove(tenant, filter);
+        }
+    }
+
+    private static String keyOf(String tenantId) {
+        return tenantId != null ? tenantId : DEFAULT_TENANT;
+    }
+
+    private final class TenantFilter {
+        private volatile BloomFilter usernames;
+        private volatile BloomFilter emails;
+        private volatile boolean ready;
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private void build(String tenant) {
+            long start = System.nanoTime();
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            transaction.executeWithoutResult(status -> {
+                // Room to double before the filter has to be rebuilt
+                int capacity = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(minCapacity, userRepository.count() * 2));
+                // emails first: add() takes a non-null usernames filter to mean both exist
+                emails = new BloomFilter(capacity, falsePositiveRate);
+                usernames = new BloomFilter(capacity, falsePositiveRate);
+                try (var rows = userRepository.streamUsernamesAndEmails()) {
+                    rows.forEach(row -> {
+                        usernames.add((String) row[0]);
+                        emails.add((String) row[1]);
+                    });
+                }
+            });
+            ready = true;
+            builds.increment();
+            logger.info("Built membership filter for tenant {} ({} KB) in {} ms", tenant,
+                    (usernames.sizeInBytes() + emails.sizeInBytes()) / 1024, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
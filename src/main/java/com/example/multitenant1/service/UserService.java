@@ -3,46 +3,185 @@ package com.example.multitenant1.service;
 import com.example.multitenant1.config.TenantContext;
 import com.example.multitenant1.model.User;
 import com.example.multitenant1.repository.UserRepository;
+import com.example.multitenant1.security.BoundedPasswordEncoder;
+import com.example.multitenant1.security.PasswordHashingRejectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 @Service
 public class UserService {
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
 
     @Autowired
     private UserRepository userRepository;
     
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private BoundedPasswordEncoder passwordEncoder;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private UserMembershipFilter membershipFilter;
+
+    @Autowired
+    private UserDetailsServiceImpl userDetailsService;
+
+    // Database work after a hash runs here rather than on the few password-hashing threads
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private Executor taskExecutor;
     
     public User registerUser(User user) {
-        // Set the tenant ID from context if not already set
+        checkConflicts(user);
+        return store(user, passwordEncoder.encode(user.getPassword()));
+    }
+
+    /**
+     * Registers a user without holding the calling thread while the password is hashed. The
+     * conflict checks run right away; the user is stored on the task executor once the hash is done.
+     *
+     * @param user The user to register, with the raw password
+     * @return Future completed with the stored user, or exceptionally if it could not be stored
+     * @throws RuntimeException                 if the username or email is taken already
+     * @throws PasswordHashingRejectedException if the tenant's share of password hashing is used up
+     */
+    public CompletableFuture<User> registerUserAsync(User user) {
+        String tenantId = checkConflicts(user);
+        return passwordEncoder.encodeAsync(tenantId, user.getPassword())
+                .thenApplyAsync(hash -> inTenant(tenantId, () -> store(user, hash)), taskExecutor);
+    }
+
+    /**
+     * Checks a login's password without holding the calling thread while it is hashed. An unknown
+     * username costs one hash as well, so it takes as long to turn away as a wrong password.
+     *
+     * @param username    The username of the current tenant
+     * @param rawPassword The password to check
+     * @return Future completed with the user, or with a BadCredentialsException
+     * @throws PasswordHashingRejectedException if the tenant's share of password hashing is used up
+     */
+    public CompletableFuture<User> authenticateAsync(String username, String rawPassword) {
+        if (username == null || rawPassword == null) {
+            return CompletableFuture.failedFuture(new BadCredentialsException("Bad credentials"));
+        }
+        String tenantId = TenantContext.getCurrentTenant();
+        UserDetails found;
+        try {
+            found = userDetailsService.loadUserByUsername(username);
+        } catch (UsernameNotFoundException e) {
+            return passwordEncoder.encodeAsync(tenantId, rawPassword).thenApply(hash -> {
+                throw new BadCredentialsException("Bad credentials");
+            });
+        }
+        User user = (User) found;
+        return passwordEncoder.matchesAsync(tenantId, rawPassword, user.getPassword()).thenApply(matches -> {
+            if (!matches) {
+                throw new BadCredentialsException("Bad credentials");
+            }
+            upgradePassword(tenantId, user, rawPassword);
+            return user;
+        });
+    }
+
+    // Sets the tenant from the context if not already set and rules out taken usernames and emails
+    private String checkConflicts(User user) {
         if (user.getTenantId() == null) {
             user.setTenantId(TenantContext.getCurrentTenant());
         }
         
-        // Check if username already exists
-        if (userRepository.existsByUsername(user.getUsername())) {
-            throw new RuntimeException("Username is already taken");
-        }
-        
-        // Check if email already exists
-        if (userRepository.existsByEmail(user.getEmail())) {
-            throw new RuntimeException("Email is already in use");
+        // Ask the database only if the tenant's membership filter cannot rule both values out;
+        // checking before hashing avoids spending BCrypt time on registrations that will fail
+        String tenantId = user.getTenantId();
+        boolean usernameMaybeTaken = membershipFilter.mightContainUsername(tenantId, user.getUsername());
+        boolean emailMaybeTaken = membershipFilter.mightContainEmail(tenantId, user.getEmail());
+        if (usernameMaybeTaken || emailMaybeTaken) {
+            UserRepository.Conflicts conflicts = userRepository.findConflicts(user.getUsername(), user.getEmail());
+            membershipFilter.recordDatabaseCheck(conflicts.getUsernameMatches() > 0 || conflicts.getEmailMatches() > 0);
+            if (conflicts.getUsernameMatches() > 0) {
+                throw new RuntimeException("Username is already taken");
+            }
+            if (conflicts.getEmailMatches() > 0) {
+                throw new RuntimeException("Email is already in use");
+            }
         }
-        
-        // Encode password
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
+        return tenantId;
+    }
+
+    private User store(User user, String encodedPassword) {
+        String tenantId = user.getTenantId();
+        user.setPassword(encodedPassword);
         
         // Set default role if not specified
         if (user.getRole() == null) {
             user.setRole("USER");
         }
         
-        return userRepository.save(user);
+        // The unique indexes settle races with concurrent registrations and users the filter has not seen
+        User saved;
+        try {
+            saved = save(user);
+        } catch (DataIntegrityViolationException e) {
+            throw new RuntimeException(conflictMessage(e));
+        }
+        AfterCommit.run(() -> membershipFilter.add(tenantId, saved.getUsername(), saved.getEmail()));
+        return saved;
+    }
+
+    // Re-hashes an outdated hash at the current cost, only while hashing threads are idle; best effort
+    private void upgradePassword(String tenantId, User user, String rawPassword) {
+        if (!passwordEncoder.upgradeEncoding(user.getPassword())) {
+            return;
+        }
+        try {
+            passwordEncoder.encodeAsync(tenantId, rawPassword).thenAcceptAsync(
+                    hash -> inTenant(tenantId, () -> userDetailsService.updatePassword(user, hash)), taskExecutor);
+        } catch (PasswordHashingRejectedException e) {
+            logger.debug("Skipped re-hashing the password of user {}: {}", user.getUsername(), e.getMessage());
+        }
+    }
+
+    // Task executor threads do not carry the request's tenant, which selects the schema to write to
+    private static <T> T inTenant(String tenantId, Supplier<T> work) {
+        TenantContext.setCurrentTenant(tenantId);
+        try {
+            return work.get();
+        } finally {
+            TenantContext.clear();
+        }
+    }
+
+    /**
+     * Maps a unique index violation on users to the message of the matching pre-insert check.
+     */
+    static String conflictMessage(DataIntegrityViolationException e) {
+        String message = String.valueOf(e.getMostSpecificCause().getMessage()).toLowerCase();
+        if (message.contains("email_uk")) {
+            return "Email is already in use";
+        }
+        if (message.contains("username_uk")) {
+            return "Username is already taken";
+        }
+        return "Username or email is already taken";
+    }
+
+    // All user writes go through here so cached principals never outlive the row they were loaded from
+    private User save(User user) {
+        User saved = userRepository.save(user);
+        AfterCommit.run(() -> principalCache.invalidate(saved.getTenantId(), saved.getUsername()));
+        return saved;
     }
     
     public Optional<User> findByUsername(String username) {
@@ -0,0 +1,82 @@
+package com.example.multitenant1.benchmark;
+
+import com.example.multitenant1.config.TenantMetrics;
+import com.example.multitenant1.config.TenantRateLimiter;
+import com.example.multitenant1.model.User;
+import com.example.multitenant1.security.JwtTokenProvider;
+import com.example.multitenant1.service.KnownTenants;
+import com.example.multitenant1.service.TenantMigrationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+/* Shared fixtures so every benchmark measures the production classes with the same configuration. */
+final class BenchmarkFixtures {
+
+    static final String SECRET = "benchmarkSecretKey12345678901234567890";
+    static final long EXPIRATION_MILLIS = 3_600_000;
+
+    private BenchmarkFixtures() {
+    }
+
+    static JwtTokenProvider tokenProvider() {
+        JwtTokenProvider provider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(provider, "secret", SECRET);
+        ReflectionTestUtils.setField(provider, "jwtExpiration", EXPIRATION_MILLIS);
+        ReflectionTestUtils.setField(provider, "claimsCacheMaxSize", 10_000L);
+        provider.init();
+        return provider;
+    }
+
+    static TenantMetrics tenantMetrics() {
+        TenantMetrics metrics = new TenantMetrics();
+        ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(metrics, "maxTaggedTenants", 20);
+        ReflectionTestUtils.setField(metrics, "maxTrackedTenants", 10_000L);
+        ReflectionTestUtils.setField(metrics, "refreshInterval", Duration.ofMinutes(1));
+        metrics.init();
+        return metrics;
+    }
+
+    // Limits high enough that the benchmark measures the admission check, never a rejection
+    static TenantRateLimiter rateLimiter() {
+        TenantRateLimiter limiter = new TenantRateLimiter();
+        ReflectionTestUtils.setField(limiter, "environment", new MockEnvironment());
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        ReflectionTestUtils.setField(limiter, "defaultRate", 1e12);
+        ReflectionTestUtils.setField(limiter, "defaultBurst", Integer.MAX_VALUE);
+        ReflectionTestUtils.setField(limiter, "maxTenants", 10_000L);
+        ReflectionTestUtils.setField(limiter, "activeWindow", Duration.ofSeconds(10));
+        limiter.init();
+        return limiter;
+    }
+
+    // Validation on, with the benchmark tenant registered; the registry is never loaded
+    static KnownTenants knownTenants() {
+        KnownTenants knownTenants = new KnownTenants();
+        ReflectionTestUtils.setField(knownTenants, "enabled", true);
+        knownTenants.register("tenant1");
+        return knownTenants;
+    }
+
+    // Migrations on, with the benchmark tenant already up to date
+    static TenantMigrationService tenantMigrationService() {
+        TenantMigrationService migrations = new TenantMigrationService();
+        ReflectionTestUtils.setField(migrations, "enabled", true);
+        migrations.markUpToDate("tenant1");
+        return migrations;
+    }
+
+    static User user() {
+        User user = new User();
+        user.setId(42L);
+        user.setUsername("alice");
+        user.setEmail("alice@tenant1.example.com");
+        user.setTenantId("tenant1");
+        user.setRole("USER");
+        user.setPassword("$2a$10$abcdefghijklmnopqrstuv");
+        return user;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.multitenant1.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/* Runs the JMH benchmarks, writes the raw JMH JSON result and compares every score with the
+ * committed baseline. All benchmarks report average time, so a score more than bench.threshold
+ * above its baseline counts as a regression and fails the run with exit code 1.
+ *
+ * System properties:
+ *   bench.include         regex of benchmarks to run (default: all)
+ *   bench.result          JMH JSON output file
+ *   bench.baseline        baseline file to compare against
+ *   bench.threshold       allowed slowdown as a fraction (default 0.15)
+ *   bench.updateBaseline  write the current scores as the new baseline instead of comparing
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String include = System.getProperty("bench.include", ".*");
+        Path result = Path.of(System.getProperty("bench.result", "target/jmh-result.json"));
+        Path baseline = Path.of(System.getProperty("bench.baseline", "src/test/resources/benchmark/baseline.json"));
+        double threshold = Double.parseDouble(System.getProperty("bench.threshold", "0.15"));
+        boolean updateBaseline = Boolean.getBoolean("bench.updateBaseline");
+
+        Files.createDirectories(result.toAbsolutePath().getParent());
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.toString())
+                .build();
+        Map<String, Score> scores = scoresOf(new Runner(options).run());
+
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        if (updateBaseline || !Files.exists(baseline)) {
+            Map<String, Score> merged = Files.exists(baseline) ? readBaseline(mapper, baseline) : new TreeMap<>();
+            merged.putAll(scores);
+            mapper.writeValue(baseline.toFile(), merged);
+            System.out.println("Baseline written to " + baseline);
+            return;
+        }
+
+        List<String> regressions = compare(scores, readBaseline(mapper, baseline), threshold);
+        if (!regressions.isEmpty()) {
+            System.out.println("Regressions above " + Math.round(threshold * 100) + "%:");
+            regressions.forEach(r -> System.out.println("  " + r));
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Score> scoresOf(Iterable<RunResult> results) {
+        Map<String, Score> scores = new TreeMap<>();
+        for (RunResult runResult : results) {
+            var params = runResult.getParams();
+            StringBuilder key = new StringBuilder(params.getBenchmark().replaceFirst("^.*\\.benchmark\\.", ""));
+            for (String param : params.getParamsKeys()) {
+                key.append(':').append(param).append('=').append(params.getParam(param));
+            }
+            var primary = runResult.getPrimaryResult();
+            scores.put(key.toString(), new Score(primary.getScore(), primary.getScoreUnit()));
+        }
+        return scores;
+    }
+
+    private static List<String> compare(Map<String, Score> scores, Map<String, Score> baseline, double threshold) {
+        List<String> regressions = new ArrayList<>();
+        System.out.printf("%-70s %14s %14s %8s%n", "Benchmark", "Baseline", "Current", "Change");
+        scores.forEach((name, current) -> {
+            Score base = baseline.get(name);
+            if (base == null || !base.unit().equals(current.unit())) {
+                System.out.printf("%-70s %14s %10.3f %s %8s%n", name, "-", current.score(), current.unit(), "new");
+                return;
+            }
+            double change = (current.score() - base.score()) / base.score();
+            System.out.printf("%-70s %10.3f %s %10.3f %s %+7.1f%%%n",
+                    name, base.score(), base.unit(), current.score(), current.unit(), change * 100);
+            if (change > threshold) {
+                regressions.add(String.format("%s: %.3f -> %.3f %s (%+.1f%%)",
+                        name, base.score(), current.score(), current.unit(), change * 100));
+            }
+        });
+        return regressions;
+    }
+
+    private static Map<String, Score> readBaseline(ObjectMapper mapper, Path baseline) throws Exception {
+        Map<String, Score> scores = new TreeMap<>();
+        JsonNode root = mapper.readTree(new File(baseline.toString()));
+        root.fields().forEachRemaining(entry -> scores.put(entry.getKey(),
+                new Score(entry.getValue().get("score").asDouble(), entry.getValue().get("unit").asText())));
+        return scores;
+    }
+
+    record Score(double score, String unit) {
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.multitenant1.benchmark;
+
+import com.example.multitenant1.security.JwtTokenProvider;
+import com.example.multitenant1.security.VerifiedClaims;
+import com.example.multitenant1.model.User;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtBenchmark {
+
+    private JwtTokenProvider tokenProvider;
+    private User user;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        tokenProvider = BenchmarkFixtures.tokenProvider();
+        user = BenchmarkFixtures.user();
+        token = tokenProvider.generateToken(user);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return tokenProvider.generateToken(user);
+    }
+
+    // Full base64 + JSON + HMAC verification, never cached
+    @Benchmark
+    public Claims extractAllClaims() {
+        return tokenProvider.extractClaim(token, Function.identity());
+    }
+
+    @Benchmark
+    public Boolean validateToken() {
+        return tokenProvider.validateToken(token, user);
+    }
+
+    // What JwtAuthenticationFilter did per request before the verified-claims cache:
+    // validateToken (two parses), extractUsername and extractTenantId
+    @Benchmark
+    public void filterPathUncached(Blackhole blackhole) {
+        blackhole.consume(tokenProvider.extractClaim(token, Claims::getSubject));
+        blackhole.consume(tokenProvider.extractClaim(token, Claims::getExpiration));
+        blackhole.consume(tokenProvider.extractClaim(token, Claims::getSubject));
+        blackhole.consume(tokenProvider.extractClaim(token, claims -> claims.get("tenant_id", String.class)));
+    }
+
+    // What JwtAuthenticationFilter does now for a hot token
+    @Benchmark
+    public VerifiedClaims filterPathCached() {
+        return tokenProvider.verifyToken(token);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.multitenant1.benchmark;
+
+import com.example.multitenant1.config.TenantContext;
+import com.example.multitenant1.config.TenantInterceptor;
+import com.example.multitenant1.security.JwtTokenProvider;
+import com.example.multitenant1.security.VerifiedClaims;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TenantInterceptorBenchmark {
+
+    @Param({"header", "subdomain", "token"})
+    public String mode;
+
+    private TenantInterceptor interceptor;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setUp() {
+        JwtTokenProvider tokenProvider = BenchmarkFixtures.tokenProvider();
+        interceptor = new TenantInterceptor();
+        ReflectionTestUtils.setField(interceptor, "tenantIdentifierMode", mode);
+        ReflectionTestUtils.setField(interceptor, "tenantHeader", "X-Tenant-ID");
+        ReflectionTestUtils.setField(interceptor, "knownTenants", BenchmarkFixtures.knownTenants());
+        ReflectionTestUtils.setField(interceptor, "tenantMetrics", BenchmarkFixtures.tenantMetrics());
+        ReflectionTestUtils.setField(interceptor, "rateLimiter", BenchmarkFixtures.rateLimiter());
+        ReflectionTestUtils.setField(interceptor, "tenantMigrationService", BenchmarkFixtures.tenantMigrationService());
+        interceptor.init();
+
+        request = new MockHttpServletRequest("GET", "/profile/me");
+        request.setServerName("tenant1.example.com");
+        request.addHeader("X-Tenant-ID", "tenant1");
+        // Token mode reads the claims JwtAuthenticationFilter left on the request
+        String token = tokenProvider.generateToken(BenchmarkFixtures.user());
+        request.addHeader("Authorization", "Bearer " + token);
+        request.setAttribute(VerifiedClaims.REQUEST_ATTRIBUTE, tokenProvider.verifyToken(token));
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public String preHandle() throws Exception {
+        interceptor.preHandle(request, response, null);
+        String tenant = TenantContext.getCurrentTenant();
+        TenantContext.clear();
+        return tenant;
+    }
+}
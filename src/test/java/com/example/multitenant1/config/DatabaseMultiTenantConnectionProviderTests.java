@@ -0,0 +1,71 @@
+package com.example.multitenant1.config;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DatabaseMultiTenantConnectionProviderTests {
+
+    private final TenantDatabaseRegistry registry = new TenantDatabaseRegistry(
+            "jdbc:postgresql://localhost:5432/{tenant}", "tenant_user", "tenant_password",
+            "jdbc:postgresql://localhost:5432/main", "main_user", "main_password");
+
+    @Test
+    void defaultTenantIsServedByThePrimaryDataSource() throws Exception {
+        Connection connection = mock(Connection.class);
+        DataSource primary = mock(DataSource.class);
+        when(primary.getConnection()).thenReturn(connection);
+        DatabaseMultiTenantConnectionProvider provider =
+                new DatabaseMultiTenantConnectionProvider(primary, registry, 10, 2, Duration.ofMinutes(5));
+
+        assertThat(provider.getConnection("public")).isSameAs(connection);
+        // No pool was opened for a database named after the default tenant
+        assertThat(provider.getTenantDataSourceStats()).isEmpty();
+        provider.stop();
+    }
+
+    @Test
+    void defaultTenantMapsToThePrimaryDatabase() {
+        assertThat(registry.getJdbcUrl("public")).isEqualTo("jdbc:postgresql://localhost:5432/main");
+        assertThat(registry.getUsername("public")).isEqualTo("main_user");
+        assertThat(registry.getJdbcUrl("tenant1")).isEqualTo("jdbc:postgresql://localhost:5432/tenant1");
+        assertThat(registry.getPassword("tenant1")).isEqualTo("tenant_password");
+    }
+
+    @Test
+    void evictedPoolStaysOpenForItsBorrowedConnections() throws Exception {
+        TenantDatabaseRegistry h2 = new TenantDatabaseRegistry("jdbc:h2:mem:{tenant};DB_CLOSE_DELAY=-1", "sa", "",
+                "jdbc:h2:mem:main", "sa", "");
+        // Room for one pool, so every other tenant's checkout evicts the previous one
+        DatabaseMultiTenantConnectionProvider provider =
+                new DatabaseMultiTenantConnectionProvider(mock(DataSource.class), h2, 1, 2, Duration.ofMinutes(5));
+        try {
+            Connection held = provider.getConnection("tenant1");
+            for (int i = 0; i < 20; i++) {
+                provider.releaseConnection("tenant" + (i % 3 + 2), provider.getConnection("tenant" + (i % 3 + 2)));
+            }
+            assertThat(provider.getTenantDataSourceStats()).doesNotContainKey("tenant1");
+
+            // Past the first retirement re-check, the evicted pool still serves its connection
+            Thread.sleep(1500);
+            try (Statement statement = held.createStatement()) {
+                assertThat(statement.execute("SELECT 1")).isTrue();
+            }
+            provider.releaseConnection("tenant1", held);
+
+            // The tenant's next checkout gets a new pool
+            Connection again = provider.getConnection("tenant1");
+            assertThat(again.isValid(1)).isTrue();
+            provider.releaseConnection("tenant1", again);
+        } finally {
+            provider.stop();
+        }
+    }
+}
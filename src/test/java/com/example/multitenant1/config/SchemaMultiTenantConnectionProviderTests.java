@@ -0,0 +1,71 @@
+package com.example.multitenant1.config;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SchemaMultiTenantConnectionProviderTests {
+
+    private static Connection connection() throws Exception {
+        Connection connection = mock(Connection.class);
+        when(connection.unwrap(Connection.class)).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(true);
+        return connection;
+    }
+
+    @Test
+    void connectionReturnsToThePoolBoundToItsTenant() throws Exception {
+        Connection connection = connection();
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        SchemaMultiTenantConnectionProvider provider = new SchemaMultiTenantConnectionProvider(dataSource);
+
+        provider.releaseConnection("tenant1", provider.getConnection("tenant1"));
+        verify(connection).close();
+
+        // The next checkout for the same tenant finds the schema in place
+        provider.releaseConnection("tenant1", provider.getConnection("tenant1"));
+        verify(connection, times(1)).setSchema("tenant1");
+        assertThat(provider.getSchemaSwitchesAvoided()).isEqualTo(1);
+
+        // Another tenant, or Hibernate's default-schema connection, binds on checkout
+        provider.releaseConnection("tenant2", provider.getConnection("tenant2"));
+        provider.releaseConnection("public", provider.getAnyConnection());
+        InOrder order = inOrder(connection);
+        order.verify(connection).setSchema("tenant1");
+        order.verify(connection).setSchema("tenant2");
+        order.verify(connection).setSchema("public");
+        assertThat(provider.getSchemaSwitches()).isEqualTo(3);
+    }
+
+    @Test
+    void parkedConnectionKeepsItsSchemaUntilItLeavesTheAffinity() throws Exception {
+        Connection connection = connection();
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        TenantConnectionAffinity affinity = new TenantConnectionAffinity(1, 1, Duration.ofMinutes(1));
+        SchemaMultiTenantConnectionProvider provider =
+                new SchemaMultiTenantConnectionProvider(dataSource, null, affinity, null);
+
+        provider.releaseConnection("tenant1", provider.getConnection("tenant1"));
+        verify(connection, never()).close();
+        assertThat(provider.getConnection("tenant1")).isSameAs(connection);
+        verify(connection, times(1)).setSchema("tenant1");
+
+        provider.releaseConnection("tenant1", connection);
+        provider.stop();
+        verify(connection).close();
+        verify(connection, never()).setSchema("public");
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.multitenant1.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TenantConnectionQuotaTests {
+
+    private static TenantConnectionQuota quota(int poolSize, int overflowSize, int maxTenants) {
+        return new TenantConnectionQuota(poolSize, 4, 2, overflowSize, Duration.ofMillis(20), maxTenants);
+    }
+
+    @Test
+    void reservationsNeverOutnumberThePool() throws Exception {
+        // Four connections back reservations, enough for two tenants at two each
+        TenantConnectionQuota quota = quota(6, 2, 100);
+        assertThat(quota.getTenantsWithFullReservation()).isEqualTo(2);
+
+        for (String tenant : new String[]{"a", "a", "b", "b"}) {
+            quota.acquire(tenant);
+        }
+        assertThat(quota.getOverflowAvailable()).isEqualTo(2);
+
+        // A third tenant's reservation is not backed by the pool, so it starts on the overflow
+        quota.acquire("c");
+        TenantConnectionQuota.Lease last = quota.acquire("c");
+        assertThat(quota.getOverflowAvailable()).isZero();
+        assertThat(quota.snapshot().get("c").overflowAcquisitions()).isEqualTo(2);
+        assertThatThrownBy(() -> quota.acquire("d")).isInstanceOf(SQLTransientConnectionException.class);
+
+        last.release();
+        quota.acquire("d");
+    }
+
+    @Test
+    void overflowAsLargeAsThePoolIsRejected() {
+        assertThatThrownBy(() -> quota(6, 6, 100))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("overflow-size");
+    }
+
+    @Test
+    void idleTenantsAreDroppedBeyondMaxTenants() throws Exception {
+        TenantConnectionQuota quota = quota(6, 2, 4);
+        TenantConnectionQuota.Lease held = quota.acquire("busy");
+
+        for (int i = 0; i < 20; i++) {
+            quota.acquire("tenant" + i).release();
+        }
+
+        assertThat(quota.getTrackedTenants()).isLessThanOrEqualTo(4);
+        // A tenant holding a connection keeps its partition, and with it its cap
+        assertThat(quota.snapshot()).containsKey("busy");
+        assertThat(quota.snapshot().get("busy").inUse()).isEqualTo(1);
+        held.release();
+    }
+}
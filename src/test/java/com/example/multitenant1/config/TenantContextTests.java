@@ -0,0 +1,46 @@
+package com.example.multitenant1.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TenantContextTests {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        TenantContext.clear();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void wrappedTaskSeesSubmittingThreadsTenantAndUser() throws Exception {
+        TenantContext.setCurrentTenant("tenant1");
+        TenantContext.setCurrentUser("alice");
+
+        String seen = CompletableFuture.supplyAsync(
+                () -> TenantContext.getCurrentTenant() + "/" + TenantContext.getCurrentUser(),
+                TenantContext.wrap(executor)).get();
+
+        assertThat(seen).isEqualTo("tenant1/alice");
+    }
+
+    @Test
+    void workerContextIsRestoredAfterWrappedTask() throws Exception {
+        TenantContext.setCurrentTenant("tenant1");
+        TenantContext.Snapshot snapshot = TenantContext.capture();
+        TenantContext.clear();
+
+        String seen = executor.submit(snapshot.wrap(TenantContext::getCurrentTenant)).get();
+
+        assertThat(seen).isEqualTo("tenant1");
+
+        assertThat(executor.submit(TenantContext::getCurrentTenant).get()).isNull();
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.multitenant1.config;
+
+import com.example.multitenant1.security.VerifiedClaims;
+import com.example.multitenant1.service.KnownTenants;
+import com.example.multitenant1.service.TenantMigrationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TenantInterceptorTests {
+
+    private final TenantMetrics metrics = new TenantMetrics();
+
+    @AfterEach
+    void tearDown() {
+        metrics.shutdown();
+        TenantContext.clear();
+    }
+
+    private TenantInterceptor interceptor(String mode, String... knownTenants) {
+        ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(metrics, "maxTaggedTenants", 20);
+        ReflectionTestUtils.setField(metrics, "maxTrackedTenants", 100L);
+        ReflectionTestUtils.setField(metrics, "refreshInterval", Duration.ofMinutes(1));
+        metrics.init();
+
+        KnownTenants known = new KnownTenants();
+        ReflectionTestUtils.setField(known, "enabled", true);
+        for (String tenant : knownTenants) {
+            known.register(tenant);
+        }
+        TenantRateLimiter limiter = new TenantRateLimiter();
+        ReflectionTestUtils.setField(limiter, "enabled", false);
+
+        TenantInterceptor interceptor = new TenantInterceptor();
+        ReflectionTestUtils.setField(interceptor, "tenantIdentifierMode", mode);
+        ReflectionTestUtils.setField(interceptor, "tenantHeader", "X-Tenant-ID");
+        ReflectionTestUtils.setField(interceptor, "knownTenants", known);
+        ReflectionTestUtils.setField(interceptor, "tenantMetrics", metrics);
+        ReflectionTestUtils.setField(interceptor, "rateLimiter", limiter);
+        ReflectionTestUtils.setField(interceptor, "tenantMigrationService", new TenantMigrationService());
+        interceptor.init();
+        return interceptor;
+    }
+
+    @Test
+    void chainUsesFirstResolverWithAnAnswer() throws Exception {
+        TenantInterceptor interceptor = interceptor("header, subdomain, token", "tenant1", "tenant2");
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/profile/me");
+        request.setServerName("tenant2.example.com");
+        assertThat(interceptor.preHandle(request, new MockHttpServletResponse(), null)).isTrue();
+        assertThat(TenantContext.getCurrentTenant()).isEqualTo("tenant2");
+
+        // IP literals have no subdomain, so the token's tenant is used
+        request.setServerName("127.0.0.1");
+        request.setAttribute(VerifiedClaims.REQUEST_ATTRIBUTE, claims("tenant1"));
+        assertThat(interceptor.preHandle(request, new MockHttpServletResponse(), null)).isTrue();
+        assertThat(TenantContext.getCurrentTenant()).isEqualTo("tenant1");
+    }
+
+    @Test
+    void tokenCannotBeUsedForAnotherTenant() throws Exception {
+        TenantInterceptor interceptor = interceptor("header, subdomain, token", "tenant1", "tenant2");
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/auth/register/bulk");
+        request.addHeader("X-Tenant-ID", "tenant2");
+        request.setAttribute(VerifiedClaims.REQUEST_ATTRIBUTE, claims("tenant1"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThat(interceptor.preHandle(request, response, null)).isFalse();
+        assertThat(response.getStatus()).isEqualTo(403);
+        assertThat(TenantContext.getCurrentTenant()).isNull();
+
+        // Naming the token's own tenant is fine
+        MockHttpServletRequest own = new MockHttpServletRequest("POST", "/auth/register/bulk");
+        own.addHeader("X-Tenant-ID", "tenant1");
+        own.setAttribute(VerifiedClaims.REQUEST_ATTRIBUTE, claims("tenant1"));
+        assertThat(interceptor.preHandle(own, new MockHttpServletResponse(), null)).isTrue();
+        assertThat(TenantContext.getCurrentTenant()).isEqualTo("tenant1");
+    }
+
+    @Test
+    void unknownTenantIsRejectedAndNotSet() throws Exception {
+        TenantInterceptor interceptor = interceptor("header", "tenant1");
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/profile/me");
+        request.addHeader("X-Tenant-ID", "bogus");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThat(interceptor.preHandle(request, response, null)).isFalse();
+        assertThat(response.getStatus()).isEqualTo(400);
+        assertThat(response.getContentAsString()).contains("Unknown tenant");
+        assertThat(TenantContext.getCurrentTenant()).isNull();
+    }
+
+    private static VerifiedClaims claims(String tenantId) {
+        return new VerifiedClaims("alice", "t-1", tenantId, 1L, "alice@example.com", "ADMIN", Long.MAX_VALUE);
+    }
+}
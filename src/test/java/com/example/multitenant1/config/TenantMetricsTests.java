@@ -0,0 +1,70 @@
+package com.example.multitenant1.config;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TenantMetricsTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final TenantMetrics metrics = new TenantMetrics();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(metrics, "registry", registry);
+        ReflectionTestUtils.setField(metrics, "maxTaggedTenants", 2);
+        ReflectionTestUtils.setField(metrics, "maxTrackedTenants", 100L);
+        ReflectionTestUtils.setField(metrics, "refreshInterval", Duration.ofHours(1));
+        metrics.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        metrics.shutdown();
+    }
+
+    @Test
+    void tenantsBeyondTheLimitShareTheOtherTag() {
+        assertThat(metrics.tagOf("tenant1")).isEqualTo("tenant1");
+        assertThat(metrics.tagOf("tenant2")).isEqualTo("tenant2");
+        assertThat(metrics.tagOf("tenant3")).isEqualTo("other");
+        assertThat(metrics.tagOf("Not A Tenant")).isEqualTo("other");
+    }
+
+    @Test
+    void metersAreRegisteredOncePerTagValueAndReused() {
+        TenantMetrics.TenantMeters<Timer> timers = metrics.timers("latency", "outcome", "ok");
+
+        Timer first = timers.of("tenant1");
+
+        assertThat(timers.of("tenant1")).isSameAs(first);
+        assertThat(metrics.timer("latency", "tenant1", "outcome", "ok")).isSameAs(first);
+        assertThat(metrics.timers("latency", "outcome", "ok")).isSameAs(timers);
+        assertThat(timers.of("tenant2")).isNotSameAs(first);
+        assertThat(registry.find("latency").timers()).hasSize(2);
+    }
+
+    @Test
+    void refreshKeepsTheMostActiveTenantsAndDropsTheMetersOfTheRest() {
+        metrics.counter("requests", "tenant1").increment();
+        metrics.counter("requests", "tenant2").increment();
+        for (int i = 0; i < 10; i++) {
+            metrics.counter("requests", "tenant3").increment();
+            metrics.counter("requests", "tenant2").increment();
+        }
+
+        metrics.refresh();
+
+        assertThat(metrics.getTaggedTenants()).containsExactlyInAnyOrder("tenant2", "tenant3");
+        assertThat(registry.find("requests").tag(TenantMetrics.TENANT_TAG, "tenant1").counter()).isNull();
+        assertThat(registry.find("requests").tag(TenantMetrics.TENANT_TAG, "tenant2").counter()).isNotNull();
+        assertThat(metrics.tagOf("tenant3")).isEqualTo("tenant3");
+    }
+}
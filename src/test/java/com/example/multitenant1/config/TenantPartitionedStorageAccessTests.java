@@ -0,0 +1,64 @@
+package com.example.multitenant1.config;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TenantPartitionedStorageAccessTests {
+
+    private final TenantPartitionedStorageAccess region =
+            new TenantPartitionedStorageAccess("users", 1024 * 1024, Duration.ofMinutes(10), 100);
+
+    @Test
+    void tenantsOnlySeeTheirOwnEntries() {
+        SharedSessionContractImplementor tenant1 = session("tenant1");
+        SharedSessionContractImplementor tenant2 = session("tenant2");
+
+        region.putIntoCache("key", "from tenant1", tenant1);
+
+        assertThat(region.getFromCache("key", tenant1)).isEqualTo("from tenant1");
+        assertThat(region.getFromCache("key", tenant2)).isNull();
+        assertThat(region.getStats().get("tenant1").hits()).isEqualTo(1);
+        assertThat(region.getStats().get("tenant2").misses()).isEqualTo(1);
+    }
+
+    @Test
+    void evictTenantLeavesOtherTenantsAlone() {
+        SharedSessionContractImplementor tenant1 = session("tenant1");
+        SharedSessionContractImplementor tenant2 = session("tenant2");
+        region.putIntoCache("key", "a", tenant1);
+        region.putIntoCache("key", "b", tenant2);
+
+        region.evictTenant("tenant1");
+
+        assertThat(region.getFromCache("key", tenant1)).isNull();
+        assertThat(region.getFromCache("key", tenant2)).isEqualTo("b");
+    }
+
+    @Test
+    void partitionStaysWithinItsSizeBudget() {
+        TenantPartitionedStorageAccess small =
+                new TenantPartitionedStorageAccess("users", 4096, Duration.ofMinutes(10), 100);
+        SharedSessionContractImplementor tenant1 = session("tenant1");
+        SharedSessionContractImplementor tenant2 = session("tenant2");
+        small.putIntoCache("kept", "x", tenant2);
+
+        for (int i = 0; i < 1000; i++) {
+            small.putIntoCache(i, "value-" + i, tenant1);
+        }
+
+        assertThat(small.getStats().get("tenant1").sizeBytes()).isLessThanOrEqualTo(4096);
+        assertThat(small.getFromCache("kept", tenant2)).isEqualTo("x");
+    }
+
+    private static SharedSessionContractImplementor session(String tenant) {
+        SharedSessionContractImplementor session = mock(SharedSessionContractImplementor.class);
+        when(session.getTenantIdentifierValue()).thenReturn(tenant);
+        return session;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.multitenant1.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class TenantRateLimiterTests {
+
+    private final TenantRateLimiter limiter = new TenantRateLimiter();
+
+    @AfterEach
+    void tearDown() {
+        limiter.shutdown();
+    }
+
+    private void start(MockEnvironment environment, boolean fairShare, double nodeRate) {
+        ReflectionTestUtils.setField(limiter, "environment", environment);
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        // Slow enough that no tokens come back while a test runs
+        ReflectionTestUtils.setField(limiter, "defaultRate", 0.01);
+        ReflectionTestUtils.setField(limiter, "defaultBurst", 5);
+        ReflectionTestUtils.setField(limiter, "maxTenants", 100L);
+        ReflectionTestUtils.setField(limiter, "fairShareEnabled", fairShare);
+        ReflectionTestUtils.setField(limiter, "nodeRate", nodeRate);
+        ReflectionTestUtils.setField(limiter, "nodeBurst", 20);
+        ReflectionTestUtils.setField(limiter, "activeWindow", Duration.ofSeconds(10));
+        limiter.init();
+    }
+
+    @Test
+    void burstIsAdmittedThenTenantIsRejectedWithoutAffectingOthers() {
+        start(new MockEnvironment(), false, 0);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire("tenant1")).isZero();
+        }
+
+        assertThat(limiter.tryAcquire("tenant1")).isPositive();
+        assertThat(limiter.tryAcquire("tenant2")).isZero();
+        assertThat(limiter.getStats().get("tenant1").rejected()).isEqualTo(1);
+    }
+
+    @Test
+    void perTenantOverrideReplacesTheDefault() {
+        start(new MockEnvironment().withProperty("multitenancy.rate-limit.tenants.big.burst", "8"), false, 0);
+
+        int admitted = 0;
+        while (limiter.tryAcquire("big") == 0 && admitted < 100) {
+            admitted++;
+        }
+
+        assertThat(admitted).isEqualTo(8);
+        assertThat(limiter.getStats().get("big").rate()).isCloseTo(0.01, within(1e-6));
+    }
+
+    @Test
+    void tenantOverItsLimitBorrowsSpareNodeCapacityInFairShareMode() {
+        start(new MockEnvironment(), true, 0.01);
+
+        int admitted = 0;
+        while (limiter.tryAcquire("tenant1") == 0 && admitted < 100) {
+            admitted++;
+        }
+
+        // 5 from the tenant's own bucket, 5 more borrowed (the borrowing bucket has the tenant's burst)
+        assertThat(admitted).isEqualTo(10);
+        assertThat(limiter.getStats().get("tenant1").borrowed()).isEqualTo(5);
+    }
+
+    @Test
+    void rejectionBySaturatedNodeKeepsTheTenantsBorrowingAllowance() {
+        start(new MockEnvironment().withProperty("multitenancy.rate-limit.tenants.busy.burst", "40"), true, 0.01);
+
+        // The busy tenant's own admissions use up the node's capacity
+        for (int i = 0; i < 40; i++) {
+            assertThat(limiter.tryAcquire("busy")).isZero();
+        }
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire("tenant1")).isZero();
+        }
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire("tenant1")).isPositive();
+        }
+
+        // Once the node has room again the tenant still borrows its full allowance
+        ReflectionTestUtils.setField(limiter, "node", new TenantRateLimiter.Bucket(0.01, 20));
+        int borrowed = 0;
+        while (limiter.tryAcquire("tenant1") == 0 && borrowed < 100) {
+            borrowed++;
+        }
+        assertThat(borrowed).isEqualTo(5);
+    }
+}
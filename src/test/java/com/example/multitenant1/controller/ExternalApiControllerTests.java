@@ -0,0 +1,117 @@
+package com.example.multitenant1.controller;
+
+import com.example.multitenant1.service.ExternalApiService;
+import com.example.multitenant1.service.ExternalResponseCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExternalApiControllerTests {
+
+    private static final String URL = "https://api.example.com/large";
+
+    private final ExternalApiService externalApiService = mock(ExternalApiService.class);
+    private final ExternalApiController controller =
+            new ExternalApiController(mock(ExternalResponseCache.class), externalApiService);
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/external/stream");
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(controller, "streamBufferSize", DataSize.ofBytes(4));
+    }
+
+    @SuppressWarnings("unchecked")
+    private HttpResponse<InputStream> upstream(String body) {
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.headers()).thenReturn(java.net.http.HttpHeaders.of(Map.of(
+                "Content-Type", List.of("application/json"),
+                "Content-Length", List.of(String.valueOf(body.length())),
+                "Set-Cookie", List.of("upstream=1")), (name, value) -> true));
+        when(response.body()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        });
+        return response;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void bodyIsRelayedAndUpstreamClosed() throws Exception {
+        String body = "{\"items\":[1,2,3,4,5,6,7,8,9]}";
+        HttpResponse<InputStream> upstream = upstream(body);
+        when(externalApiService.openStream(eq(URL), any(HttpHeaders.class)))
+                .thenReturn(CompletableFuture.completedFuture(upstream));
+
+        DeferredResult<ResponseEntity<StreamingResponseBody>> result = controller.streamExternalData(URL, request);
+        ResponseEntity<StreamingResponseBody> response = (ResponseEntity<StreamingResponseBody>) result.getResult();
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(body.length());
+        assertThat(response.getHeaders().containsKey(HttpHeaders.SET_COOKIE)).isFalse();
+        assertThat(closed).isFalse();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(body);
+        assertThat(closed).isTrue();
+    }
+
+    @Test
+    void upstreamArrivingAfterTheRequestEndedIsClosed() {
+        CompletableFuture<HttpResponse<InputStream>> pending = new CompletableFuture<>();
+        when(externalApiService.openStream(eq(URL), any(HttpHeaders.class))).thenReturn(pending);
+
+        DeferredResult<ResponseEntity<StreamingResponseBody>> result = controller.streamExternalData(URL, request);
+        // The request has been answered already, e.g. by the async timeout
+        result.setErrorResult(new IllegalStateException("timed out"));
+
+        HttpResponse<InputStream> upstream = upstream("late");
+        pending.complete(upstream);
+
+        assertThat(closed).isTrue();
+    }
+
+    @Test
+    void timeoutWhileStreamingClosesUpstream() throws Exception {
+        HttpResponse<InputStream> upstream = upstream("never written");
+        when(externalApiService.openStream(eq(URL), any(HttpHeaders.class)))
+                .thenReturn(CompletableFuture.completedFuture(upstream));
+
+        controller.streamExternalData(URL, request);
+        CallableProcessingInterceptor streaming = WebAsyncUtils.getAsyncManager(request)
+                .getCallableInterceptor("com.example.multitenant1.controller.ExternalApiController$UpstreamResponse");
+        assertThat(closed).isFalse();
+
+        streaming.handleTimeout(null, () -> null);
+
+        assertThat(closed).isTrue();
+    }
+}
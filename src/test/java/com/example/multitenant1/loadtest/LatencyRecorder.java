@@ -0,0 +1,58 @@
+package com.example.multitenant1.loadtest;
+
+import java.util.Arrays;
+
+/* Single-threaded latency log; each worker owns one and they are merged after the run. */
+final class LatencyRecorder {
+
+    private long[] samples = new long[1 << 16];
+    private int size;
+    private long errors;
+
+    void record(long nanos) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = nanos;
+    }
+
+    void recordError() {
+        errors++;
+    }
+
+    void reset() {
+        size = 0;
+        errors = 0;
+    }
+
+    int count() {
+        return size;
+    }
+
+    long errors() {
+        return errors;
+    }
+
+    static long[] merge(Iterable<LatencyRecorder> recorders) {
+        int total = 0;
+        for (LatencyRecorder recorder : recorders) {
+            total += recorder.size;
+        }
+        long[] merged = new long[total];
+        int offset = 0;
+        for (LatencyRecorder recorder : recorders) {
+            System.arraycopy(recorder.samples, 0, merged, offset, recorder.size);
+            offset += recorder.size;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.multitenant1.loadtest;
+
+import com.example.multitenant1.MultiTenant1Application;
+import com.example.multitenant1.model.User;
+import com.example.multitenant1.security.JwtTokenProvider;
+import com.example.multitenant1.service.KnownTenants;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/* End-to-end load test: starts the application against H2 in PostgreSQL mode, provisions
+ * N tenants with M users each, then drives /auth/login and /profile/me at a fixed concurrency
+ * with uniform or Zipf tenant skew. Throughput, p50/p99/p999 latency and Hibernate statements
+ * per request are printed and written to target/loadtest/<label>.json; two such files can be
+ * printed side by side with -Dloadtest.compare=a.json,b.json.
+ *
+ * Application settings are overridden with -Dloadtest.args="--key=value ...", e.g.
+ * --security.principal-source=claims or --multitenancy.isolation=discriminator.
+ */
+public final class LoadTestRunner {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestRunner.class);
+    private static final String PASSWORD = "loadtest-password";
+
+    private LoadTestRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String compare = System.getProperty("loadtest.compare", "");
+        if (!compare.isBlank()) {
+            compare(compare.split(","));
+            return;
+        }
+
+        String label = System.getProperty("loadtest.label", "run");
+        int tenants = Integer.getInteger("loadtest.tenants", 4);
+        int usersPerTenant = Integer.getInteger("loadtest.usersPerTenant", 50);
+        int concurrency = Integer.getInteger("loadtest.concurrency", 16);
+        int warmupSeconds = Integer.getInteger("loadtest.warmupSeconds", 5);
+        int durationSeconds = Integer.getInteger("loadtest.durationSeconds", 20);
+        String skew = System.getProperty("loadtest.skew", "uniform");
+        double zipfExponent = Double.parseDouble(System.getProperty("loadtest.zipfExponent", "1.0"));
+        double loginRatio = Double.parseDouble(System.getProperty("loadtest.loginRatio", "0.01"));
+        String[] appArgs = Arrays.stream(System.getProperty("loadtest.args", "").trim().split("\\s+"))
+                .filter(a -> !a.isEmpty())
+                .toArray(String[]::new);
+
+        // The restarting class loader of devtools would only add noise to startup and request timings
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        long startupBegin = System.nanoTime();
+        SpringApplication application = new SpringApplication(MultiTenant1Application.class);
+        application.setAdditionalProfiles("loadtest");
+        List<String> runArgs = new ArrayList<>(List.of("--server.port=0"));
+        runArgs.addAll(Arrays.asList(appArgs));
+        ConfigurableApplicationContext context = application.run(runArgs.toArray(String[]::new));
+        double startupMillis = (System.nanoTime() - startupBegin) / 1_000_000.0;
+
+        try {
+            String isolation = context.getEnvironment().getProperty("multitenancy.isolation", "schema");
+            int port = Integer.parseInt(context.getEnvironment().getRequiredProperty("local.server.port"));
+
+            long provisionBegin = System.nanoTime();
+            String[][] tokens = provision(context, isolation, tenants, usersPerTenant);
+            double provisionMillis = (System.nanoTime() - provisionBegin) / 1_000_000.0;
+            logger.info("Started in {} ms, provisioned {} tenants x {} users ({} isolation) in {} ms",
+                    Math.round(startupMillis), tenants, usersPerTenant, isolation, Math.round(provisionMillis));
+
+            Statistics statistics = context.getBean(EntityManagerFactory.class)
+                    .unwrap(SessionFactory.class).getStatistics();
+            Map<String, Object> results = drive(port, tokens, statistics, concurrency, warmupSeconds,
+                    durationSeconds, TenantSampler.of(skew, tenants, zipfExponent), loginRatio);
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            Map<String, Object> config = new LinkedHashMap<>();
+            config.put("label", label);
+            config.put("isolation", isolation);
+            config.put("tenants", tenants);
+            config.put("usersPerTenant", usersPerTenant);
+            config.put("concurrency", concurrency);
+            config.put("durationSeconds", durationSeconds);
+            config.put("skew", skew);
+            config.put("zipfExponent", zipfExponent);
+            config.put("loginRatio", loginRatio);
+            config.put("args", String.join(" ", appArgs));
+            report.put("config", config);
+            report.put("startupMillis", startupMillis);
+            report.put("provisionMillis", provisionMillis);
+            report.putAll(results);
+
+            Path output = Path.of(System.getProperty("loadtest.output", "target/loadtest"), label + ".json");
+            Files.createDirectories(output.getParent());
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output.toFile(), report);
+            print(report);
+            logger.info("Report written to {}", output);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static String[][] provision(ConfigurableApplicationContext context, String isolation,
+                                        int tenants, int usersPerTenant) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        JwtTokenProvider tokenProvider = context.getBean(JwtTokenProvider.class);
+        // There is no tenant registry without Liquibase, so the tenants are made known directly
+        KnownTenants knownTenants = context.getBean(KnownTenants.class);
+        // One hash for every user keeps provisioning fast; logins still pay the full BCrypt cost
+        String hash = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+        boolean shared = "discriminator".equalsIgnoreCase(isolation);
+        String sharedSchema = context.getEnvironment().getProperty("multitenancy.discriminator.schema", "public");
+
+        if (shared) {
+            createUsersTable(jdbcTemplate, sharedSchema);
+        }
+        String[][] tokens = new String[tenants][usersPerTenant];
+        for (int t = 0; t < tenants; t++) {
+            String tenant = tenantId(t);
+            knownTenants.register(tenant);
+            String schema = shared ? sharedSchema : tenant;
+            if (!shared) {
+                createUsersTable(jdbcTemplate, schema);
+            }
+            List<Object[]> rows = new ArrayList<>(usersPerTenant);
+            for (int u = 0; u < usersPerTenant; u++) {
+                rows.add(new Object[]{username(u), hash, username(u) + "@" + tenant + ".example.com", tenant, "USER"});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO " + schema + ".users (username, password, email, tenant_id, role) "
+                    + "VALUES (?, ?, ?, ?, ?)", rows);
+            List<Map<String, Object>> users = jdbcTemplate.queryForList(
+                    "SELECT id, username, email FROM " + schema + ".users WHERE tenant_id = ? ORDER BY id", tenant);
+            for (int u = 0; u < users.size(); u++) {
+                User user = new User();
+                user.setId(((Number) users.get(u).get("id")).longValue());
+                user.setUsername((String) users.get(u).get("username"));
+                user.setEmail((String) users.get(u).get("email"));
+                user.setTenantId(tenant);
+                user.setRole("USER");
+                tokens[t][u] = tokenProvider.generateToken(user);
+            }
+        }
+        return tokens;
+    }
+
+    private static void createUsersTable(JdbcTemplate jdbcTemplate, String schema) {
+        // Mirrors the tenant changelog; H2 cannot run the PostgreSQL-only changesets
+        jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + schema);
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + schema + ".users_seq START WITH 1 INCREMENT BY 50");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + schema + ".users ("
+                + "id BIGINT DEFAULT NEXT VALUE FOR " + schema + ".users_seq PRIMARY KEY, "
+                + "username VARCHAR(100) NOT NULL, password VARCHAR(255) NOT NULL, "
+                + "email VARCHAR(255) NOT NULL, tenant_id VARCHAR(255) NOT NULL, role VARCHAR(255) NOT NULL)");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS users_tenant_username_uk ON "
+                + schema + ".users (tenant_id, username)");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS users_tenant_email_uk ON "
+                + schema + ".users (tenant_id, email)");
+        // Logins issue refresh tokens
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + schema + ".refresh_tokens ("
+                + "token_hash VARCHAR(64) PRIMARY KEY, tenant_id VARCHAR(255) NOT NULL, "
+                + "family_id VARCHAR(36) NOT NULL, user_id BIGINT NOT NULL, "
+                + "expires_at TIMESTAMP WITH TIME ZONE NOT NULL, used BOOLEAN DEFAULT FALSE NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS refresh_tokens_user_idx ON "
+                + schema + ".refresh_tokens (user_id)");
+    }
+
+    private static Map<String, Object> drive(int port, String[][] tokens, Statistics statistics, int concurrency,
+                                             int warmupSeconds, int durationSeconds, TenantSampler sampler,
+                                             double loginRatio) throws Exception {
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(Math.max(2, concurrency / 4));
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(clientExecutor)
+                .build();
+        URI profileUri = URI.create("http://localhost:" + port + "/profile/me");
+        URI loginUri = URI.create("http://localhost:" + port + "/auth/login");
+
+        List<LatencyRecorder> profileRecorders = new ArrayList<>();
+        List<LatencyRecorder> loginRecorders = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            profileRecorders.add(new LatencyRecorder());
+            loginRecorders.add(new LatencyRecorder());
+        }
+
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+        CountDownLatch done = new CountDownLatch(concurrency);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int w = 0; w < concurrency; w++) {
+            LatencyRecorder profileRecorder = profileRecorders.get(w);
+            LatencyRecorder loginRecorder = loginRecorders.get(w);
+            workers.submit(() -> {
+                try {
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        boolean measuring = now >= warmupEnd;
+                        int t = sampler.next();
+                        int u = ThreadLocalRandom.current().nextInt(tokens[t].length);
+                        boolean login = ThreadLocalRandom.current().nextDouble() < loginRatio;
+                        HttpRequest request = login
+                                ? HttpRequest.newBuilder(loginUri)
+                                    .header("Content-Type", "application/json")
+                                    .header("X-Tenant-ID", tenantId(t))
+                                    .POST(HttpRequest.BodyPublishers.ofString(
+                                            "{\"username\":\"" + username(u) + "\",\"password\":\"" + PASSWORD + "\"}"))
+                                    .build()
+                                : HttpRequest.newBuilder(profileUri)
+                                    .header("X-Tenant-ID", tenantId(t))
+                                    .header("Authorization", "Bearer " + tokens[t][u])
+                                    .GET()
+                                    .build();
+                        LatencyRecorder recorder = login ? loginRecorder : profileRecorder;
+                        long start = System.nanoTime();
+                        int status;
+                        try {
+                            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        } catch (Exception e) {
+                            status = -1;
+                        }
+                        if (measuring) {
+                            if (status == 200) {
+                                recorder.record(System.nanoTime() - start);
+                            } else {
+                                recorder.recordError();
+                            }
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        TimeUnit.NANOSECONDS.sleep(Math.max(0, warmupEnd - System.nanoTime()));
+        statistics.clear();
+        done.await();
+        workers.shutdown();
+        clientExecutor.shutdown();
+        long statements = statistics.getPrepareStatementCount();
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        Map<String, Object> profile = summarize(profileRecorders, durationSeconds);
+        Map<String, Object> login = summarize(loginRecorders, durationSeconds);
+        results.put("profile", profile);
+        results.put("login", login);
+        long requests = (long) profile.get("requests") + (long) login.get("requests")
+                + (long) profile.get("errors") + (long) login.get("errors");
+        results.put("dbStatements", statements);
+        results.put("dbStatementsPerRequest", requests == 0 ? 0 : (double) statements / requests);
+        return results;
+    }
+
+    private static Map<String, Object> summarize(List<LatencyRecorder> recorders, int durationSeconds) {
+        long[] sorted = LatencyRecorder.merge(recorders);
+        long errors = recorders.stream().mapToLong(LatencyRecorder::errors).sum();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", (long) sorted.length);
+        summary.put("errors", errors);
+        summary.put("throughputPerSecond", (double) sorted.length / durationSeconds);
+        summary.put("p50Millis", LatencyRecorder.percentileMillis(sorted, 50));
+        summary.put("p99Millis", LatencyRecorder.percentileMillis(sorted, 99));
+        summary.put("p999Millis", LatencyRecorder.percentileMillis(sorted, 99.9));
+        return summary;
+    }
+
+    private static void print(Map<String, Object> report) {
+        for (String endpoint : List.of("profile", "login")) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> summary = (Map<String, Object>) report.get(endpoint);
+            System.out.printf("%-8s %10.1f req/s  p50 %8.3f ms  p99 %8.3f ms  p999 %8.3f ms  errors %d%n",
+                    endpoint, summary.get("throughputPerSecond"), summary.get("p50Millis"),
+                    summary.get("p99Millis"), summary.get("p999Millis"), summary.get("errors"));
+        }
+        System.out.printf("DB statements per request: %.3f%n", report.get("dbStatementsPerRequest"));
+    }
+
+    private static void compare(String[] files) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        List<JsonNode> reports = new ArrayList<>();
+        System.out.printf("%-28s", "");
+        for (String file : files) {
+            JsonNode report = mapper.readTree(new File(file.trim()));
+            reports.add(report);
+            System.out.printf("%18s", report.path("config").path("label").asText(file));
+        }
+        System.out.println();
+        String[][] rows = {
+                {"profile", "throughputPerSecond"}, {"profile", "p50Millis"}, {"profile", "p99Millis"},
+                {"profile", "p999Millis"}, {"login", "throughputPerSecond"}, {"login", "p50Millis"},
+                {"login", "p99Millis"}, {"login", "p999Millis"}, {null, "dbStatementsPerRequest"},
+                {null, "startupMillis"}, {null, "provisionMillis"}};
+        for (String[] row : rows) {
+            System.out.printf("%-28s", row[0] != null ? row[0] + "." + row[1] : row[1]);
+            for (JsonNode report : reports) {
+                JsonNode node = row[0] != null ? report.path(row[0]).path(row[1]) : report.path(row[1]);
+                System.out.printf("%18.3f", node.asDouble());
+            }
+            System.out.println();
+        }
+    }
+
+    private static String tenantId(int index) {
+        return "tenant" + (index + 1);
+    }
+
+    private static String username(int index) {
+        return "user" + index;
+    }
+}
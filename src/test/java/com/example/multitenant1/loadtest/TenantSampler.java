@@ -0,0 +1,35 @@
+package com.example.multitenant1.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/* Picks tenant indexes either uniformly or with a Zipf distribution (tenant 0 is the hottest). */
+final class TenantSampler {
+
+    private final double[] cumulative;
+
+    private TenantSampler(double[] cumulative) {
+        this.cumulative = cumulative;
+    }
+
+    static TenantSampler of(String skew, int tenants, double exponent) {
+        double[] weights = new double[tenants];
+        for (int i = 0; i < tenants; i++) {
+            weights[i] = "zipf".equalsIgnoreCase(skew) ? 1.0 / Math.pow(i + 1, exponent) : 1.0;
+        }
+        double total = Arrays.stream(weights).sum();
+        double[] cumulative = new double[tenants];
+        double running = 0;
+        for (int i = 0; i < tenants; i++) {
+            running += weights[i] / total;
+            cumulative[i] = running;
+        }
+        cumulative[tenants - 1] = 1.0;
+        return new TenantSampler(cumulative);
+    }
+
+    int next() {
+        int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+        return index >= 0 ? index : -index - 1;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.multitenant1.security;
+
+import com.example.multitenant1.model.User;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtTokenProviderTests {
+
+    private JwtTokenProvider tokenProvider;
+
+    @BeforeEach
+    void setUp() {
+        tokenProvider = newProvider(60_000);
+    }
+
+    @Test
+    void verifyTokenReturnsAllClaims() {
+        String token = tokenProvider.generateToken(user());
+
+        VerifiedClaims claims = tokenProvider.verifyToken(token);
+
+        assertThat(claims.getSubject()).isEqualTo("alice");
+        assertThat(claims.getTenantId()).isEqualTo("tenant1");
+        assertThat(claims.getUserId()).isEqualTo(42L);
+        assertThat(claims.getRoles()).isEqualTo("ADMIN");
+        assertThat(claims.isExpired(System.currentTimeMillis())).isFalse();
+    }
+
+    @Test
+    void repeatVerificationIsServedFromCache() {
+        String token = tokenProvider.generateToken(user());
+
+        assertThat(tokenProvider.verifyToken(token)).isSameAs(tokenProvider.verifyToken(token));
+    }
+
+    @Test
+    void tamperedTokenIsRejected() {
+        String token = tokenProvider.generateToken(user());
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        assertThat(tokenProvider.validateToken(tampered, null)).isFalse();
+        assertThatThrownBy(() -> tokenProvider.verifyToken(tampered))
+                .isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void revokedTokenIsRejectedEvenWhenCached() {
+        String token = tokenProvider.generateToken(user());
+        String other = tokenProvider.generateToken(user());
+        VerifiedClaims claims = tokenProvider.verifyToken(token);
+
+        tokenProvider.revoke(claims);
+
+        assertThat(claims.getTokenId()).isNotNull();
+        assertThatThrownBy(() -> tokenProvider.verifyToken(token))
+                .isInstanceOf(JwtException.class);
+        assertThat(tokenProvider.verifyToken(other).getTokenId()).isNotEqualTo(claims.getTokenId());
+        assertThat(tokenProvider.getRevokedTokenCount()).isEqualTo(1);
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        JwtTokenProvider shortLived = newProvider(-1_000);
+        String token = shortLived.generateToken(user());
+
+        assertThat(shortLived.validateToken(token, null)).isFalse();
+    }
+
+    private static JwtTokenProvider newProvider(long expirationMillis) {
+        JwtTokenProvider provider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(provider, "secret", "testSecretKey1234567890123456789012345");
+        ReflectionTestUtils.setField(provider, "jwtExpiration", expirationMillis);
+        ReflectionTestUtils.setField(provider, "claimsCacheMaxSize", 100L);
+        provider.init();
+        return provider;
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(42L);
+        user.setUsername("alice");
+        user.setTenantId("tenant1");
+        user.setRole("ADMIN");
+        return user;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.multitenant1.security;
+
+import com.example.multitenant1.config.TenantMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHashingExecutorTests {
+
+    private final PasswordHashingExecutor executor = new PasswordHashingExecutor();
+    private final CountDownLatch release = new CountDownLatch(1);
+    // Callers block until their hash is done, so each needs its own thread
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    private void start(int queueCapacity, int maxQueuedPerTenant) throws InterruptedException {
+        ReflectionTestUtils.setField(executor, "threads", 1);
+        ReflectionTestUtils.setField(executor, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(executor, "maxQueuedPerTenant", maxQueuedPerTenant);
+        ReflectionTestUtils.setField(executor, "maxQueueWait", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(executor, "tenantMetrics", tenantMetrics());
+        executor.init();
+        // Occupy the only worker until the test releases it
+        CompletableFuture.runAsync(() -> executor.execute("blocker", () -> {
+            await(release);
+            return null;
+        }), callers);
+        waitUntil(() -> executor.getStats().active() == 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+        callers.shutdownNow();
+    }
+
+    @Test
+    void rejectsBeyondTenantShareAndQueueCapacity() throws InterruptedException {
+        start(3, 2);
+        submit("a", null);
+        submit("a", null);
+        waitUntil(() -> executor.getStats().queued() == 2);
+
+        assertThatThrownBy(() -> executor.execute("a", () -> "hash"))
+                .isInstanceOfSatisfying(PasswordHashingRejectedException.class, e -> {
+                    assertThat(e.isTenantLimited()).isTrue();
+                    assertThat(e.getRetryAfter()).isPositive();
+                });
+
+        submit("b", null);
+        waitUntil(() -> executor.getStats().queued() == 3);
+        assertThatThrownBy(() -> executor.execute("c", () -> "hash"))
+                .isInstanceOfSatisfying(PasswordHashingRejectedException.class,
+                        e -> assertThat(e.isTenantLimited()).isFalse());
+
+        PasswordHashingStats stats = executor.getStats();
+        assertThat(stats.rejectedTenantLimit()).isEqualTo(1);
+        assertThat(stats.rejectedOverloaded()).isEqualTo(1);
+    }
+
+    @Test
+    void servesTenantsRoundRobin() throws InterruptedException {
+        start(10, 10);
+        List<String> order = new CopyOnWriteArrayList<>();
+        for (String name : List.of("a1", "a2", "a3", "b1")) {
+            int queuedBefore = executor.getStats().queued();
+            submit(name.substring(0, 1), () -> order.add(name));
+            waitUntil(() -> executor.getStats().queued() == queuedBefore + 1);
+        }
+
+        release.countDown();
+        waitUntil(() -> order.size() == 4);
+
+        assertThat(order).containsExactly("a1", "b1", "a2", "a3");
+    }
+
+    private void submit(String tenant, Runnable hash) {
+        CompletableFuture.runAsync(() -> executor.execute(tenant, () -> {
+            if (hash != null) {
+                hash.run();
+            }
+            return null;
+        }), callers);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static TenantMetrics tenantMetrics() {
+        TenantMetrics metrics = new TenantMetrics();
+        ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(metrics, "maxTaggedTenants", 20);
+        ReflectionTestUtils.setField(metrics, "maxTrackedTenants", 1000L);
+        ReflectionTestUtils.setField(metrics, "refreshInterval", Duration.ofMinutes(1));
+        metrics.init();
+        return metrics;
+    }
+}
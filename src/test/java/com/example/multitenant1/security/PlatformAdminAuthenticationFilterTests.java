@@ -0,0 +1,57 @@
+package com.example.multitenant1.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlatformAdminAuthenticationFilterTests {
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private static Authentication filter(String configuredKey, String presentedKey) throws Exception {
+        PlatformAdminAuthenticationFilter filter = new PlatformAdminAuthenticationFilter();
+        ReflectionTestUtils.setField(filter, "key", configuredKey);
+        filter.init();
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/admin/tenants");
+        if (presentedKey != null) {
+            request.addHeader("X-Platform-Admin-Key", presentedKey);
+        }
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    @Test
+    void configuredKeyGrantsThePlatformAuthority() throws Exception {
+        Authentication authentication = filter("s3cret", "s3cret");
+
+        assertThat(authentication.getAuthorities()).extracting(GrantedAuthority::getAuthority)
+                .containsExactly(PlatformAdminAuthenticationFilter.AUTHORITY);
+    }
+
+    @Test
+    void wrongOrMissingKeyGrantsNothing() throws Exception {
+        assertThat(filter("s3cret", "guess")).isNull();
+        assertThat(filter("s3cret", null)).isNull();
+        // Without a configured key an empty header must not match
+        assertThat(filter("", "")).isNull();
+    }
+
+    @Test
+    void tenantRolesNeverMapToThePlatformAuthority() {
+        UserPrincipal principal = UserPrincipal.of(1L, "mallory", "m@example.com", "tenant1", "PLATFORM_ADMIN");
+
+        assertThat(principal.getAuthorities()).extracting(GrantedAuthority::getAuthority)
+                .doesNotContain(PlatformAdminAuthenticationFilter.AUTHORITY);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.multitenant1.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTests {
+
+    @Test
+    void neverForgetsAnAddedValue() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("user" + i + "@tenant.example.com");
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain("user" + i + "@tenant.example.com")).isTrue();
+        }
+        assertThat(filter.isSaturated()).isFalse();
+    }
+
+    @Test
+    void keepsFalsePositivesNearTheConfiguredRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("user" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+    }
+
+    @Test
+    void reportsSaturationBeyondCapacity() {
+        BloomFilter filter = new BloomFilter(2, 0.01);
+        filter.add("a");
+        filter.add("b");
+        assertThat(filter.isSaturated()).isFalse();
+        filter.add("c");
+        assertThat(filter.isSaturated()).isTrue();
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.model.User;
+import com.example.multitenant1.repository.UserRepository;
+import com.example.multitenant1.security.BoundedPasswordEncoder;
+import com.example.multitenant1.security.PasswordHashingExecutor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.SequenceGenerator;
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.PooledLoOptimizer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BulkRegistrationServiceTests {
+
+    private static final String HASH = "$2a$10$" + "a".repeat(53);
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final BulkRegistrationService service = new BulkRegistrationService();
+    private final AtomicLong ids = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        // The membership filter rules every value out, so uniqueness never reaches the repository
+        UserMembershipFilter membershipFilter = mock(UserMembershipFilter.class);
+
+        ReflectionTestUtils.setField(service, "userRepository", userRepository);
+        ReflectionTestUtils.setField(service, "passwordEncoder", mock(BoundedPasswordEncoder.class));
+        ReflectionTestUtils.setField(service, "passwordHashingExecutor", mock(PasswordHashingExecutor.class));
+        ReflectionTestUtils.setField(service, "principalCache", mock(PrincipalCache.class));
+        ReflectionTestUtils.setField(service, "membershipFilter", membershipFilter);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+
+        // Ids are assigned on persist, as Hibernate does from the pooled sequence
+        when(userRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<User> users = invocation.getArgument(0);
+            users.forEach(user -> user.setId(ids.incrementAndGet()));
+            return users;
+        });
+    }
+
+    private static BufferedReader ndjson(String... usernames) {
+        StringBuilder body = new StringBuilder();
+        for (String username : usernames) {
+            body.append("{\"username\":\"").append(username).append("\",\"email\":\"").append(username)
+                    .append("@example.com\",\"passwordHash\":\"").append(HASH).append("\"}\n");
+        }
+        return new BufferedReader(new StringReader(body.toString()));
+    }
+
+    @Test
+    void linesAreInsertedOneBatchPerChunk() throws Exception {
+        List<List<BulkRegistrationResult>> chunks = new ArrayList<>();
+
+        long created = service.register("tenant1", ndjson("a", "b", "c", "d", "e"), chunks::add);
+
+        assertThat(created).isEqualTo(5);
+        assertThat(chunks).extracting(List::size).containsExactly(2, 2, 1);
+        verify(userRepository, times(3)).saveAll(anyList());
+        verify(userRepository, never()).saveAndFlush(any());
+        assertThat(chunks.stream().flatMap(List::stream).map(BulkRegistrationResult::userId))
+                .containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void rejectedLinesDoNotAffectTheirChunk() throws Exception {
+        List<BulkRegistrationResult> results = new ArrayList<>();
+        BufferedReader body = new BufferedReader(new StringReader(
+                "{\"username\":\"a\",\"email\":\"a@example.com\",\"passwordHash\":\"" + HASH + "\",\"role\":\"ROOT\"}\n"
+                        + "not json\n"
+                        + "{\"username\":\"b\",\"email\":\"b@example.com\",\"passwordHash\":\"" + HASH + "\",\"role\":\"ADMIN\"}\n"));
+
+        long created = service.register("tenant1", body, results::addAll);
+
+        assertThat(created).isEqualTo(1);
+        assertThat(results).extracting(BulkRegistrationResult::line).containsExactly(1, 2, 3);
+        assertThat(results.get(0).error()).isEqualTo("Unknown role: ROOT");
+        assertThat(results.get(1).error()).startsWith("Malformed JSON");
+        assertThat(results.get(2).isRejected()).isFalse();
+    }
+
+    @Test
+    void constraintViolationFallsBackToOneInsertPerUser() throws Exception {
+        when(userRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("batch failed"));
+        List<Long> idsOnRetry = new ArrayList<>();
+        doAnswer(invocation -> {
+            User user = invocation.getArgument(0);
+            idsOnRetry.add(user.getId());
+            if (user.getUsername().equals("taken")) {
+                throw new DataIntegrityViolationException("insert failed",
+                        new SQLException("duplicate key value violates unique constraint \"users_username_uk\""));
+            }
+            user.setId(ids.incrementAndGet());
+            return user;
+        }).when(userRepository).saveAndFlush(any(User.class));
+        List<BulkRegistrationResult> results = new ArrayList<>();
+
+        long created = service.register("tenant1", ndjson("free", "taken"), results::addAll);
+
+        assertThat(created).isEqualTo(1);
+        // Ids handed out to the failed batch are dropped so each retry draws a fresh one
+        assertThat(idsOnRetry).containsOnlyNulls();
+        assertThat(results.get(0).isRejected()).isFalse();
+        assertThat(results.get(0).userId()).isEqualTo(1L);
+        assertThat(results.get(1).error()).isEqualTo("Username is already taken");
+    }
+
+    @Test
+    void userIdsComeFromThePooledSequenceInBlocks() {
+        SequenceGenerator generator = sequenceGenerator();
+        assertThat(generator.allocationSize()).isEqualTo(50);
+
+        // pooled-lo: each sequence value is the first id of a block of allocationSize ids
+        AtomicLong sequence = new AtomicLong(1);
+        List<Long> sequenceCalls = new ArrayList<>();
+        PooledLoOptimizer optimizer = new PooledLoOptimizer(Long.class, generator.allocationSize());
+        AccessCallback usersSeq = new AccessCallback() {
+            @Override
+            public IntegralDataTypeHolder getNextValue() {
+                long value = sequence.getAndAdd(generator.allocationSize());
+                sequenceCalls.add(value);
+                return IdentifierGeneratorHelper.getIntegralDataTypeHolder(Long.class).initialize(value);
+            }
+
+            @Override
+            public String getTenantIdentifier() {
+                return "tenant1";
+            }
+        };
+
+        List<Long> assigned = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            assigned.add((Long) optimizer.generate(usersSeq));
+        }
+
+        assertThat(sequenceCalls).containsExactly(1L, 51L, 101L);
+        assertThat(assigned.get(0)).isEqualTo(1L);
+        assertThat(assigned.get(49)).isEqualTo(50L);
+        assertThat(assigned.get(50)).isEqualTo(51L);
+        assertThat(assigned).doesNotHaveDuplicates().isSorted();
+    }
+
+    private static SequenceGenerator sequenceGenerator() {
+        try {
+            return User.class.getDeclaredField("id").getAnnotation(SequenceGenerator.class);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
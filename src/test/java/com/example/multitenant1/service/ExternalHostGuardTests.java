@@ -0,0 +1,63 @@
+package com.example.multitenant1.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExternalHostGuardTests {
+
+    private static ExternalHostGuard guard(Duration openDuration, int maxConcurrentCalls) {
+        return new ExternalHostGuard("upstream", new ExternalHostGuard.Settings(
+                10, 4, 0.5, 1.0, Duration.ofSeconds(10), openDuration, 2, maxConcurrentCalls));
+    }
+
+    @Test
+    void opensAtFailureRateThresholdAndFailsFast() {
+        ExternalHostGuard guard = guard(Duration.ofMinutes(1), 10);
+        guard.onResult(guard.acquire(), false);
+        guard.onResult(guard.acquire(), false);
+        guard.onResult(guard.acquire(), true);
+        assertThat(guard.getState()).isEqualTo(ExternalHostGuard.State.CLOSED);
+
+        guard.onResult(guard.acquire(), true);
+
+        assertThat(guard.getState()).isEqualTo(ExternalHostGuard.State.OPEN);
+        assertThatThrownBy(guard::acquire)
+                .isInstanceOf(ExternalApiRejectedException.class)
+                .satisfies(e -> assertThat(((ExternalApiRejectedException) e).getRetryAfter()).isPositive());
+        assertThat(guard.snapshot().transitions()).containsEntry("CLOSED->OPEN", 1L);
+    }
+
+    @Test
+    void halfOpenProbesCloseTheCircuitAgain() {
+        ExternalHostGuard guard = guard(Duration.ZERO, 10);
+        for (int i = 0; i < 4; i++) {
+            guard.onResult(guard.acquire(), true);
+        }
+
+        ExternalHostGuard.Permit first = guard.acquire();
+        ExternalHostGuard.Permit second = guard.acquire();
+        assertThat(guard.getState()).isEqualTo(ExternalHostGuard.State.HALF_OPEN);
+        assertThatThrownBy(guard::acquire).isInstanceOf(ExternalApiRejectedException.class);
+
+        guard.onResult(first, false);
+        guard.onResult(second, false);
+
+        assertThat(guard.getState()).isEqualTo(ExternalHostGuard.State.CLOSED);
+    }
+
+    @Test
+    void bulkheadRejectsCallsBeyondItsCapacity() {
+        ExternalHostGuard guard = guard(Duration.ofMinutes(1), 1);
+        ExternalHostGuard.Permit permit = guard.acquire();
+
+        assertThatThrownBy(guard::acquire).hasMessageContaining("Too many concurrent calls");
+
+        guard.onResult(permit, false);
+        assertThat(guard.acquire()).isNotNull();
+        assertThat(guard.snapshot().rejectedByBulkhead()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.multitenant1.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ExternalResponseCacheTests {
+
+    private static final String URL = "https://api.example.com/data";
+
+    private final ExternalApiService upstream = mock(ExternalApiService.class);
+    private final ExternalResponseCache cache = new ExternalResponseCache();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "externalApiService", upstream);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "scope", "tenant");
+        ReflectionTestUtils.setField(cache, "maxSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(cache, "defaultTtl", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(cache, "maxTtl", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(cache, "staleRetention", Duration.ofMinutes(10));
+        cache.init();
+    }
+
+    private static ResponseEntity<String> ok(String body, String cacheControl, String etag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(cacheControl);
+        if (etag != null) {
+            headers.setETag(etag);
+        }
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+
+    @Test
+    void freshResponseIsServedFromCacheUntilMaxAge() {
+        when(upstream.fetchExternalDataAsync(eq(URL), any(HttpHeaders.class)))
+                .thenReturn(CompletableFuture.completedFuture(ok("v1", "max-age=60", null)));
+
+        assertThat(cache.fetch(URL).join().getBody()).isEqualTo("v1");
+        assertThat(cache.fetch(URL).join().getBody()).isEqualTo("v1");
+
+        verify(upstream, times(1)).fetchExternalDataAsync(eq(URL), any(HttpHeaders.class));
+        assertThat(cache.getStats()).containsEntry("hits", 1L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    void noStoreAndNoCacheAreFetchedEveryTime() {
+        when(upstream.fetchExternalDataAsync(eq(URL), any(HttpHeaders.class)))
+                .thenReturn(CompletableFuture.completedFuture(ok("v1", "no-store", null)))
+                .thenReturn(CompletableFuture.completedFuture(ok("v2", "no-cache", null)))
+                .thenReturn(CompletableFuture.completedFuture(ok("v3", "max-age=60", null)));
+
+        assertThat(cache.fetch(URL).join().getBody()).isEqualTo("v1");
+        assertThat(cache.fetch(URL).join().getBody()).isEqualTo("v2");
+        assertThat(cache.fetch(URL).join().getBody()).isEqualTo("v3");
+
+        verify(upstream, times(3)).fetchExternalDataAsync(eq(URL), any(HttpHeaders.class));
+        assertThat(cache.getStats()).containsEntry("uncacheable", 1L).containsEntry("hits", 0L);
+    }
+
+    @Test
+    void staleEntryIsRevalidatedWithItsEtag() {
+        when(upstream.fetchExternalDataAsync(eq(URL), any(HttpHeaders.class)))
+                .thenReturn(CompletableFuture.completedFuture(ok("v1", "max-age=0", "\"abc\"")))
+                .thenReturn(CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED).build()));
+
+        cache.fetch(URL).join();
+        ResponseEntity<String> revalidated = cache.fetch(URL).join();
+
+        assertThat(revalidated.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(revalidated.getBody()).isEqualTo("v1");
+        verify(upstream).fetchExternalDataAsync(eq(URL),
+                argThat(headers -> headers.getIfNoneMatch().contains("\"abc\"")));
+        assertThat(cache.getStats()).containsEntry("revalidated", 1L);
+    }
+
+    @Test
+    void concurrentMissesShareOneUpstreamCall() {
+        CompletableFuture<ResponseEntity<String>> pending = new CompletableFuture<>();
+        when(upstream.fetchExternalDataAsync(eq(URL), any(HttpHeaders.class))).thenReturn(pending);
+
+        CompletableFuture<ResponseEntity<String>> first = cache.fetch(URL);
+        CompletableFuture<ResponseEntity<String>> second = cache.fetch(URL);
+        assertThat(second).isSameAs(first).isNotDone();
+
+        pending.complete(ok("v1", "max-age=60", null));
+
+        assertThat(first.join().getBody()).isEqualTo("v1");
+        verify(upstream, times(1)).fetchExternalDataAsync(eq(URL), any(HttpHeaders.class));
+        assertThat(cache.getStats()).containsEntry("coalesced", 1L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failureWhileStoringCompletesTheCallExceptionally() {
+        ResponseEntity<String> broken = mock(ResponseEntity.class);
+        when(broken.getStatusCode()).thenThrow(new IllegalStateException("broken response"));
+        when(upstream.fetchExternalDataAsync(eq(URL), any(HttpHeaders.class)))
+                .thenReturn(CompletableFuture.completedFuture(broken))
+                .thenReturn(CompletableFuture.completedFuture(ok("v1", "max-age=60", null)));
+
+        CompletableFuture<ResponseEntity<String>> failed = cache.fetch(URL);
+        assertThat(failed).isCompletedExceptionally();
+
+        // The in-flight entry is gone, so the next request calls the upstream again
+        assertThat(cache.fetch(URL).join().getBody()).isEqualTo("v1");
+    }
+}
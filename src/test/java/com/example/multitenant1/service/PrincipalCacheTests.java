@@ -0,0 +1,57 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.security.UserPrincipal;
+import com.github.benmanes.caffeine.cache.Cache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrincipalCacheTests {
+
+    private final PrincipalCache cache = new PrincipalCache();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "maxSizePerTenant", 10L);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(cache, "maxTenants", 4L);
+        cache.init();
+    }
+
+    private UserPrincipal load(String tenantId, String username) {
+        return cache.get(tenantId, username, name -> {
+            loads.incrementAndGet();
+            return UserPrincipal.of(1L, name, name + "@example.com", tenantId, "USER");
+        });
+    }
+
+    @Test
+    void principalsAreCachedPerTenant() {
+        UserPrincipal first = load("tenant1", "alice");
+
+        assertThat(load("tenant1", "alice")).isSameAs(first);
+        assertThat(load("tenant2", "alice").tenantId()).isEqualTo("tenant2");
+        assertThat(loads).hasValue(2);
+
+        cache.invalidateTenant("tenant1");
+        load("tenant1", "alice");
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void partitionsAreBoundedByMaxTenants() {
+        for (int i = 0; i < 1_000; i++) {
+            load("tenant" + i, "alice");
+        }
+
+        Cache<?, ?> tenants = (Cache<?, ?>) ReflectionTestUtils.getField(cache, "tenants");
+        tenants.cleanUp();
+        assertThat(tenants.estimatedSize()).isLessThanOrEqualTo(4);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.model.RefreshToken;
+import com.example.multitenant1.model.User;
+import com.example.multitenant1.repository.RefreshTokenRepository;
+import com.example.multitenant1.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RefreshTokenServiceTests {
+
+    private final RefreshTokenRepository refreshTokenRepository = mock(RefreshTokenRepository.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final RefreshTokenService service = new RefreshTokenService();
+    // The refresh_tokens table, keyed by token hash
+    private final Map<String, RefreshToken> tokens = new ConcurrentHashMap<>();
+    private final User user = new User();
+
+    @BeforeEach
+    void setUp() {
+        user.setId(7L);
+        user.setUsername("alice");
+        user.setTenantId("tenant1");
+        when(userRepository.findById(7L)).thenReturn(Optional.of(user));
+
+        when(refreshTokenRepository.save(any(RefreshToken.class))).thenAnswer(invocation -> {
+            RefreshToken token = invocation.getArgument(0);
+            tokens.put(token.getTokenHash(), token);
+            return token;
+        });
+        when(refreshTokenRepository.findByTokenHash(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(tokens.get(invocation.<String>getArgument(0))));
+        when(refreshTokenRepository.markUsed(anyString())).thenAnswer(invocation -> {
+            RefreshToken token = tokens.get(invocation.<String>getArgument(0));
+            if (token == null || token.isUsed()) {
+                return 0;
+            }
+            token.setUsed(true);
+            return 1;
+        });
+        when(refreshTokenRepository.deleteByFamily(anyString())).thenAnswer(invocation -> {
+            String familyId = invocation.getArgument(0);
+            int before = tokens.size();
+            tokens.values().removeIf(token -> token.getFamilyId().equals(familyId));
+            return before - tokens.size();
+        });
+
+        ReflectionTestUtils.setField(service, "refreshTokenRepository", refreshTokenRepository);
+        ReflectionTestUtils.setField(service, "userRepository", userRepository);
+        ReflectionTestUtils.setField(service, "expiration", Duration.ofDays(14));
+    }
+
+    private RefreshToken stored(String familyId, boolean used) {
+        return tokens.values().stream()
+                .filter(token -> token.getFamilyId().equals(familyId) && token.isUsed() == used)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    @Test
+    void rotationUsesUpTheOldTokenAndIssuesOneOfTheSameFamily() {
+        String issued = service.issue(user);
+        String familyId = tokens.values().iterator().next().getFamilyId();
+
+        RotatedRefreshToken rotated = service.rotate(issued);
+
+        assertThat(rotated.user()).isSameAs(user);
+        assertThat(rotated.refreshToken()).isNotEqualTo(issued);
+        assertThat(tokens).hasSize(2);
+        assertThat(tokens.values()).allMatch(token -> token.getFamilyId().equals(familyId));
+        assertThat(stored(familyId, true).getTokenHash()).isNotEqualTo(stored(familyId, false).getTokenHash());
+        // Only digests are stored
+        assertThat(tokens).doesNotContainKeys(issued, rotated.refreshToken());
+    }
+
+    @Test
+    void reusedTokenRevokesItsWholeFamily() {
+        String issued = service.issue(user);
+        String successor = service.rotate(issued).refreshToken();
+        String otherLogin = service.issue(user);
+
+        assertThatThrownBy(() -> service.rotate(issued)).isInstanceOf(BadCredentialsException.class);
+
+        // The successor was issued to whoever presented the copy first, so it goes as well
+        assertThatThrownBy(() -> service.rotate(successor)).isInstanceOf(BadCredentialsException.class);
+        assertThat(tokens).hasSize(1);
+        assertThat(service.rotate(otherLogin).user()).isSameAs(user);
+    }
+
+    @Test
+    void losingAConcurrentExchangeCountsAsReuse() {
+        String issued = service.issue(user);
+        // Another request marked the token used between this one's read and its update
+        when(refreshTokenRepository.markUsed(anyString())).thenReturn(0);
+
+        assertThatThrownBy(() -> service.rotate(issued)).isInstanceOf(BadCredentialsException.class);
+
+        assertThat(tokens).isEmpty();
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        ReflectionTestUtils.setField(service, "expiration", Duration.ofSeconds(-1));
+        String expired = service.issue(user);
+
+        assertThatThrownBy(() -> service.rotate(expired)).isInstanceOf(BadCredentialsException.class);
+
+        assertThat(tokens.values()).noneMatch(token -> !token.isUsed());
+    }
+
+    @Test
+    void unknownOrMissingTokenIsRejected() {
+        assertThatThrownBy(() -> service.rotate("never-issued")).isInstanceOf(BadCredentialsException.class);
+        assertThatThrownBy(() -> service.rotate("")).isInstanceOf(BadCredentialsException.class);
+    }
+}
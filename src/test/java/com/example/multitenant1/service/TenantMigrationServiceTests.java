@@ -0,0 +1,138 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.repository.TenantRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TenantMigrationServiceTests {
+
+    private final TenantRepository tenantRepository = mock(TenantRepository.class);
+    private final TenantMigrationService migrations = new TenantMigrationService();
+
+    @BeforeEach
+    void setUp() {
+        when(tenantRepository.findAllFingerprints()).thenReturn(Map.of());
+        ReflectionTestUtils.setField(migrations, "tenantRepository", tenantRepository);
+        // No driver, so every Liquibase run fails before it touches a database
+        ReflectionTestUtils.setField(migrations, "dataSourceProperties", mock(DataSourceProperties.class));
+        ReflectionTestUtils.setField(migrations, "resourceLoader", new DefaultResourceLoader());
+        ReflectionTestUtils.setField(migrations, "isolation", "schema");
+        ReflectionTestUtils.setField(migrations, "enabled", true);
+        ReflectionTestUtils.setField(migrations, "mode", "eager");
+        ReflectionTestUtils.setField(migrations, "fingerprintCheck", true);
+        ReflectionTestUtils.setField(migrations, "retryInterval", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(migrations, "firstUseTimeout", Duration.ofSeconds(10));
+        migrations.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        migrations.shutdown();
+    }
+
+    @Test
+    void currentTenantIsCheckedOnce() {
+        when(tenantRepository.exists("tenant1")).thenReturn(true);
+        when(tenantRepository.findFingerprint("tenant1")).thenReturn(migrations.getChangelogFingerprint());
+
+        assertThat(migrations.awaitMigration("tenant1")).isTrue();
+        assertThat(migrations.awaitMigration("tenant1")).isTrue();
+
+        verify(tenantRepository, times(1)).findFingerprint("tenant1");
+    }
+
+    @Test
+    void unregisteredTenantIsRemembered() {
+        assertThat(migrations.awaitMigration("ghost")).isTrue();
+        assertThat(migrations.awaitMigration("ghost")).isTrue();
+
+        verify(tenantRepository, times(1)).exists(anyString());
+    }
+
+    @Test
+    void firstRequestWaitsForTheMigrationAndFailureIsRemembered() {
+        when(tenantRepository.exists("tenant1")).thenReturn(true);
+        when(tenantRepository.findFingerprint("tenant1")).thenReturn("outdated");
+
+        // The failed migration is reported to the request that triggered it
+        assertThat(migrations.awaitMigration("tenant1")).isFalse();
+        assertThat(migrations.getResults().get("tenant1").isFailed()).isTrue();
+
+        assertThat(migrations.awaitMigration("tenant1")).isFalse();
+        // The request path checked the registry once; the retry waits for the retry interval
+        verify(tenantRepository, times(1)).exists("tenant1");
+    }
+
+    @Test
+    void concurrentFirstRequestsShareOneMigration() throws Exception {
+        when(tenantRepository.exists("tenant1")).thenReturn(true);
+        CountDownLatch checked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // The first lookup comes from the request, the second from the migration worker, which is held back
+        when(tenantRepository.findFingerprint("tenant1")).thenReturn("outdated").thenAnswer(invocation -> {
+            checked.countDown();
+            release.await();
+            return migrations.getChangelogFingerprint();
+        });
+
+        ExecutorService requests = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> answers = new ArrayList<>();
+            answers.add(requests.submit(() -> migrations.awaitMigration("tenant1")));
+            assertThat(checked.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 3; i++) {
+                answers.add(requests.submit(() -> migrations.awaitMigration("tenant1")));
+            }
+            Thread.sleep(50);
+            assertThat(answers).noneMatch(Future::isDone);
+
+            release.countDown();
+            for (Future<Boolean> answer : answers) {
+                assertThat(answer.get(5, TimeUnit.SECONDS)).isTrue();
+            }
+        } finally {
+            requests.shutdownNow();
+        }
+        verify(tenantRepository, times(2)).findFingerprint("tenant1");
+    }
+
+    @Test
+    void requestGivesUpAfterTheFirstUseTimeout() throws Exception {
+        ReflectionTestUtils.setField(migrations, "firstUseTimeout", Duration.ofMillis(50));
+        when(tenantRepository.exists("tenant1")).thenReturn(true);
+        CountDownLatch release = new CountDownLatch(1);
+        when(tenantRepository.findFingerprint("tenant1")).thenReturn("outdated").thenAnswer(invocation -> {
+            release.await();
+            return migrations.getChangelogFingerprint();
+        });
+
+        assertThat(migrations.awaitMigration("tenant1")).isFalse();
+
+        release.countDown();
+        for (int i = 0; i < 500 && !migrations.getResults().containsKey("tenant1"); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(migrations.awaitMigration("tenant1")).isTrue();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.repository.TenantRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TenantProvisioningServiceTests {
+
+    private final TenantRepository tenantRepository = mock(TenantRepository.class);
+    private final KnownTenants knownTenants = mock(KnownTenants.class);
+    private final TenantProvisioningService service = new TenantProvisioningService();
+    private final Set<String> registry = new HashSet<>(Set.of("tenant1", "tenant2"));
+
+    @BeforeEach
+    void setUp() {
+        when(tenantRepository.findExistingTenantIds(anyCollection())).thenAnswer(invocation -> {
+            Set<String> existing = new HashSet<>(invocation.<List<String>>getArgument(0));
+            existing.retainAll(registry);
+            return existing;
+        });
+
+        ReflectionTestUtils.setField(service, "tenantRepository", tenantRepository);
+        ReflectionTestUtils.setField(service, "knownTenants", knownTenants);
+        // Registering the tenant is all provisioning does in discriminator mode
+        ReflectionTestUtils.setField(service, "isolation", "discriminator");
+    }
+
+    @Test
+    void provisioningLooksUpOnlyTheNewTenant() {
+        TenantProvisioningResult result = service.provision("tenant3");
+
+        assertThat(result.isFailed()).isFalse();
+        verify(tenantRepository).findExistingTenantIds(List.of("tenant3"));
+        verify(tenantRepository, never()).findAllTenantIds();
+        verify(tenantRepository).save("tenant3");
+        verify(knownTenants).register("tenant3");
+    }
+
+    @Test
+    void existingAndRepeatedTenantsAreRejected() {
+        Map<String, TenantProvisioningResult> results = service.provisionAll(List.of("tenant1", "tenant3", "tenant3"));
+
+        assertThat(results.get("tenant1").error()).contains("already exists");
+        assertThat(results.get("tenant3").isFailed()).isFalse();
+        verify(tenantRepository, never()).save("tenant1");
+        verify(tenantRepository).save("tenant3");
+    }
+}
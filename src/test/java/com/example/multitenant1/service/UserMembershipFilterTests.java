@@ -0,0 +1,80 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.config.TenantContext;
+import com.example.multitenant1.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserMembershipFilterTests {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final UserMembershipFilter filter = new UserMembershipFilter();
+    private final CountDownLatch scanAllowed = new CountDownLatch(1);
+    private final CountDownLatch scanned = new CountDownLatch(1);
+    private final AtomicReference<String> scannedTenant = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(userRepository.count()).thenReturn(1L);
+        when(userRepository.streamUsernamesAndEmails()).thenAnswer(invocation -> {
+            scannedTenant.set(TenantContext.getCurrentTenant());
+            scanAllowed.await(5, TimeUnit.SECONDS);
+            return Stream.<Object[]>of(new Object[]{"alice", "alice@example.com"}).onClose(scanned::countDown);
+        });
+
+        ReflectionTestUtils.setField(filter, "userRepository", userRepository);
+        ReflectionTestUtils.setField(filter, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.setField(filter, "maxTenants", 10L);
+        ReflectionTestUtils.setField(filter, "minCapacity", 64);
+        filter.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scanAllowed.countDown();
+        filter.shutdown();
+    }
+
+    @Test
+    void registrationsAskTheDatabaseUntilTheBackgroundBuildIsDone() throws InterruptedException {
+        // The scan is held, yet lookups answer right away
+        assertThat(filter.mightContainUsername("tenant1", "bob")).isTrue();
+        assertThat(filter.mightContainEmail("tenant1", "bob@example.com")).isTrue();
+
+        scanAllowed.countDown();
+        assertThat(scanned.await(5, TimeUnit.SECONDS)).isTrue();
+        waitUntilBuilt();
+
+        assertThat(filter.mightContainUsername("tenant1", "bob")).isFalse();
+        assertThat(filter.mightContainUsername("tenant1", "alice")).isTrue();
+        assertThat(scannedTenant).hasValue("tenant1");
+        verify(userRepository, times(1)).streamUsernamesAndEmails();
+    }
+
+    private void waitUntilBuilt() throws InterruptedException {
+        for (int i = 0; i < 500 && (long) filter.getStats().get("builds") == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(filter.getStats()).containsEntry("builds", 1L);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.multitenant1.service;
+
+import com.example.multitenant1.config.TenantContext;
+import com.example.multitenant1.model.User;
+import com.example.multitenant1.repository.UserRepository;
+import com.example.multitenant1.security.BoundedPasswordEncoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserServiceTests {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final BoundedPasswordEncoder passwordEncoder = mock(BoundedPasswordEncoder.class);
+    private final UserDetailsServiceImpl userDetailsService = mock(UserDetailsServiceImpl.class);
+    private final UserService userService = new UserService();
+    private final AtomicReference<String> storedInTenant = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(userService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userService, "passwordEncoder", passwordEncoder);
+        ReflectionTestUtils.setField(userService, "principalCache", mock(PrincipalCache.class));
+        ReflectionTestUtils.setField(userService, "membershipFilter", mock(UserMembershipFilter.class));
+        ReflectionTestUtils.setField(userService, "userDetailsService", userDetailsService);
+        ReflectionTestUtils.setField(userService, "taskExecutor", (Executor) Runnable::run);
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
+            storedInTenant.set(TenantContext.getCurrentTenant());
+            return invocation.getArgument(0);
+        });
+        TenantContext.setCurrentTenant("tenant1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        TenantContext.clear();
+    }
+
+    private static User user(String username, String password) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPassword(password);
+        return user;
+    }
+
+    @Test
+    void loginReturnsBeforeThePasswordIsHashed() {
+        User stored = user("alice", "stored-hash");
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(stored);
+        CompletableFuture<Boolean> hash = new CompletableFuture<>();
+        when(passwordEncoder.matchesAsync("tenant1", "secret", "stored-hash")).thenReturn(hash);
+
+        CompletableFuture<User> login = userService.authenticateAsync("alice", "secret");
+        assertThat(login).isNotDone();
+
+        hash.complete(true);
+        assertThat(login.join()).isSameAs(stored);
+    }
+
+    @Test
+    void wrongPasswordFailsTheLogin() {
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(user("alice", "stored-hash"));
+        when(passwordEncoder.matchesAsync("tenant1", "wrong", "stored-hash"))
+                .thenReturn(CompletableFuture.completedFuture(false));
+
+        assertThat(userService.authenticateAsync("alice", "wrong"))
+                .failsWithin(Duration.ZERO)
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(BadCredentialsException.class);
+    }
+
+    @Test
+    void unknownUserCostsOneHashAsWell() {
+        when(userDetailsService.loadUserByUsername("ghost")).thenThrow(new UsernameNotFoundException("ghost"));
+        when(passwordEncoder.encodeAsync("tenant1", "secret"))
+                .thenReturn(CompletableFuture.completedFuture("hash"));
+
+        assertThat(userService.authenticateAsync("ghost", "secret")).isCompletedExceptionally();
+        verify(passwordEncoder).encodeAsync("tenant1", "secret");
+    }
+
+    @Test
+    void registeredUserIsStoredInItsTenantOnceTheHashIsDone() {
+        CompletableFuture<String> hash = new CompletableFuture<>();
+        when(passwordEncoder.encodeAsync(eq("tenant1"), eq("secret"))).thenReturn(hash);
+
+        CompletableFuture<User> registration = userService.registerUserAsync(user("bob", "secret"));
+        assertThat(registration).isNotDone();
+        verify(userRepository, never()).save(any(User.class));
+
+        // Completed on a thread without the request's tenant, as a hashing worker would
+        TenantContext.clear();
+        hash.complete("encoded");
+
+        User saved = registration.join();
+        assertThat(saved.getPassword()).isEqualTo("encoded");
+        assertThat(saved.getRole()).isEqualTo("USER");
+        assertThat(storedInTenant).hasValue("tenant1");
+        assertThat(TenantContext.getCurrentTenant()).isNull();
+    }
+}